@@ -0,0 +1,50 @@
+package hu.codelens.sharecenter.benchmarks;
+
+import hu.codelens.sharecenter.internal.HttpsClient;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+class BenchmarkResponse implements HttpsClient.Response {
+
+    private final int code;
+    private final String body;
+    private final byte[] bodyBytes;
+
+    BenchmarkResponse(int code, String body) {
+        this.code = code;
+        this.body = body;
+        this.bodyBytes = body.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int getCode() {
+        return code;
+    }
+
+    @Override
+    public String getBody() {
+        return body;
+    }
+
+    @Override
+    public byte[] getBodyBytes() {
+        return bodyBytes;
+    }
+
+    @Override
+    public InputStream getBodyStream() {
+        return new ByteArrayInputStream(bodyBytes);
+    }
+
+    @Override
+    public long getContentLength() {
+        return bodyBytes.length;
+    }
+
+    @Override
+    public String getHeader(String header) {
+        return null;
+    }
+}
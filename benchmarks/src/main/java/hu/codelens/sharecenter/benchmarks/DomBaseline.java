@@ -0,0 +1,128 @@
+package hu.codelens.sharecenter.benchmarks;
+
+import hu.codelens.sharecenter.JShareCenterMediaPath;
+import hu.codelens.sharecenter.internal.HttpsClient;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The DOM parsing of the CGI replies as it was before the streaming parsers, kept as the baseline of the parsing
+ * benchmarks.
+ */
+class DomBaseline {
+
+    private final DocumentBuilderFactory documentBuilderFactory;
+
+    DomBaseline() {
+        documentBuilderFactory = DocumentBuilderFactory.newInstance();
+    }
+
+    Optional<Boolean> parseFlag(HttpsClient.Response response) {
+        if (response.getCode() == 200) {
+            Optional<Document> parsedDocument = parseXml(response.getBody());
+            if (parsedDocument.isPresent()) {
+                Element documentElement = parsedDocument.get().getDocumentElement();
+                if (documentElement.getTagName().equals("config")) {
+                    NodeList childNodes = documentElement.getChildNodes();
+                    if (childNodes.getLength() == 1) {
+                        Node resNode = childNodes.item(0);
+                        if (resNode.getNodeName().equals("res")) {
+                            return Optional.of(resNode.getTextContent().equals("1"));
+                        }
+                    }
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    Optional<Integer> parseMediaScanProgress(HttpsClient.Response response) {
+        if (response.getCode() == HttpURLConnection.HTTP_OK) {
+            Optional<Document> parsedDocument = parseXml(response.getBody());
+            if (parsedDocument.isPresent()) {
+                Element documentElement = parsedDocument.get().getDocumentElement();
+                if (documentElement.getTagName().equals("config")) {
+                    NodeList childNodes = documentElement.getChildNodes();
+                    if (childNodes.getLength() == 2) {
+                        Node resNode = childNodes.item(0);
+                        if (resNode.getNodeName().equals("db_stste")) {
+                            try {
+                                return Optional.of(Integer.parseInt(resNode.getTextContent()));
+                            } catch (NumberFormatException e) {
+                                // ignored
+                                return Optional.empty();
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    Optional<Collection<JShareCenterMediaPath>> parseMediaServerPathList(HttpsClient.Response response) {
+        if (response.getCode() == 200) {
+            Optional<Document> parsedDocument = parseXml(response.getBody());
+            if (parsedDocument.isPresent()) {
+                List<JShareCenterMediaPath> paths = new ArrayList<>();
+                NodeList rows = parsedDocument.get().getElementsByTagName("row");
+                for (int rowIdx = 0; rowIdx < rows.getLength(); rowIdx++) {
+                    NodeList cells = rows.item(rowIdx).getChildNodes();
+                    paths.add(new BaselineMediaPath(cells.item(1).getTextContent(), cells.item(4).getTextContent()));
+                }
+                return Optional.of(paths);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static class BaselineMediaPath implements JShareCenterMediaPath {
+        private final String volume;
+        private final String internalPath;
+
+        private BaselineMediaPath(String volume, String internalPath) {
+            this.volume = volume;
+            this.internalPath = internalPath;
+        }
+
+        @Override
+        public String getVolume() {
+            return volume;
+        }
+
+        @Override
+        public String getInternalPath() {
+            return internalPath;
+        }
+    }
+
+    private Optional<Document> parseXml(String xml) {
+        DocumentBuilder documentBuilder;
+        try {
+            documentBuilder = documentBuilderFactory.newDocumentBuilder();
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException("Could not create XML document builder", e);
+        }
+
+        try (ByteArrayInputStream is = new ByteArrayInputStream(xml.getBytes())) {
+            return Optional.ofNullable(documentBuilder.parse(is));
+        } catch (IOException | SAXException e) {
+            // ignored
+            return Optional.empty();
+        }
+    }
+}
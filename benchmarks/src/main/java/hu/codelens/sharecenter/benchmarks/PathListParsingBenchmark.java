@@ -0,0 +1,51 @@
+package hu.codelens.sharecenter.benchmarks;
+
+import hu.codelens.sharecenter.JShareCenterMediaPath;
+import hu.codelens.sharecenter.internal.HttpsClient;
+import hu.codelens.sharecenter.internal.MediaPathPage;
+import hu.codelens.sharecenter.internal.ShareCenterProtocol;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathListParsingBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int rows;
+
+    private ShareCenterProtocol protocol;
+    private DomBaseline domBaseline;
+    private HttpsClient.Response pathListResponse;
+
+    @Setup
+    public void setUp() {
+        protocol = new ShareCenterProtocol(new HttpsClient("sharecenter.local"));
+        domBaseline = new DomBaseline();
+
+        StringBuilder body = new StringBuilder("<rows><page>1</page><total>").append(rows).append("</total>");
+        for (int index = 0; index < rows; index++) {
+            body.append("<row id='").append(index + 1).append("'><cell>").append(index + 1)
+                .append("</cell><cell>Volume_1/media").append(index).append("</cell><cell>1</cell><cell>media")
+                .append(index).append("</cell><cell>/mnt/HD/HD_a2/media").append(index).append("</cell></row>");
+        }
+        pathListResponse = new BenchmarkResponse(200, body.append("</rows>").toString());
+    }
+
+    @Benchmark
+    public Optional<MediaPathPage> pathList() {
+        return protocol.parseMediaServerPathPage(pathListResponse);
+    }
+
+    @Benchmark
+    public Optional<Collection<JShareCenterMediaPath>> pathListDomBaseline() {
+        return domBaseline.parseMediaServerPathList(pathListResponse);
+    }
+}
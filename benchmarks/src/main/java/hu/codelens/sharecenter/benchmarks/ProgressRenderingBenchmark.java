@@ -0,0 +1,40 @@
+package hu.codelens.sharecenter.benchmarks;
+
+import hu.codelens.sharecenter.internal.DefaultColorOutput;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProgressRenderingBenchmark {
+
+    private DefaultColorOutput output;
+    private int percentage;
+
+    @Setup
+    public void setUp() {
+        output = new DefaultColorOutput(true);
+        output.setOutput(new PrintStream(OutputStream.nullOutputStream(), false));
+        output.setFrameRate(0);
+        percentage = 0;
+    }
+
+    @Benchmark
+    public void progressBar() {
+        percentage = (percentage + 1) % 101;
+        output.progress(2, 50, percentage, true);
+    }
+
+    @Benchmark
+    public void progressBarWithStatus() {
+        percentage = (percentage + 1) % 101;
+        output.progress(2, 50, percentage, true, "ETA 3m 12s");
+    }
+}
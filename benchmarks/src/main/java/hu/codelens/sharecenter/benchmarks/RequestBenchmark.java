@@ -0,0 +1,36 @@
+package hu.codelens.sharecenter.benchmarks;
+
+import hu.codelens.sharecenter.internal.HttpsClient;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.http.HttpRequest;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestBenchmark {
+
+    private HttpsClient client;
+
+    @Setup
+    public void setUp() {
+        client = new HttpsClient("sharecenter.local");
+    }
+
+    @Benchmark
+    public HttpRequest statusPollRequest() {
+        return client.createRequest("/cgi-bin/app_mgr.cgi", Map.of("cmd", "UPnP_AV_Server_Get_SQLDB_State"));
+    }
+
+    @Benchmark
+    public HttpRequest pathListRequest() {
+        return client.createRequest("/cgi-bin/app_mgr.cgi",
+            Map.of("cmd", "UPnP_AV_Server_Path_List", "page", 1, "rp", 50,
+                "query", "", "qtype", "", "f_field", "false", "user", ""));
+    }
+}
@@ -0,0 +1,58 @@
+package hu.codelens.sharecenter.benchmarks;
+
+import hu.codelens.sharecenter.internal.HttpsClient;
+import hu.codelens.sharecenter.internal.ShareCenterProtocol;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseParsingBenchmark {
+
+    private ShareCenterProtocol protocol;
+    private DomBaseline domBaseline;
+    private HttpsClient.Response resultResponse;
+    private HttpsClient.Response progressResponse;
+    private HttpsClient.Response entityResponse;
+
+    @Setup
+    public void setUp() {
+        protocol = new ShareCenterProtocol(new HttpsClient("sharecenter.local"));
+        domBaseline = new DomBaseline();
+        resultResponse = new BenchmarkResponse(200, "<config><res>1</res></config>");
+        progressResponse = new BenchmarkResponse(200, "<config><db_stste>42</db_stste><scan_state>1</scan_state></config>");
+        // entities are not handled by the scanner, this measures the StAX fallback
+        entityResponse = new BenchmarkResponse(200, "<config><res>&#49;</res></config>");
+    }
+
+    @Benchmark
+    public Optional<Boolean> result() {
+        return protocol.parseFlag(resultResponse);
+    }
+
+    @Benchmark
+    public Optional<Integer> scanProgress() {
+        return protocol.parseMediaScanProgress(progressResponse);
+    }
+
+    @Benchmark
+    public Optional<Boolean> resultWithStaxFallback() {
+        return protocol.parseFlag(entityResponse);
+    }
+
+    @Benchmark
+    public Optional<Boolean> resultDomBaseline() {
+        return domBaseline.parseFlag(resultResponse);
+    }
+
+    @Benchmark
+    public Optional<Integer> scanProgressDomBaseline() {
+        return domBaseline.parseMediaScanProgress(progressResponse);
+    }
+}
@@ -1,153 +1,480 @@
 package hu.codelens.sharecenter;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.function.Consumer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import java.util.stream.Collectors;
 
 public class App {
 
     private static final String DEFAULT_USERNAME = "admin";
+    private static final int DEFAULT_PARALLELISM = 4;
+    private static final int DEFAULT_DEBOUNCE_SECONDS = 30;
+    private static final int DEFAULT_FRAME_RATE = 10;
+    private static final int DEFAULT_SAMPLE_SECONDS = 5;
+    private static final int DEFAULT_UPLOADS = 3;
+    private static final int DEFAULT_SEGMENTS = 4;
+    private static final int MONITOR_STOP_SECONDS = 10;
+
     private final ColorOutput output;
 
+    private final RescanOptions options;
+
     private String host;
-    private String pwd;
-    private String username;
+    private final List<String> hosts;
+    private String hostsFile;
+    private int parallelism;
+    private Path metricsJsonFile;
+    private Path metricsPrometheusFile;
+    private boolean daemon;
+    private Duration daemonInterval;
+    private Duration daemonDebounce;
+    private boolean watch;
+    private boolean status;
+    private boolean monitor;
+    private String batchFile;
+    private List<BatchRun.Command> batchCommands;
+    private boolean continueOnError;
+    private boolean json;
+    private boolean experimental;
+    private final List<String> catalogQueries;
+    private final List<Path> uploadSources;
+    private List<Path> uploadFiles;
+    private String uploadDirectory;
+    private int uploads;
+    private boolean rescanAfterUpload;
+    private boolean overwrite;
+    private final List<String> downloadFiles;
+    private Path downloadDirectory;
+    private int segments;
 
     public static void main(String[] args) {
         App app = new App();
         app.processArguments(args);
+        if (!app.catalogQueries.isEmpty()) {
+            app.runCatalogQuery();
+            return;
+        }
         app.verifyAndReadMissingArguments();
-        app.run();
+        if (app.batchFile != null) {
+            app.runBatch();
+        } else if (app.uploadFiles != null) {
+            app.runUpload();
+        } else if (!app.downloadFiles.isEmpty()) {
+            app.runDownload();
+        } else if (app.monitor) {
+            app.runMonitor();
+        } else if (app.status) {
+            app.runStatus();
+        } else if (app.daemon) {
+            app.runDaemon();
+        } else if (app.hosts.isEmpty()) {
+            app.run();
+        } else {
+            app.runFleet();
+        }
     }
 
     public App() {
         this.output = ColorOutput.getDefault();
 
+        options = new RescanOptions();
         host = null;
-        pwd = null;
-        username = null;
+        hosts = new ArrayList<>();
+        hostsFile = null;
+        parallelism = DEFAULT_PARALLELISM;
+        metricsJsonFile = null;
+        metricsPrometheusFile = null;
+        daemon = false;
+        daemonInterval = Duration.ZERO;
+        daemonDebounce = Duration.ofSeconds(DEFAULT_DEBOUNCE_SECONDS);
+        watch = false;
+        status = false;
+        monitor = false;
+        batchFile = null;
+        batchCommands = null;
+        continueOnError = false;
+        json = false;
+        experimental = false;
+        catalogQueries = new ArrayList<>();
+        uploadSources = new ArrayList<>();
+        uploadFiles = null;
+        uploadDirectory = null;
+        uploads = DEFAULT_UPLOADS;
+        rescanAfterUpload = true;
+        overwrite = false;
+        downloadFiles = new ArrayList<>();
+        downloadDirectory = Paths.get(".");
+        segments = DEFAULT_SEGMENTS;
     }
 
     private void run() {
-        JShareCenter shareCenter = JShareCenter.getDefault(host);
-        login(shareCenter);
-
-        searchMedia(shareCenter, mediaPaths -> {
-            checkMediaScanRunning(shareCenter);
-            reindexAllMedia(shareCenter, mediaPaths);
-        });
-
-        logout(shareCenter);
-    }
-
-    private void reindexAllMedia(JShareCenter shareCenter, Collection<JShareCenterMediaPath> mediaPaths) {
-        output.dotLineLn("Reindexing found media");
-        mediaPaths.forEach(mediaPath -> {
-            output.getOutput().println("  " + mediaPath.getVolume());
-            shareCenter.startMediaScan(mediaPath).ifPresentOrElse(scanStarted -> {
-                if (scanStarted) {
-                    waitMediaScanWithProgressBar(shareCenter);
-                } else {
-                    output.withYellowLn("Could not start media scan for: " + mediaPath.getVolume());
-                }
-            }, () -> output.withRedLn("Could not start media scan for: " + mediaPath.getVolume()));
-        });
-    }
-
-    private void waitMediaScanWithProgressBar(JShareCenter shareCenter) {
-        sleep();
-        AtomicBoolean running = new AtomicBoolean(true);
-        while (running.get()) {
-            shareCenter.checkMediaScanProgress().ifPresent(percentage -> {
-                output.progress(2, 50, percentage, true);
-                sleep();
-                if (percentage > 90) {
-                    shareCenter.checkMediaScanFinished().ifPresent(finished -> {
-                        if (finished) {
-                            running.set(false);
-                            output.progress(2, 50, 100);
-                            output.nl();
-                        }
-                    });
-                }
-            });
+        // the rescan reports its own errors
+        execute(() -> {
+            new MediaRescan(host, options, output).run();
+            return 0;
+        }, false);
+    }
+
+    private void runStatus() {
+        execute(() -> {
+            new StatusReport(host, options, output).run();
+            return 0;
+        }, true);
+    }
+
+    private void runBatch() {
+        int failed = execute(() -> new BatchRun(host, options, output, batchCommands, continueOnError, parallelism)
+            .run(), true);
+        if (failed > 0) {
+            System.exit(6);
         }
     }
 
-    private void checkMediaScanRunning(JShareCenter shareCenter) {
-        output.dotLine("Checking if pre-scan is already running... ");
-        Optional<Boolean> scanState = shareCenter.checkMediaScanRunning();
-        if (scanState.isEmpty()) {
-            output.withRedLn("could not check state");
-            System.exit(-1);
-        } else {
-            Boolean state = scanState.get();
-            if (state) {
-                output.withYellowLn("already running");
-                System.exit(1);
-            } else {
-                output.withGreenLn("not running");
+    private void runUpload() {
+        int failed = execute(() -> new MediaUpload(host, options, output, uploadFiles, uploadDirectory, uploads,
+            rescanAfterUpload, overwrite).run(), true);
+        if (failed > 0) {
+            System.exit(8);
+        }
+    }
+
+    private void runDownload() {
+        int failed = execute(() -> new MediaDownload(host, options, output, downloadFiles, downloadDirectory, segments)
+            .run(), true);
+        if (failed > 0) {
+            System.exit(9);
+        }
+    }
+
+    private int execute(IntSupplier mode, boolean emitErrors) {
+        int exitCode;
+        try {
+            return mode.getAsInt();
+        } catch (RescanException e) {
+            if (emitErrors) {
+                emitError(e);
             }
+            exitCode = e.getExitCode();
+        } catch (RuntimeException e) {
+            // the failed runs are the ones the metrics and the error event are most wanted for
+            if (emitErrors) {
+                emitError(e);
+            }
+            throw e;
+        } finally {
+            writeMetrics();
         }
+        System.exit(exitCode);
+        return exitCode;
     }
 
-    private void logout(JShareCenter shareCenter) {
-        output.dotLine("Logging out... ");
-        shareCenter.logout(username);
-        output.withGreenLn("done");
-        output.nl();
+    private void runCatalogQuery() {
+        if (host == null) {
+            output.dot();
+            output.withRedLn(" The catalog can be queried for a single --host only");
+            output.nl();
+            System.exit(2);
+        }
+
+        // answered from the local copy, the NAS is not contacted
+        int missing = new CatalogMirror(host, options, output, new MediaRescan(host, options, output))
+            .query(catalogQueries);
+        if (missing > 0) {
+            System.exit(7);
+        }
     }
 
-    private void login(JShareCenter shareCenter) {
-        output.dotLine("Logging in... ");
-        if (!shareCenter.login(username, pwd)) {
-            output.withRedLn("Login failed");
-            System.exit(127);
+    private void runMonitor() {
+        MediaRescan mediaRescan = new MediaRescan(host, options, output);
+        JShareCenter shareCenter;
+        try {
+            shareCenter = mediaRescan.open();
+        } catch (RescanException e) {
+            emitError(e);
+            System.exit(e.getExitCode());
+            return;
+        }
+        // the hook only asks the main thread to stop, the session is closed here and not from the hook thread
+        CountDownLatch stopRequested = new CountDownLatch(1);
+        CountDownLatch closed = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            stopRequested.countDown();
+            try {
+                closed.await(MONITOR_STOP_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "jsharecenter-monitor-stop"));
+
+        output.dotLineLn("Sampling every " + Durations.format(options.getSampleInterval()) + ", press Ctrl+C to stop");
+        try {
+            stopRequested.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                output.nl();
+                mediaRescan.close(shareCenter);
+            } finally {
+                closed.countDown();
+            }
+        }
+    }
+
+    private void runDaemon() {
+        try {
+            new RescanDaemon(host, options, output, daemonInterval, daemonDebounce, watch).run();
+        } catch (RescanException e) {
+            emitError(e);
+            System.exit(e.getExitCode());
+        }
+    }
+
+    private void runFleet() {
+        FleetRescan fleetRescan = new FleetRescan(hosts, options, parallelism, output);
+        List<RescanResult> results;
+        try {
+            results = fleetRescan.run();
+            fleetRescan.printSummary(results);
+        } finally {
+            writeMetrics();
+        }
+
+        if (results.stream().anyMatch(result -> result.getStatus() != RescanResult.Status.OK)) {
+            System.exit(5);
+        }
+    }
+
+    private void requireExperimental(boolean used, String feature) {
+        // these features use CGI commands that were not checked against a real firmware yet
+        if (used && !experimental) {
+            output.dot();
+            output.withRedLn(" " + feature + " relies on unverified firmware commands, enable it with --experimental");
+            output.nl();
+            System.exit(2);
+        }
+    }
+
+    private void emitError(RuntimeException e) {
+        if (options.getEvents() != null) {
+            options.getEvents().emit(host, "error", event -> {
+                if (e instanceof RescanException) {
+                    event.field("exitCode", ((RescanException) e).getExitCode());
+                }
+                event.field("message", e.getMessage() != null ? e.getMessage() : e.toString());
+            });
+        }
+    }
+
+    private void writeMetrics() {
+        JShareCenterMetrics metrics = options.getMetrics();
+        if (metrics == null) {
+            return;
+        }
+
+        try {
+            if (metricsJsonFile != null) {
+                metrics.writeJson(metricsJsonFile);
+            }
+            if (metricsPrometheusFile != null) {
+                metrics.writePrometheus(metricsPrometheusFile);
+            }
+        } catch (IllegalStateException e) {
+            output.dot();
+            output.withRedLn(" " + e.getMessage());
         }
-        output.withGreenLn("logged in");
     }
 
     private void verifyAndReadMissingArguments() {
-        if (host == null) {
+        if (hostsFile != null) {
+            try {
+                hosts.addAll(Files.readAllLines(Paths.get(hostsFile)).stream()
+                    .map(String::trim)
+                    .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                    .collect(Collectors.toList()));
+            } catch (IOException e) {
+                output.dot();
+                output.withRedLn(" Could not read hosts file: " + hostsFile);
+                output.nl();
+                System.exit(2);
+            }
+        }
+
+        if (host != null && !hosts.isEmpty()) {
+            hosts.add(0, host);
+        }
+
+        if (host == null && hosts.isEmpty()) {
             output.dot();
             output.withRedLn(" Host must be specified (without the protocol, just the hostname)");
             output.nl();
             System.exit(2);
         }
 
-        output.dotLineLn("Connecting to ShareCenter: " + host);
+        if (daemon && !hosts.isEmpty()) {
+            output.dot();
+            output.withRedLn(" Daemon mode supports a single host only");
+            output.nl();
+            System.exit(2);
+        }
+
+        requireExperimental(status, "--status");
+        requireExperimental(options.isRemoteWalk(), "--remote-walk");
+        requireExperimental(monitor || options.getSampleInterval() != null || options.getSampleFile() != null,
+            "Resource sampling");
+
+        if (options.getSampleInterval() != null && options.getSampleFile() == null && !monitor) {
+            // the samples would be taken, but neither printed nor saved
+            output.dot();
+            output.withRedLn(" --sample needs --sample-file or --monitor");
+            output.nl();
+            System.exit(2);
+        }
+
+        if (options.getSampleInterval() != null && !hosts.isEmpty()) {
+            output.dot();
+            output.withRedLn(" Resources can be sampled on a single host only");
+            output.nl();
+            System.exit(2);
+        }
 
-        if (username == null) {
-            username = DEFAULT_USERNAME;
+        if (monitor || options.getSampleFile() != null) {
+            if (options.getSampleInterval() == null) {
+                options.setSampleInterval(Duration.ofSeconds(DEFAULT_SAMPLE_SECONDS));
+            }
+            options.setPrintSamples(monitor);
+        }
+
+        if (options.getSampleInterval() != null) {
+            // every sample has to reach the NAS, the status cache would return the previous one
+            options.getClientSettings().setStatusCacheTtl(Duration.ZERO);
+        }
+
+        if (status && !hosts.isEmpty()) {
+            output.dot();
+            output.withRedLn(" Status can be shown for a single host only");
+            output.nl();
+            System.exit(2);
+        }
+
+        if (batchFile != null) {
+            if (!hosts.isEmpty()) {
+                output.dot();
+                output.withRedLn(" Batch mode supports a single host only");
+                output.nl();
+                System.exit(2);
+            }
+            try {
+                batchCommands = BatchRun.parse(readBatchFile());
+                requireExperimental(batchCommands.stream().anyMatch(command -> command.getName().equals("status")),
+                    "The batch status command");
+            } catch (IOException e) {
+                output.dot();
+                output.withRedLn(" Could not read batch file: " + batchFile);
+                output.nl();
+                System.exit(2);
+            } catch (IllegalArgumentException e) {
+                output.dot();
+                output.withRedLn(" " + e.getMessage());
+                output.nl();
+                System.exit(2);
+            }
+        }
+
+        if (!uploadSources.isEmpty()) {
+            requireExperimental(true, "--upload");
+            if (!hosts.isEmpty() || uploadDirectory == null) {
+                output.dot();
+                output.withRedLn(" Upload needs a single host and the target directory with --upload-to");
+                output.nl();
+                System.exit(2);
+            }
+            try {
+                uploadFiles = MediaUpload.collect(uploadSources);
+            } catch (IOException e) {
+                output.dot();
+                output.withRedLn(" " + e.getMessage());
+                output.nl();
+                System.exit(2);
+            }
+            if (uploadFiles.isEmpty()) {
+                output.dot();
+                output.withRedLn(" No files to upload");
+                output.nl();
+                System.exit(2);
+            }
+        }
+
+        if (!downloadFiles.isEmpty()) {
+            requireExperimental(true, "--download");
+            if (!hosts.isEmpty()) {
+                output.dot();
+                output.withRedLn(" Download supports a single host only");
+                output.nl();
+                System.exit(2);
+            }
+            if (downloadFiles.stream().anyMatch(file -> !file.startsWith("/") || file.endsWith("/"))) {
+                output.dot();
+                output.withRedLn(" Download needs the full path of a file on the NAS");
+                output.nl();
+                System.exit(2);
+            }
+        }
+
+        if (daemon && daemonInterval.isZero() && !watch) {
+            output.dot();
+            output.withRedLn(" Daemon mode requires --interval and/or --watch");
+            output.nl();
+            System.exit(2);
+        }
+
+        if (hosts.isEmpty()) {
+            output.dotLineLn("Connecting to ShareCenter: " + host);
+        } else {
+            output.dotLineLn("Connecting to ShareCenters: " + String.join(", ", hosts));
+        }
+
+        if (options.getUsername() == null) {
+            options.setUsername(DEFAULT_USERNAME);
             output.dotLine("Using default username: ");
             output.withYellowLn(DEFAULT_USERNAME);
         }
 
-        if (pwd == null) {
+        if (options.getPwd() == null && System.console() == null) {
+            output.dot();
+            output.withRedLn(" Password must be given with --pass when there is no console");
+            System.exit(3);
+        }
+
+        if (options.getPwd() == null) {
             char[] password = System.console().readPassword(output.getDot() + " Enter password: ");
             if (password.length > 1) {
-                pwd = Base64.getEncoder().encodeToString(new String(password).getBytes());
+                options.setPwd(Base64.getEncoder().encodeToString(new String(password).getBytes()));
             } else {
                 output.dot();
                 output.withRedLn(" Invalid password");
                 System.exit(3);
             }
         }
-    }
-
-    private void searchMedia(JShareCenter shareCenter, Consumer<Collection<JShareCenterMediaPath>> processMedia) {
-        output.dotLine("Searching for media... ");
-        Optional<Collection<JShareCenterMediaPath>> foundPathList = shareCenter.getMediaServerPathList();
-
-        if (foundPathList.isEmpty()) {
-            output.withYellowLn("not found");
-        } else {
-            output.withGreenLn("found");
-            output.dotLineLn("Listing media to reindex:");
-            Collection<JShareCenterMediaPath> mediaPaths = foundPathList.get();
-            mediaPaths.forEach(mediaPath -> output.getOutput().println("  " + mediaPath.getVolume()));
 
-            processMedia.accept(mediaPaths);
+        if (json) {
+            // from here on every step is reported as a JSON line, the text output is not needed anymore
+            options.setEvents(new JsonEventWriter(System.out));
+            output.setOutput(new PrintStream(OutputStream.nullOutputStream()));
         }
     }
 
@@ -165,12 +492,320 @@ public class App {
                         output.withRedLn("host argument requires a parameter");
                     }
                     break;
+                case "-hosts":
+                case "--hosts":
+                    if (argIterator.hasNext()) {
+                        Arrays.stream(argIterator.next().split(","))
+                            .map(String::trim)
+                            .filter(name -> !name.isEmpty())
+                            .forEach(hosts::add);
+                    } else {
+                        output.withRedLn("hosts argument requires a parameter (comma separated host list)");
+                    }
+                    break;
+                case "-hosts-file":
+                case "--hosts-file":
+                    if (argIterator.hasNext()) {
+                        hostsFile = argIterator.next();
+                    } else {
+                        output.withRedLn("hosts-file argument requires a parameter");
+                    }
+                    break;
+                case "-parallel":
+                case "--parallel":
+                    if (argIterator.hasNext()) {
+                        parallelism = parsePositive(argIterator.next(), DEFAULT_PARALLELISM, "parallel");
+                    } else {
+                        output.withRedLn("parallel argument requires a parameter");
+                    }
+                    break;
+                case "-poll-min":
+                case "--poll-min":
+                    if (argIterator.hasNext()) {
+                        options.setMinPollInterval(Duration.ofMillis(parsePositive(argIterator.next(),
+                            (int) options.getMinPollInterval().toMillis(), "poll-min")));
+                    } else {
+                        output.withRedLn("poll-min argument requires a parameter (milliseconds)");
+                    }
+                    break;
+                case "-poll-max":
+                case "--poll-max":
+                    if (argIterator.hasNext()) {
+                        options.setMaxPollInterval(Duration.ofMillis(parsePositive(argIterator.next(),
+                            (int) options.getMaxPollInterval().toMillis(), "poll-max")));
+                    } else {
+                        output.withRedLn("poll-max argument requires a parameter (milliseconds)");
+                    }
+                    break;
+                case "-session-dir":
+                case "--session-dir":
+                    if (argIterator.hasNext()) {
+                        options.setSessionDirectory(Paths.get(argIterator.next()));
+                    } else {
+                        output.withRedLn("session-dir argument requires a parameter");
+                    }
+                    break;
+                case "-metrics-json":
+                case "--metrics-json":
+                    if (argIterator.hasNext()) {
+                        metricsJsonFile = Paths.get(argIterator.next());
+                        if (options.getMetrics() == null) {
+                            options.setMetrics(JShareCenterMetrics.create());
+                        }
+                    } else {
+                        output.withRedLn("metrics-json argument requires a parameter");
+                    }
+                    break;
+                case "-metrics-prom":
+                case "--metrics-prom":
+                    if (argIterator.hasNext()) {
+                        metricsPrometheusFile = Paths.get(argIterator.next());
+                        if (options.getMetrics() == null) {
+                            options.setMetrics(JShareCenterMetrics.create());
+                        }
+                    } else {
+                        output.withRedLn("metrics-prom argument requires a parameter");
+                    }
+                    break;
+                case "-incremental":
+                case "--incremental":
+                    options.setIncremental(true);
+                    break;
+                case "-remote-walk":
+                case "--remote-walk":
+                    options.setIncremental(true);
+                    options.setRemoteWalk(true);
+                    break;
+                case "-mount":
+                case "--mount":
+                    if (argIterator.hasNext()) {
+                        String[] mount = argIterator.next().split("=", 2);
+                        if (mount.length == 2 && !mount[0].isEmpty() && !mount[1].isEmpty()) {
+                            options.addMount(mount[0], Paths.get(mount[1]));
+                        } else {
+                            output.withRedLn("mount argument requires a <NAS path>=<local path> parameter");
+                        }
+                    } else {
+                        output.withRedLn("mount argument requires a <NAS path>=<local path> parameter");
+                    }
+                    break;
+                case "-manifest-dir":
+                case "--manifest-dir":
+                    if (argIterator.hasNext()) {
+                        options.setManifestDirectory(Paths.get(argIterator.next()));
+                    } else {
+                        output.withRedLn("manifest-dir argument requires a parameter");
+                    }
+                    break;
+                case "-catalog":
+                case "--catalog":
+                    options.setCatalog(true);
+                    break;
+                case "-dlna":
+                case "--dlna":
+                    if (argIterator.hasNext()) {
+                        try {
+                            options.setDlnaLocation(new URI(argIterator.next()));
+                        } catch (URISyntaxException e) {
+                            output.withRedLn("dlna argument requires a valid URL: " + e.getMessage());
+                        }
+                    } else {
+                        output.withRedLn("dlna argument requires a parameter (media server description URL)");
+                    }
+                    break;
+                case "-catalog-find":
+                case "--catalog-find":
+                    if (argIterator.hasNext()) {
+                        catalogQueries.add(argIterator.next());
+                    } else {
+                        output.withRedLn("catalog-find argument requires a parameter (file name or catalog path)");
+                    }
+                    break;
+                case "-upload":
+                case "--upload":
+                    if (argIterator.hasNext()) {
+                        uploadSources.add(Paths.get(argIterator.next()));
+                    } else {
+                        output.withRedLn("upload argument requires a parameter (file or directory)");
+                    }
+                    break;
+                case "-upload-to":
+                case "--upload-to":
+                    if (argIterator.hasNext()) {
+                        uploadDirectory = argIterator.next();
+                    } else {
+                        output.withRedLn("upload-to argument requires a parameter (NAS directory)");
+                    }
+                    break;
+                case "-uploads":
+                case "--uploads":
+                    if (argIterator.hasNext()) {
+                        uploads = parsePositive(argIterator.next(), DEFAULT_UPLOADS, "uploads");
+                    } else {
+                        output.withRedLn("uploads argument requires a parameter");
+                    }
+                    break;
+                case "-no-rescan":
+                case "--no-rescan":
+                    rescanAfterUpload = false;
+                    break;
+                case "-overwrite":
+                case "--overwrite":
+                    overwrite = true;
+                    break;
+                case "-download":
+                case "--download":
+                    if (argIterator.hasNext()) {
+                        downloadFiles.add(argIterator.next());
+                    } else {
+                        output.withRedLn("download argument requires a parameter (NAS file)");
+                    }
+                    break;
+                case "-download-to":
+                case "--download-to":
+                    if (argIterator.hasNext()) {
+                        downloadDirectory = Paths.get(argIterator.next());
+                    } else {
+                        output.withRedLn("download-to argument requires a parameter (local directory)");
+                    }
+                    break;
+                case "-segments":
+                case "--segments":
+                    if (argIterator.hasNext()) {
+                        segments = parsePositive(argIterator.next(), DEFAULT_SEGMENTS, "segments");
+                    } else {
+                        output.withRedLn("segments argument requires a parameter");
+                    }
+                    break;
+                case "-status":
+                case "--status":
+                    status = true;
+                    break;
+                case "-experimental":
+                case "--experimental":
+                    experimental = true;
+                    break;
+                case "-sample":
+                case "--sample":
+                    if (argIterator.hasNext()) {
+                        options.setSampleInterval(Duration.ofSeconds(parsePositive(argIterator.next(),
+                            DEFAULT_SAMPLE_SECONDS, "sample")));
+                    } else {
+                        output.withRedLn("sample argument requires a parameter (seconds)");
+                    }
+                    break;
+                case "-sample-file":
+                case "--sample-file":
+                    if (argIterator.hasNext()) {
+                        options.setSampleFile(Paths.get(argIterator.next()));
+                    } else {
+                        output.withRedLn("sample-file argument requires a parameter");
+                    }
+                    break;
+                case "-monitor":
+                case "--monitor":
+                    monitor = true;
+                    break;
+                case "-batch":
+                case "--batch":
+                    if (argIterator.hasNext()) {
+                        batchFile = argIterator.next();
+                    } else {
+                        output.withRedLn("batch argument requires a parameter (file, or - for the standard input)");
+                    }
+                    break;
+                case "-continue-on-error":
+                case "--continue-on-error":
+                    continueOnError = true;
+                    break;
+                case "-daemon":
+                case "--daemon":
+                    daemon = true;
+                    break;
+                case "-interval":
+                case "--interval":
+                    if (argIterator.hasNext()) {
+                        daemonInterval = Duration.ofMinutes(parsePositive(argIterator.next(), 0, "interval"));
+                    } else {
+                        output.withRedLn("interval argument requires a parameter (minutes)");
+                    }
+                    break;
+                case "-watch":
+                case "--watch":
+                    watch = true;
+                    break;
+                case "-debounce":
+                case "--debounce":
+                    if (argIterator.hasNext()) {
+                        daemonDebounce = Duration.ofSeconds(parsePositive(argIterator.next(),
+                            DEFAULT_DEBOUNCE_SECONDS, "debounce"));
+                    } else {
+                        output.withRedLn("debounce argument requires a parameter (seconds)");
+                    }
+                    break;
+                case "-json":
+                case "--json":
+                    // the text output goes to the standard error until the run starts, stdout is only JSON
+                    json = true;
+                    output.setAnsi(false);
+                    output.setOutput(System.err);
+                    break;
+                case "-plain":
+                case "--plain":
+                    output.setAnsi(false);
+                    break;
+                case "-color":
+                case "--color":
+                    output.setAnsi(true);
+                    break;
+                case "-frame-rate":
+                case "--frame-rate":
+                    if (argIterator.hasNext()) {
+                        output.setFrameRate(parsePositive(argIterator.next(), DEFAULT_FRAME_RATE, "frame-rate"));
+                    } else {
+                        output.withRedLn("frame-rate argument requires a parameter (frames per second)");
+                    }
+                    break;
+                case "-connect-timeout":
+                case "--connect-timeout":
+                    if (argIterator.hasNext()) {
+                        options.getClientSettings().setConnectTimeout(Duration.ofSeconds(parsePositive(
+                            argIterator.next(), (int) options.getClientSettings().getConnectTimeout().getSeconds(),
+                            "connect-timeout")));
+                    } else {
+                        output.withRedLn("connect-timeout argument requires a parameter (seconds)");
+                    }
+                    break;
+                case "-request-timeout":
+                case "--request-timeout":
+                    if (argIterator.hasNext()) {
+                        options.getClientSettings().setRequestTimeout(Duration.ofSeconds(parsePositive(
+                            argIterator.next(), (int) options.getClientSettings().getRequestTimeout().getSeconds(),
+                            "request-timeout")));
+                    } else {
+                        output.withRedLn("request-timeout argument requires a parameter (seconds)");
+                    }
+                    break;
+                case "-retries":
+                case "--retries":
+                    if (argIterator.hasNext()) {
+                        String retries = argIterator.next();
+                        options.getClientSettings().setMaxRetries(retries.equals("0") ? 0 : parsePositive(retries,
+                            options.getClientSettings().getMaxRetries(), "retries"));
+                    } else {
+                        output.withRedLn("retries argument requires a parameter");
+                    }
+                    break;
+                case "-http2":
+                case "--http2":
+                    options.getClientSettings().setHttpVersion(HttpClient.Version.HTTP_2);
+                    break;
                 case "-u":
                 case "-user":
                 case "--user":
                 case "--u":
                     if (argIterator.hasNext()) {
-                        username = argIterator.next();
+                        options.setUsername(argIterator.next());
                     } else {
                         output.withRedLn("user argument requires a parameter");
                     }
@@ -180,7 +815,7 @@ public class App {
                 case "--pass":
                 case "--p":
                     if (argIterator.hasNext()) {
-                        pwd = argIterator.next();
+                        options.setPwd(argIterator.next());
                     } else {
                         output.withRedLn("password argument requires a parameter (base64 encoded password)");
                     }
@@ -189,12 +824,26 @@ public class App {
         }
     }
 
-    private static void sleep() {
+    private List<String> readBatchFile() throws IOException {
+        if (batchFile.equals("-")) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(System.in))) {
+                return reader.lines().collect(Collectors.toList());
+            }
+        }
+        return Files.readAllLines(Paths.get(batchFile));
+    }
+
+    private int parsePositive(String value, int defaultValue, String argument) {
         try {
-            Thread.sleep(500);
-        } catch (InterruptedException e) {
+            int parsed = Integer.parseInt(value);
+            if (parsed > 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
             // ignored
         }
+        output.withRedLn(argument + " argument requires a positive number");
+        return defaultValue;
     }
 
 }
@@ -0,0 +1,37 @@
+package hu.codelens.sharecenter;
+
+import hu.codelens.sharecenter.internal.DefaultAsyncJShareCenter;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+public interface AsyncJShareCenter {
+
+    static AsyncJShareCenter getDefault(String host) {
+        return new DefaultAsyncJShareCenter(host);
+    }
+
+    static AsyncJShareCenter getDefault(String host, Executor executor) {
+        return new DefaultAsyncJShareCenter(host, executor);
+    }
+
+    static AsyncJShareCenter getDefault(String host, JShareCenterSettings settings) {
+        return new DefaultAsyncJShareCenter(host, settings);
+    }
+
+    CompletableFuture<Boolean> login(String username, String base64password);
+
+    CompletableFuture<Void> logout(String username);
+
+    CompletableFuture<Optional<Boolean>> checkMediaScanRunning();
+
+    CompletableFuture<Optional<Boolean>> startMediaScan(JShareCenterMediaPath mediaPath);
+
+    CompletableFuture<Optional<Boolean>> checkMediaScanFinished();
+
+    CompletableFuture<Optional<Integer>> checkMediaScanProgress();
+
+    CompletableFuture<Optional<Collection<JShareCenterMediaPath>>> getMediaServerPathList();
+}
@@ -0,0 +1,236 @@
+package hu.codelens.sharecenter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the commands of a batch file over one session. Consecutive read-only commands run in parallel, their output is
+ * collected and printed in the order of the file.
+ */
+class BatchRun {
+
+    private static final Set<String> READ_ONLY_COMMANDS = Set.of("list", "status");
+    private static final Set<String> COMMANDS = Set.of("list", "status", "rescan");
+
+    private final String host;
+    private final RescanOptions options;
+    private final ColorOutput output;
+    private final List<Command> commands;
+    private final boolean continueOnError;
+    private final int parallelism;
+
+    BatchRun(String host, RescanOptions options, ColorOutput output, List<Command> commands, boolean continueOnError,
+             int parallelism) {
+        this.host = host;
+        this.options = options;
+        this.output = output;
+        this.commands = commands;
+        this.continueOnError = continueOnError;
+        this.parallelism = parallelism;
+    }
+
+    static List<Command> parse(List<String> lines) {
+        List<Command> commands = new ArrayList<>();
+        for (int index = 0; index < lines.size(); index++) {
+            String line = lines.get(index).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            List<String> words = Arrays.asList(line.split("\\s+"));
+            String name = words.get(0).toLowerCase(Locale.ROOT);
+            if (!COMMANDS.contains(name)) {
+                throw new IllegalArgumentException("Unknown command in line " + (index + 1) + ": " + words.get(0));
+            }
+            if (!name.equals("rescan") && words.size() > 1) {
+                throw new IllegalArgumentException("The " + name + " command in line " + (index + 1)
+                    + " has no arguments");
+            }
+            commands.add(new Command(index + 1, name, words.subList(1, words.size())));
+        }
+        return commands;
+    }
+
+    int run() {
+        MediaRescan mediaRescan = new MediaRescan(host, options, output);
+        JShareCenter shareCenter = mediaRescan.open();
+        AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "jsharecenter-batch-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        int failed = 0;
+        int index = 0;
+        try {
+            while (index < commands.size() && (failed == 0 || continueOnError)) {
+                int end = index;
+                while (end < commands.size() && commands.get(end).isReadOnly()) {
+                    end++;
+                }
+
+                if (end - index > 1) {
+                    failed += runParallel(shareCenter, commands.subList(index, end), executor);
+                    index = end;
+                } else {
+                    failed += execute(shareCenter, mediaRescan, commands.get(index), output) ? 0 : 1;
+                    index++;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            mediaRescan.close(shareCenter);
+        }
+
+        int skipped = commands.size() - index;
+        int succeeded = index - failed;
+        int failedCommands = failed;
+        mediaRescan.emit("finish", event -> event.field("succeeded", succeeded).field("failed", failedCommands)
+            .field("skipped", skipped));
+        output.dotLine("Batch finished: " + succeeded + " succeeded");
+        if (failed > 0) {
+            output.withRedLn(", " + failed + " failed" + (skipped > 0 ? ", " + skipped + " skipped" : ""));
+        } else {
+            output.getOutput().println();
+        }
+        return failed;
+    }
+
+    private int runParallel(JShareCenter shareCenter, List<Command> group, ExecutorService executor) {
+        // the commands share the session: DefaultJShareCenter can be called from several threads, it collapses the
+        // concurrent status calls and logs in again only once when they find the session expired
+        List<ByteArrayOutputStream> buffers = new ArrayList<>();
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        group.forEach(command -> {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            ColorOutput commandOutput = ColorOutput.getDefault();
+            commandOutput.setAnsi(output.isAnsi());
+            commandOutput.setOutput(new PrintStream(buffer, true, StandardCharsets.UTF_8));
+            buffers.add(buffer);
+            futures.add(CompletableFuture.supplyAsync(() -> execute(shareCenter,
+                new MediaRescan(host, options, commandOutput), command, commandOutput), executor));
+        });
+
+        int failed = 0;
+        for (int index = 0; index < group.size(); index++) {
+            failed += futures.get(index).join() ? 0 : 1;
+            output.getOutput().print(buffers.get(index).toString(StandardCharsets.UTF_8));
+        }
+        output.getOutput().flush();
+        return failed;
+    }
+
+    private boolean execute(JShareCenter shareCenter, MediaRescan mediaRescan, Command command,
+                            ColorOutput commandOutput) {
+        commandOutput.dotLineLn("[" + command.getLine() + "] " + command);
+        long start = System.nanoTime();
+        String error = null;
+        boolean succeeded = false;
+        try {
+            succeeded = dispatch(shareCenter, mediaRescan, command, commandOutput);
+        } catch (RuntimeException e) {
+            // any failure fails the command only, the batch decides whether to go on
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            error = cause.getMessage() != null ? cause.getMessage() : cause.toString();
+            commandOutput.withRedLn("  " + command.getName() + " failed: " + error);
+        }
+
+        boolean success = succeeded;
+        String message = error;
+        mediaRescan.emit("command", event -> {
+            event.field("line", command.getLine()).field("command", command.toString()).field("success", success)
+                .field("durationMs", Duration.ofNanos(System.nanoTime() - start));
+            if (message != null) {
+                event.field("error", message);
+            }
+        });
+        return success;
+    }
+
+    private boolean dispatch(JShareCenter shareCenter, MediaRescan mediaRescan, Command command,
+                             ColorOutput commandOutput) {
+        switch (command.getName()) {
+            case "list":
+                list(shareCenter, mediaRescan, commandOutput);
+                return true;
+            case "status":
+                new StatusReport(host, options, commandOutput).report(shareCenter);
+                return true;
+            case "rescan":
+                return rescan(shareCenter, mediaRescan, command.getArguments());
+            default:
+                throw new IllegalStateException("Unknown command: " + command.getName());
+        }
+    }
+
+    private void list(JShareCenter shareCenter, MediaRescan mediaRescan, ColorOutput commandOutput) {
+        long start = System.nanoTime();
+        Optional<Collection<JShareCenterMediaPath>> foundPathList = shareCenter.getMediaServerPathList();
+        mediaRescan.emitPaths(foundPathList, Duration.ofNanos(System.nanoTime() - start));
+        Collection<JShareCenterMediaPath> mediaPaths = foundPathList
+            .orElseThrow(() -> new RescanException(4, "Media paths not found"));
+        mediaPaths.forEach(mediaPath -> commandOutput.getOutput().println("  " + mediaPath.getVolume() + "  "
+            + mediaPath.getInternalPath()));
+    }
+
+    private boolean rescan(JShareCenter shareCenter, MediaRescan mediaRescan, List<String> volumes) {
+        Collection<JShareCenterMediaPath> mediaPaths = shareCenter.getMediaServerPathList()
+            .orElseThrow(() -> new RescanException(4, "Media paths not found"));
+
+        List<JShareCenterMediaPath> selected = new ArrayList<>();
+        if (volumes.isEmpty()) {
+            selected.addAll(mediaPaths);
+        }
+        volumes.forEach(volume -> selected.add(mediaPaths.stream()
+            .filter(mediaPath -> volume.equals(mediaPath.getVolume()) || volume.equals(mediaPath.getInternalPath()))
+            .findFirst()
+            .orElseThrow(() -> new RescanException(4, "Unknown media path: " + volume))));
+
+        RescanResult result = new RescanResult(host);
+        mediaRescan.rescan(shareCenter, selected, result);
+        return result.getStatus() == RescanResult.Status.OK;
+    }
+
+    static class Command {
+
+        private final int line;
+        private final String name;
+        private final List<String> arguments;
+
+        Command(int line, String name, List<String> arguments) {
+            this.line = line;
+            this.name = name;
+            this.arguments = arguments;
+        }
+
+        int getLine() {
+            return line;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        List<String> getArguments() {
+            return arguments;
+        }
+
+        boolean isReadOnly() {
+            return READ_ONLY_COMMANDS.contains(name);
+        }
+
+        @Override
+        public String toString() {
+            return arguments.isEmpty() ? name : name + " " + String.join(" ", arguments);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package hu.codelens.sharecenter;
+
+import hu.codelens.sharecenter.internal.ContentDirectoryClient;
+import hu.codelens.sharecenter.internal.Json;
+import hu.codelens.sharecenter.internal.MediaCatalog;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.StringJoiner;
+
+/**
+ * Keeps a local copy of the media server catalog of a host, compares it before and after a rescan and answers
+ * lookups from the copy.
+ */
+class CatalogMirror {
+
+    private static final int BROWSE_PARALLELISM = 4;
+    private static final int DEFAULT_DLNA_PORT = 8200;
+    private static final int LISTED_CHANGES = 20;
+    private static final int EMITTED_CHANGES = 100;
+
+    private final String host;
+    private final RescanOptions options;
+    private final ColorOutput output;
+    private final MediaRescan mediaRescan;
+
+    CatalogMirror(String host, RescanOptions options, ColorOutput output, MediaRescan mediaRescan) {
+        this.host = host;
+        this.options = options;
+        this.output = output;
+        this.mediaRescan = mediaRescan;
+    }
+
+    Optional<MediaCatalog> before() {
+        // a copy from an earlier run would also count the changes made since then, not only those of this rescan
+        return mirror("Reading the media catalog... ");
+    }
+
+    void verify(MediaCatalog before) {
+        mirror("Verifying the media catalog... ").ifPresent(after -> {
+            MediaCatalog.Diff diff = MediaCatalog.diff(before, after);
+            list("+ ", diff.getAdded());
+            list("- ", diff.getMissing());
+            output.getOutput().println("  " + diff.getAdded().size() + " added, " + diff.getMissing().size()
+                + " missing");
+            mediaRescan.emit("catalog_diff", event -> event.field("entries", after.size())
+                .field("files", after.getFileCount())
+                .field("added", diff.getAdded().size())
+                .field("missing", diff.getMissing().size())
+                .raw("addedPaths", paths(diff.getAdded()))
+                .raw("missingPaths", paths(diff.getMissing())));
+        });
+    }
+
+    int query(List<String> queries) {
+        Path file = getCatalogFile();
+        if (!Files.isRegularFile(file)) {
+            output.dot();
+            output.withRedLn(" No media catalog of " + host + " yet, run a rescan with --catalog first");
+            return queries.size();
+        }
+
+        MediaCatalog catalog = MediaCatalog.open(file);
+        output.dotLineLn("Media catalog of " + host + " from " + catalog.getCreatedAt() + ", "
+            + catalog.getFileCount() + " files");
+        int missing = 0;
+        for (String query : queries) {
+            List<MediaCatalog.Entry> found = find(catalog, query);
+            if (found.isEmpty()) {
+                output.withRedLn("  " + query + ": not indexed");
+                missing++;
+            } else {
+                found.forEach(entry -> output.withGreenLn("  " + query + ": indexed as " + entry.getPath()
+                    + " (" + entry.getId() + ")"));
+            }
+        }
+        return missing;
+    }
+
+    private static List<MediaCatalog.Entry> find(MediaCatalog catalog, String query) {
+        if (query.startsWith("/")) {
+            Optional<MediaCatalog.Entry> byPath = catalog.findByPath(query);
+            if (byPath.isPresent()) {
+                return List.of(byPath.get());
+            }
+        }
+
+        // media servers usually show the files by their title, which is the file name without the extension
+        String name = query.substring(query.lastIndexOf('/') + 1);
+        List<MediaCatalog.Entry> found = catalog.findByTitle(name);
+        int extension = name.lastIndexOf('.');
+        if (found.isEmpty() && extension > 0) {
+            found = catalog.findByTitle(name.substring(0, extension));
+        }
+        return found;
+    }
+
+    private Optional<MediaCatalog> mirror(String message) {
+        output.dotLine(message);
+        long start = System.nanoTime();
+        try {
+            List<MediaCatalog.Entry> entries = new ContentDirectoryClient(getDescriptionUri(),
+                options.getClientSettings(), BROWSE_PARALLELISM).browseAll();
+            MediaCatalog catalog = MediaCatalog.write(getCatalogFile(), entries);
+            Duration duration = Duration.ofNanos(System.nanoTime() - start);
+            output.withGreenLn(catalog.size() + " entries, " + catalog.getFileCount() + " files in "
+                + Durations.format(duration));
+            mediaRescan.emit("catalog", event -> event.field("entries", catalog.size())
+                .field("files", catalog.getFileCount()).field("durationMs", duration));
+            return Optional.of(catalog);
+        } catch (IllegalStateException e) {
+            output.withYellowLn("failed: " + e.getMessage());
+            mediaRescan.emit("catalog", event -> event.field("error", String.valueOf(e.getMessage())));
+            return Optional.empty();
+        }
+    }
+
+    private void list(String prefix, List<MediaCatalog.Entry> entries) {
+        entries.stream().limit(LISTED_CHANGES).forEach(entry -> output.getOutput().println("  " + prefix
+            + entry.getPath()));
+        if (entries.size() > LISTED_CHANGES) {
+            output.getOutput().println("  " + prefix + "... and " + (entries.size() - LISTED_CHANGES) + " more");
+        }
+    }
+
+    private static String paths(List<MediaCatalog.Entry> entries) {
+        StringJoiner paths = new StringJoiner(",", "[", "]");
+        entries.stream().limit(EMITTED_CHANGES).forEach(entry -> paths.add(Json.quote(entry.getPath())));
+        return paths.toString();
+    }
+
+    private URI getDescriptionUri() {
+        if (options.getDlnaLocation() != null) {
+            return options.getDlnaLocation();
+        }
+        // the host may come with the port of the web interface
+        String hostName = URI.create("https://" + host).getHost();
+        return URI.create("http://" + hostName + ":" + DEFAULT_DLNA_PORT + "/rootDesc.xml");
+    }
+
+    private Path getCatalogFile() {
+        return options.getManifestDirectory().resolve(MediaRescan.fileName(host) + ".catalog");
+    }
+}
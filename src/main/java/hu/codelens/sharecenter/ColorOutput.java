@@ -14,6 +14,12 @@ public interface ColorOutput {
 
     void setOutput(PrintStream output);
 
+    boolean isAnsi();
+
+    void setAnsi(boolean ansi);
+
+    void setFrameRate(int framesPerSecond);
+
     void nl();
 
     void reset();
@@ -61,4 +67,6 @@ public interface ColorOutput {
     void progress(int padding, int len, int percentage);
 
     void progress(int padding, int len, int percentage, boolean spinner);
+
+    void progress(int padding, int len, int percentage, boolean spinner, String status);
 }
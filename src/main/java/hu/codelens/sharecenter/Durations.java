@@ -0,0 +1,20 @@
+package hu.codelens.sharecenter;
+
+import java.time.Duration;
+
+final class Durations {
+
+    private Durations() {
+    }
+
+    static String format(Duration duration) {
+        long seconds = duration.getSeconds();
+        if (seconds >= 3600) {
+            return (seconds / 3600) + "h " + (seconds % 3600 / 60) + "m";
+        }
+        if (seconds >= 60) {
+            return (seconds / 60) + "m " + (seconds % 60) + "s";
+        }
+        return seconds + "." + (duration.toMillisPart() / 100) + "s";
+    }
+}
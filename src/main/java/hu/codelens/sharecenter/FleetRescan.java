@@ -0,0 +1,150 @@
+package hu.codelens.sharecenter;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class FleetRescan {
+
+    private final List<String> hosts;
+    private final RescanOptions options;
+    private final int parallelism;
+    private final ColorOutput output;
+
+    FleetRescan(List<String> hosts, RescanOptions options, int parallelism, ColorOutput output) {
+        this.hosts = hosts;
+        this.options = options;
+        this.parallelism = Math.max(1, Math.min(parallelism, hosts.size()));
+        this.output = output;
+    }
+
+    List<RescanResult> run() {
+        output.dotLineLn("Rescanning " + hosts.size() + " ShareCenters, " + parallelism + " at a time");
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "jsharecenter-fleet-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // the HTTP clients of the hosts share one pool instead of starting their own threads
+        JShareCenterSettings clientSettings = options.getClientSettings();
+        ExecutorService httpExecutor = null;
+        if (clientSettings.getExecutor() == null) {
+            httpExecutor = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "jsharecenter-http-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            clientSettings.setExecutor(httpExecutor);
+        }
+
+        long start = System.nanoTime();
+        try {
+            List<Future<RescanResult>> futures = new ArrayList<>();
+            hosts.forEach(host -> futures.add(executor.submit(() -> rescanHost(host))));
+
+            List<RescanResult> results = new ArrayList<>();
+            for (int index = 0; index < futures.size(); index++) {
+                results.add(await(hosts.get(index), futures.get(index), start));
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+            if (httpExecutor != null) {
+                clientSettings.setExecutor(null);
+                httpExecutor.shutdownNow();
+            }
+        }
+    }
+
+    void printSummary(List<RescanResult> results) {
+        int hostWidth = results.stream().mapToInt(result -> result.getHost().length()).max().orElse(0);
+
+        output.nl();
+        output.dotLineLn("Fleet summary:");
+        results.forEach(result -> {
+            output.getOutput().print("  " + pad(result.getHost(), hostWidth) + "  ");
+            switch (result.getStatus()) {
+                case OK:
+                    output.withGreen(pad("ok", 7));
+                    break;
+                case PARTIAL:
+                    output.withYellow(pad("partial", 7));
+                    break;
+                default:
+                    output.withRed(pad("failed", 7));
+                    break;
+            }
+            output.getOutput().println("  " + Durations.format(result.getDuration()));
+            result.getScanDurations().forEach((volume, duration) ->
+                output.getOutput().println("    " + volume + " scanned in " + Durations.format(duration)));
+            result.getSkipped().forEach(volume -> output.getOutput().println("    " + volume + " unchanged"));
+            result.getFailures().forEach(failure -> output.withRedLn("    " + failure));
+        });
+        output.nl();
+    }
+
+    private RescanResult rescanHost(String host) {
+        ColorOutput hostOutput = ColorOutput.getDefault();
+        hostOutput.setOutput(new PrintStream(OutputStream.nullOutputStream()));
+
+        RescanResult result = new RescanResult(host);
+        try {
+            new MediaRescan(host, options, hostOutput).run(result);
+        } catch (RuntimeException e) {
+            // the failure and the duration are recorded in the result already, next to the volumes scanned before
+        }
+
+        reportFinished(result);
+        return result;
+    }
+
+    private synchronized void reportFinished(RescanResult result) {
+        output.dotLine(result.getHost() + " ");
+        switch (result.getStatus()) {
+            case OK:
+                output.withGreenLn("finished");
+                break;
+            case PARTIAL:
+                output.withYellowLn("finished with failures");
+                break;
+            default:
+                output.withRedLn("failed");
+                break;
+        }
+    }
+
+    private static RescanResult await(String host, Future<RescanResult> future, long start) {
+        String failure;
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            failure = String.valueOf(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = "Interrupted";
+        }
+
+        RescanResult result = new RescanResult(host);
+        result.addFailure(failure);
+        result.setDuration(Duration.ofNanos(System.nanoTime() - start));
+        return result;
+    }
+
+    private static String pad(String text, int width) {
+        StringBuilder builder = new StringBuilder(text);
+        while (builder.length() < width) {
+            builder.append(' ');
+        }
+        return builder.toString();
+    }
+}
@@ -2,8 +2,13 @@ package hu.codelens.sharecenter;
 
 import hu.codelens.sharecenter.internal.DefaultJShareCenter;
 
+import java.nio.file.Path;
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.Flow;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
 
 public interface JShareCenter {
 
@@ -11,10 +16,24 @@ public interface JShareCenter {
         return new DefaultJShareCenter(host);
     }
 
+    static JShareCenter getDefault(String host, JShareCenterMetrics metrics) {
+        return new DefaultJShareCenter(host, metrics);
+    }
+
+    static JShareCenter getDefault(String host, JShareCenterSettings settings) {
+        return new DefaultJShareCenter(host, settings);
+    }
+
     boolean login(String username, String base64password);
 
     void logout(String username);
 
+    boolean resumeSession(Path sessionFile);
+
+    boolean resumeSession(Path sessionFile, String username, String base64password);
+
+    void saveSession(Path sessionFile);
+
     Optional<Boolean> checkMediaScanRunning();
 
     Optional<Boolean> startMediaScan(JShareCenterMediaPath mediaPath);
@@ -23,5 +42,27 @@ public interface JShareCenter {
 
     Optional<Integer> checkMediaScanProgress();
 
+    Flow.Publisher<JShareCenterScanProgress> watchMediaScan(JShareCenterMediaPath mediaPath);
+
+    Optional<JShareCenterSystemStatus> getSystemStatus();
+
     Optional<Collection<JShareCenterMediaPath>> getMediaServerPathList();
+
+    Stream<JShareCenterMediaPath> streamMediaServerPathList();
+
+    Stream<JShareCenterMediaPath> streamMediaServerPathList(int pageSize);
+
+    Optional<List<JShareCenterFile>> listDirectory(String internalPath);
+
+    Optional<List<JShareCenterFile>> listFolders(String internalPath);
+
+    Optional<Boolean> uploadFile(Path localFile, String internalDirectory);
+
+    Optional<Boolean> uploadFile(Path localFile, String internalDirectory, LongConsumer progress);
+
+    Optional<Boolean> uploadFile(Path localFile, String internalDirectory, boolean overwrite, LongConsumer progress);
+
+    Optional<Long> downloadFile(String internalPath, Path localFile);
+
+    Optional<Long> downloadFile(String internalPath, Path localFile, int segments, LongConsumer progress);
 }
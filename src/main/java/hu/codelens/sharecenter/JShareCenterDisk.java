@@ -0,0 +1,21 @@
+package hu.codelens.sharecenter;
+
+import java.util.Optional;
+
+public interface JShareCenterDisk {
+
+    int getSlot();
+
+    String getModel();
+
+    long getSize();
+
+    long getUsed();
+
+    Optional<Integer> getTemperature();
+
+    String getSmartStatus();
+
+    boolean isHealthy();
+
+}
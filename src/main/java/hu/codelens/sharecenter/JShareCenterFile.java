@@ -0,0 +1,17 @@
+package hu.codelens.sharecenter;
+
+import java.time.Instant;
+
+public interface JShareCenterFile {
+
+    String getName();
+
+    String getPath();
+
+    boolean isDirectory();
+
+    long getSize();
+
+    Instant getLastModified();
+
+}
@@ -0,0 +1,31 @@
+package hu.codelens.sharecenter;
+
+import hu.codelens.sharecenter.internal.DefaultJShareCenterMetrics;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+public interface JShareCenterMetrics {
+
+    static JShareCenterMetrics create() {
+        return new DefaultJShareCenterMetrics();
+    }
+
+    void recordRequest(String host, String command, Duration latency, long bytes, boolean error);
+
+    void recordRetry(String host, String command);
+
+    void recordConnection(String host);
+
+    void recordRelogin(String host);
+
+    void recordScan(String host, String volume, Duration duration);
+
+    String toJson();
+
+    String toPrometheus();
+
+    void writeJson(Path file);
+
+    void writePrometheus(Path file);
+}
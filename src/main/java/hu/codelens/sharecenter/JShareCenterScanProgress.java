@@ -0,0 +1,22 @@
+package hu.codelens.sharecenter;
+
+import java.time.Duration;
+import java.util.Optional;
+
+public interface JShareCenterScanProgress {
+
+    JShareCenterMediaPath getMediaPath();
+
+    int getPercentage();
+
+    Duration getElapsed();
+
+    Optional<Duration> getEstimatedRemaining();
+
+    boolean isFinished();
+
+    boolean isFailed();
+
+    Optional<String> getFailure();
+
+}
@@ -0,0 +1,143 @@
+package hu.codelens.sharecenter;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+public class JShareCenterSettings {
+
+    private static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(60);
+    private static final int DEFAULT_MAX_RETRIES = 3;
+    private static final Duration DEFAULT_INITIAL_BACKOFF = Duration.ofMillis(250);
+    private static final Duration DEFAULT_MAX_BACKOFF = Duration.ofSeconds(10);
+    private static final Duration DEFAULT_STATUS_CACHE_TTL = Duration.ofSeconds(5);
+    private static final Duration DEFAULT_MIN_POLL_INTERVAL = Duration.ofMillis(500);
+    private static final Duration DEFAULT_MAX_POLL_INTERVAL = Duration.ofSeconds(5);
+
+    private Duration connectTimeout;
+    private Duration requestTimeout;
+    private HttpClient.Version httpVersion;
+    private Executor executor;
+    private int maxRetries;
+    private Duration initialBackoff;
+    private Duration maxBackoff;
+    private Duration statusCacheTtl;
+    private final Map<JShareCenterStatusCommand, Duration> commandCacheTtls;
+    private Duration minPollInterval;
+    private Duration maxPollInterval;
+    private JShareCenterMetrics metrics;
+
+    public JShareCenterSettings() {
+        connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+        requestTimeout = DEFAULT_REQUEST_TIMEOUT;
+        httpVersion = HttpClient.Version.HTTP_1_1;
+        executor = null;
+        maxRetries = DEFAULT_MAX_RETRIES;
+        initialBackoff = DEFAULT_INITIAL_BACKOFF;
+        maxBackoff = DEFAULT_MAX_BACKOFF;
+        statusCacheTtl = DEFAULT_STATUS_CACHE_TTL;
+        commandCacheTtls = new ConcurrentHashMap<>();
+        minPollInterval = DEFAULT_MIN_POLL_INTERVAL;
+        maxPollInterval = DEFAULT_MAX_POLL_INTERVAL;
+        metrics = null;
+    }
+
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(Duration connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    public void setRequestTimeout(Duration requestTimeout) {
+        this.requestTimeout = requestTimeout;
+    }
+
+    public HttpClient.Version getHttpVersion() {
+        return httpVersion;
+    }
+
+    public void setHttpVersion(HttpClient.Version httpVersion) {
+        this.httpVersion = httpVersion;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public Duration getInitialBackoff() {
+        return initialBackoff;
+    }
+
+    public void setInitialBackoff(Duration initialBackoff) {
+        this.initialBackoff = initialBackoff;
+    }
+
+    public Duration getMaxBackoff() {
+        return maxBackoff;
+    }
+
+    public void setMaxBackoff(Duration maxBackoff) {
+        this.maxBackoff = maxBackoff;
+    }
+
+    public Duration getStatusCacheTtl() {
+        return statusCacheTtl;
+    }
+
+    public void setStatusCacheTtl(Duration statusCacheTtl) {
+        this.statusCacheTtl = statusCacheTtl;
+    }
+
+    public Map<JShareCenterStatusCommand, Duration> getCommandCacheTtls() {
+        return Map.copyOf(commandCacheTtls);
+    }
+
+    public void setCommandCacheTtl(JShareCenterStatusCommand command, Duration ttl) {
+        commandCacheTtls.put(command, ttl);
+    }
+
+    public Duration getMinPollInterval() {
+        return minPollInterval;
+    }
+
+    public void setMinPollInterval(Duration minPollInterval) {
+        this.minPollInterval = minPollInterval;
+    }
+
+    public Duration getMaxPollInterval() {
+        return maxPollInterval;
+    }
+
+    public void setMaxPollInterval(Duration maxPollInterval) {
+        this.maxPollInterval = maxPollInterval;
+    }
+
+    public JShareCenterMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(JShareCenterMetrics metrics) {
+        this.metrics = metrics;
+    }
+}
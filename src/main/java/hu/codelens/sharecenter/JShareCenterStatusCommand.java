@@ -0,0 +1,17 @@
+package hu.codelens.sharecenter;
+
+/**
+ * The scan state commands whose answer can be kept for a while, see
+ * {@link JShareCenterSettings#setCommandCacheTtl(JShareCenterStatusCommand, java.time.Duration)}.
+ */
+public enum JShareCenterStatusCommand {
+
+    /** {@link JShareCenter#checkMediaScanRunning()} */
+    MEDIA_SCAN_RUNNING,
+
+    /** {@link JShareCenter#checkMediaScanFinished()} */
+    MEDIA_SCAN_FINISHED,
+
+    /** {@link JShareCenter#checkMediaScanProgress()} */
+    MEDIA_SCAN_PROGRESS
+}
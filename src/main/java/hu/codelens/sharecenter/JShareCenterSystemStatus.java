@@ -0,0 +1,28 @@
+package hu.codelens.sharecenter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+public interface JShareCenterSystemStatus {
+
+    Instant getTimestamp();
+
+    Optional<Integer> getSystemTemperature();
+
+    Optional<Duration> getUptime();
+
+    Optional<Integer> getCpuUsage();
+
+    Optional<Long> getMemoryTotal();
+
+    Optional<Long> getMemoryFree();
+
+    Optional<Long> getIoReadRate();
+
+    Optional<Long> getIoWriteRate();
+
+    List<JShareCenterDisk> getDisks();
+
+}
@@ -0,0 +1,78 @@
+package hu.codelens.sharecenter;
+
+import hu.codelens.sharecenter.internal.Json;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.Consumer;
+
+/**
+ * Writes the steps of a run as JSON lines (one object per line with a timestamp, the host and the event type) through
+ * a single buffered writer. Lines of parallel hosts are never interleaved.
+ */
+class JsonEventWriter {
+
+    private final Writer writer;
+
+    JsonEventWriter(OutputStream output) {
+        this.writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+    }
+
+    void emit(String host, String type, Consumer<Event> fields) {
+        Event event = new Event();
+        event.line.append("{\"ts\":").append(Json.quote(Instant.now().toString()))
+            .append(",\"host\":").append(Json.quote(host))
+            .append(",\"event\":").append(Json.quote(type));
+        fields.accept(event);
+        event.line.append("}\n");
+
+        synchronized (writer) {
+            try {
+                writer.append(event.line);
+                // consumers process the stream line by line, so each event is handed over when it happened
+                writer.flush();
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not write the JSON events", e);
+            }
+        }
+    }
+
+    static class Event {
+
+        private final StringBuilder line = new StringBuilder(128);
+
+        Event field(String name, String value) {
+            name(name).append(Json.quote(value));
+            return this;
+        }
+
+        Event field(String name, long value) {
+            name(name).append(value);
+            return this;
+        }
+
+        Event field(String name, boolean value) {
+            name(name).append(value);
+            return this;
+        }
+
+        Event field(String name, Duration value) {
+            return field(name, value.toMillis());
+        }
+
+        Event raw(String name, String json) {
+            name(name).append(json);
+            return this;
+        }
+
+        private StringBuilder name(String name) {
+            return line.append(',').append(Json.quote(name)).append(':');
+        }
+    }
+}
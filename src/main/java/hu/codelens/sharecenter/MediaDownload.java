@@ -0,0 +1,179 @@
+package hu.codelens.sharecenter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Downloads files of the NAS into a local directory one after the other, every file in a few byte ranges at the same
+ * time. An interrupted download leaves its partial file behind, and the next download of the same file continues it.
+ */
+class MediaDownload {
+
+    private static final long REDRAW_MILLIS = 500;
+
+    private final String host;
+    private final RescanOptions options;
+    private final ColorOutput output;
+    private final List<String> files;
+    private final Path targetDirectory;
+    private final int segments;
+
+    MediaDownload(String host, RescanOptions options, ColorOutput output, List<String> files, Path targetDirectory,
+                  int segments) {
+        this.host = host;
+        this.options = options;
+        this.output = output;
+        this.files = files;
+        this.targetDirectory = targetDirectory;
+        this.segments = segments;
+    }
+
+    int run() {
+        try {
+            Files.createDirectories(targetDirectory);
+        } catch (IOException e) {
+            throw new RescanException(2, "Could not create download directory: " + targetDirectory);
+        }
+
+        MediaRescan mediaRescan = new MediaRescan(host, options, output);
+        JShareCenter shareCenter = mediaRescan.open();
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "jsharecenter-download");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            long start = System.nanoTime();
+            long bytes = 0;
+            int failed = 0;
+            for (String file : files) {
+                long transferred = download(shareCenter, mediaRescan, executor, file);
+                if (transferred < 0) {
+                    failed++;
+                } else {
+                    bytes += transferred;
+                }
+            }
+
+            int downloaded = files.size() - failed;
+            long totalBytes = bytes;
+            Duration duration = Duration.ofNanos(System.nanoTime() - start);
+            output.dotLine("Downloaded " + downloaded + " of " + files.size() + " files, " + Sizes.format(bytes)
+                + " in " + Durations.format(duration));
+            if (failed > 0) {
+                output.withRedLn(", " + failed + " failed");
+            } else {
+                output.getOutput().println();
+            }
+            mediaRescan.emit("download_finish", event -> event.field("downloaded", downloaded)
+                .field("failed", files.size() - downloaded)
+                .field("bytes", totalBytes)
+                .field("durationMs", duration));
+            return failed;
+        } finally {
+            executor.shutdownNow();
+            mediaRescan.close(shareCenter);
+        }
+    }
+
+    private long download(JShareCenter shareCenter, MediaRescan mediaRescan, ExecutorService executor, String file) {
+        String name = file.substring(file.lastIndexOf('/') + 1);
+        String directory = file.lastIndexOf('/') > 0 ? file.substring(0, file.lastIndexOf('/')) : "/";
+        Path destination = targetDirectory.resolve(name);
+        long start = System.nanoTime();
+
+        String error = null;
+        long transferred = -1;
+        long size = 0;
+        try {
+            // the listing of the directory tells whether the file is there and how large it is
+            Optional<JShareCenterFile> remote = shareCenter.listDirectory(directory)
+                .flatMap(listed -> listed.stream()
+                    .filter(candidate -> !candidate.isDirectory() && candidate.getName().equals(name))
+                    .findFirst());
+            if (remote.isEmpty()) {
+                error = "not found on the NAS";
+            } else {
+                size = remote.get().getSize();
+                output.dotLineLn("Downloading " + file + " (" + Sizes.format(size) + ") to " + destination + ", "
+                    + segments + " ranges at a time");
+                AtomicLong received = new AtomicLong();
+                CompletableFuture<Optional<Long>> future = CompletableFuture.supplyAsync(() ->
+                    shareCenter.downloadFile(file, destination, segments, received::addAndGet), executor);
+                Optional<Long> result = awaitWithProgress(future, received, size);
+                if (result.isEmpty()) {
+                    error = "no answer from the NAS";
+                } else {
+                    transferred = result.get();
+                }
+            }
+        } catch (IllegalStateException e) {
+            error = e.getMessage();
+        }
+
+        Duration duration = Duration.ofNanos(System.nanoTime() - start);
+        if (error != null) {
+            output.dot();
+            output.withRedLn(" " + name + ": " + error);
+        } else {
+            String resumed = size > transferred ? ", continued from " + Sizes.format(size - transferred) : "";
+            output.dotLineLn("Downloaded " + name + ", " + Sizes.format(transferred) + " in "
+                + Durations.format(duration) + " (" + rate(transferred, duration) + ")" + resumed);
+        }
+
+        String message = error;
+        long bytes = transferred;
+        long fileSize = size;
+        mediaRescan.emit("download", event -> {
+            event.field("file", file).field("size", fileSize)
+                .field("success", message == null)
+                .field("durationMs", duration);
+            if (message != null) {
+                event.field("error", message);
+            } else {
+                event.field("transferred", bytes);
+            }
+        });
+        return transferred;
+    }
+
+    private Optional<Long> awaitWithProgress(CompletableFuture<Optional<Long>> future, AtomicLong received,
+                                             long size) {
+        while (true) {
+            long bytes = received.get();
+            int percentage = size == 0 ? 100 : (int) Math.min(100, bytes * 100 / size);
+            output.progress(2, 50, percentage, true, Sizes.format(bytes));
+            try {
+                Optional<Long> result = future.get(REDRAW_MILLIS, TimeUnit.MILLISECONDS);
+                output.progress(2, 50, 100);
+                output.nl();
+                return result;
+            } catch (TimeoutException e) {
+                // redraw
+            } catch (ExecutionException e) {
+                output.nl();
+                throw e.getCause() instanceof IllegalStateException ? (IllegalStateException) e.getCause()
+                    : new IllegalStateException("Could not download", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while downloading", e);
+            }
+        }
+    }
+
+    private static String rate(long bytes, Duration duration) {
+        long millis = Math.max(1, duration.toMillis());
+        return Sizes.format(bytes * 1000 / millis) + "/s";
+    }
+}
@@ -0,0 +1,409 @@
+package hu.codelens.sharecenter;
+
+import hu.codelens.sharecenter.internal.Json;
+import hu.codelens.sharecenter.internal.DirectoryTreeCache;
+import hu.codelens.sharecenter.internal.ManifestStore;
+import hu.codelens.sharecenter.internal.MediaCatalog;
+import hu.codelens.sharecenter.internal.MediaManifest;
+import hu.codelens.sharecenter.internal.RemoteDirectoryWalker;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.StringJoiner;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+class MediaRescan {
+
+    private static final long REDRAW_INTERVAL = Duration.ofMillis(500).toNanos();
+    private static final int MAX_LISTINGS_IN_FLIGHT = 4;
+
+    private final String host;
+    private final RescanOptions options;
+    private final ColorOutput output;
+    private ResourceSampler sampler;
+
+    MediaRescan(String host, RescanOptions options, ColorOutput output) {
+        this.host = host;
+        this.options = options;
+        this.output = output;
+    }
+
+    RescanResult run() {
+        return run(new RescanResult(host));
+    }
+
+    /**
+     * Rescans into the given result, which keeps the volumes finished before a failure when the failure is thrown.
+     */
+    RescanResult run(RescanResult result) {
+        long start = System.nanoTime();
+        try {
+            JShareCenter shareCenter = open();
+            try {
+                searchMedia(shareCenter).ifPresent(mediaPaths -> rescan(shareCenter, mediaPaths, result));
+            } finally {
+                close(shareCenter);
+            }
+        } catch (RuntimeException e) {
+            String message = e.getMessage() != null ? e.getMessage() : e.toString();
+            emit("error", event -> {
+                if (e instanceof RescanException) {
+                    event.field("exitCode", ((RescanException) e).getExitCode());
+                }
+                event.field("message", message);
+            });
+            result.addFailure(message);
+            throw e;
+        } finally {
+            // the summary is written for the failed runs as well
+            result.setDuration(Duration.ofNanos(System.nanoTime() - start));
+            emit("finish", event -> event.field("status", result.getStatus().name().toLowerCase(Locale.ROOT))
+                .field("durationMs", result.getDuration())
+                .field("scanned", result.getScanDurations().size())
+                .field("skipped", result.getSkipped().size())
+                .field("failed", result.getFailures().size()));
+        }
+        return result;
+    }
+
+    JShareCenter open() {
+        JShareCenter shareCenter = JShareCenter.getDefault(host, options.getClientSettings());
+        Path sessionFile = getSessionFile();
+        if (sessionFile == null || !resumeSession(shareCenter, sessionFile)) {
+            login(shareCenter);
+        }
+        if (options.getSampleInterval() != null) {
+            sampler = new ResourceSampler(options.getSampleInterval(), options.getSampleFile(),
+                options.isPrintSamples(), output);
+            sampler.start(shareCenter);
+        }
+        return shareCenter;
+    }
+
+    void rescan(JShareCenter shareCenter, Collection<JShareCenterMediaPath> mediaPaths, RescanResult result) {
+        checkMediaScanRunning(shareCenter);
+        CatalogMirror catalogMirror = options.isCatalog() ? new CatalogMirror(host, options, output, this) : null;
+        Optional<MediaCatalog> catalogBefore = catalogMirror == null ? Optional.empty() : catalogMirror.before();
+        reindexAllMedia(shareCenter, mediaPaths, result);
+        catalogBefore.ifPresent(before -> catalogMirror.verify(before));
+    }
+
+    void close(JShareCenter shareCenter) {
+        if (sampler != null) {
+            sampler.stop();
+        }
+        if (getSessionFile() == null) {
+            logout(shareCenter);
+        } else {
+            saveSession(shareCenter, getSessionFile());
+        }
+    }
+
+    void login(JShareCenter shareCenter) {
+        output.dotLine("Logging in... ");
+        long start = System.nanoTime();
+        boolean loggedIn = shareCenter.login(options.getUsername(), options.getPwd());
+        emit("login", event -> event.field("success", loggedIn).field("durationMs", since(start)));
+        if (!loggedIn) {
+            output.withRedLn("Login failed");
+            throw new RescanException(127, "Login failed");
+        }
+        output.withGreenLn("logged in");
+    }
+
+    Optional<Collection<JShareCenterMediaPath>> searchMedia(JShareCenter shareCenter) {
+        output.dotLine("Searching for media... ");
+        long start = System.nanoTime();
+        Optional<Collection<JShareCenterMediaPath>> foundPathList = shareCenter.getMediaServerPathList();
+        emitPaths(foundPathList, since(start));
+
+        if (foundPathList.isEmpty()) {
+            output.withYellowLn("not found");
+        } else {
+            output.withGreenLn("found");
+            output.dotLineLn("Listing media to reindex:");
+            foundPathList.get().forEach(mediaPath -> output.getOutput().println("  " + mediaPath.getVolume()));
+        }
+
+        return foundPathList;
+    }
+
+    private void reindexAllMedia(JShareCenter shareCenter, Collection<JShareCenterMediaPath> mediaPaths,
+                                 RescanResult result) {
+        output.dotLineLn("Reindexing found media");
+        ManifestStore manifestStore = options.isIncremental()
+            ? new ManifestStore(options.getManifestDirectory().resolve(fileName(host) + ".manifest"))
+            : null;
+        DirectoryTreeCache treeCache = options.isRemoteWalk()
+            ? new DirectoryTreeCache(options.getManifestDirectory().resolve(fileName(host) + ".tree"))
+            : null;
+
+        mediaPaths.forEach(mediaPath -> {
+            output.getOutput().println("  " + mediaPath.getVolume());
+            Optional<MediaManifest> manifest = Optional.empty();
+            if (manifestStore != null) {
+                manifest = buildManifest(shareCenter, mediaPath, treeCache);
+                if (manifest.isPresent() && manifest.equals(manifestStore.get(mediaPath.getInternalPath()))) {
+                    output.withGreenLn("  unchanged (" + manifest.get() + "), skipped");
+                    emit("scan_skipped", event -> event.field("volume", mediaPath.getVolume())
+                        .field("reason", "unchanged"));
+                    result.addSkipped(mediaPath.getVolume());
+                    return;
+                }
+            }
+
+            Optional<MediaManifest> scannedManifest = manifest;
+            long scanStart = System.nanoTime();
+            shareCenter.startMediaScan(mediaPath).ifPresentOrElse(scanStarted -> {
+                if (scanStarted) {
+                    emit("scan_start", event -> event.field("volume", mediaPath.getVolume()));
+                    Optional<String> failure = waitMediaScanWithProgressBar(shareCenter, mediaPath);
+                    if (failure.isPresent()) {
+                        output.withRedLn("  " + failure.get());
+                        emitScanFailed(mediaPath, failure.get());
+                        result.addFailure(failure.get() + ": " + mediaPath.getVolume());
+                        return;
+                    }
+                    Duration scanDuration = Duration.ofNanos(System.nanoTime() - scanStart);
+                    emit("scan_finish", event -> event.field("volume", mediaPath.getVolume())
+                        .field("durationMs", scanDuration));
+                    result.addScanDuration(mediaPath.getVolume(), scanDuration);
+                    if (options.getMetrics() != null) {
+                        options.getMetrics().recordScan(host, mediaPath.getVolume(), scanDuration);
+                    }
+                    scannedManifest.ifPresent(value -> manifestStore.put(mediaPath.getInternalPath(), value));
+                } else {
+                    output.withYellowLn("Could not start media scan for: " + mediaPath.getVolume());
+                    emitScanFailed(mediaPath, "Could not start media scan");
+                    result.addFailure("Could not start media scan for: " + mediaPath.getVolume());
+                }
+            }, () -> {
+                output.withRedLn("Could not start media scan for: " + mediaPath.getVolume());
+                emitScanFailed(mediaPath, "Could not start media scan");
+                result.addFailure("Could not start media scan for: " + mediaPath.getVolume());
+            });
+        });
+    }
+
+    private Optional<MediaManifest> buildManifest(JShareCenter shareCenter, JShareCenterMediaPath mediaPath,
+                                                  DirectoryTreeCache treeCache) {
+        Optional<Path> localPath = options.getLocalPath(mediaPath);
+        if (localPath.isEmpty() && treeCache != null) {
+            return walkRemotely(shareCenter, mediaPath, treeCache);
+        }
+        if (localPath.isEmpty()) {
+            output.withYellowLn("  no local mount for " + mediaPath.getInternalPath() + ", rescanning");
+            return Optional.empty();
+        }
+
+        try {
+            return Optional.of(MediaManifest.scan(localPath.get()));
+        } catch (IllegalStateException e) {
+            output.withYellowLn("  could not read " + localPath.get() + ", rescanning");
+            return Optional.empty();
+        }
+    }
+
+    private Optional<MediaManifest> walkRemotely(JShareCenter shareCenter, JShareCenterMediaPath mediaPath,
+                                                 DirectoryTreeCache treeCache) {
+        RemoteDirectoryWalker walker = new RemoteDirectoryWalker(shareCenter, treeCache, MAX_LISTINGS_IN_FLIGHT);
+        long start = System.nanoTime();
+        try {
+            MediaManifest manifest = walker.walk(mediaPath.getInternalPath());
+            Duration duration = since(start);
+            output.getOutput().println("  walked " + mediaPath.getInternalPath() + " in " + Durations.format(duration)
+                + ": " + walker.getListedCount() + " listed, " + walker.getCheckedCount() + " checked, "
+                + walker.getReusedCount() + " unchanged folders");
+            emit("walk", event -> event.field("volume", mediaPath.getVolume())
+                .field("listed", walker.getListedCount())
+                .field("checked", walker.getCheckedCount())
+                .field("unchanged", walker.getReusedCount())
+                .field("durationMs", duration));
+            return Optional.of(manifest);
+        } catch (IllegalStateException e) {
+            output.withYellowLn("  could not walk " + mediaPath.getInternalPath() + " (" + e.getMessage()
+                + "), rescanning");
+            return Optional.empty();
+        }
+    }
+
+    private Optional<String> waitMediaScanWithProgressBar(JShareCenter shareCenter, JShareCenterMediaPath mediaPath) {
+        ProgressSubscriber subscriber = new ProgressSubscriber(options.getEvents() == null ? null
+            : progress -> emit("progress", event -> {
+                event.field("volume", mediaPath.getVolume())
+                    .field("percentage", progress.getPercentage())
+                    .field("elapsedMs", progress.getElapsed());
+                progress.getEstimatedRemaining().ifPresent(eta -> event.field("etaMs", eta));
+            }));
+        try {
+            shareCenter.watchMediaScan(mediaPath).subscribe(subscriber);
+        } catch (IllegalStateException e) {
+            return Optional.of(e.getMessage());
+        }
+
+        JShareCenterScanProgress progress;
+        do {
+            progress = subscriber.getLatest();
+            String status = progress == null ? "ETA ..." : progress.getEstimatedRemaining()
+                .map(eta -> "ETA " + Durations.format(eta)).orElse("ETA ...");
+            output.progress(2, 50, progress == null ? 0 : progress.getPercentage(), true, status);
+        } while (!subscriber.await(REDRAW_INTERVAL));
+
+        progress = subscriber.getLatest();
+        if (progress == null || !progress.isFinished()) {
+            output.nl();
+            return Optional.of(progress == null ? "The media scan progress could not be watched"
+                : progress.getFailure().orElse("The media scan did not finish"));
+        }
+        output.progress(2, 50, 100);
+        output.nl();
+        return Optional.empty();
+    }
+
+    private void checkMediaScanRunning(JShareCenter shareCenter) {
+        output.dotLine("Checking if pre-scan is already running... ");
+        Optional<Boolean> scanState = shareCenter.checkMediaScanRunning();
+        emit("scan_check", event -> {
+            if (scanState.isPresent()) {
+                event.field("running", scanState.get());
+            } else {
+                event.field("error", "Could not check pre-scan state");
+            }
+        });
+        if (scanState.isEmpty()) {
+            output.withRedLn("could not check state");
+            throw new RescanException(-1, "Could not check pre-scan state");
+        } else {
+            Boolean state = scanState.get();
+            if (state) {
+                output.withYellowLn("already running");
+                throw new RescanException(1, "Pre-scan is already running");
+            } else {
+                output.withGreenLn("not running");
+            }
+        }
+    }
+
+    private void logout(JShareCenter shareCenter) {
+        output.dotLine("Logging out... ");
+        long start = System.nanoTime();
+        shareCenter.logout(options.getUsername());
+        emit("logout", event -> event.field("durationMs", since(start)));
+        output.withGreenLn("done");
+        output.nl();
+    }
+
+    private boolean resumeSession(JShareCenter shareCenter, Path sessionFile) {
+        output.dotLine("Resuming session... ");
+        long start = System.nanoTime();
+        boolean resumed = shareCenter.resumeSession(sessionFile, options.getUsername(), options.getPwd());
+        emit("session_resume", event -> event.field("resumed", resumed).field("durationMs", since(start)));
+        if (resumed) {
+            output.withGreenLn("resumed");
+            return true;
+        }
+        output.withYellowLn("no valid session");
+        return false;
+    }
+
+    private void saveSession(JShareCenter shareCenter, Path sessionFile) {
+        output.dotLine("Saving session... ");
+        shareCenter.saveSession(sessionFile);
+        emit("session_save", event -> { });
+        output.withGreenLn("done");
+        output.nl();
+    }
+
+    private Path getSessionFile() {
+        if (options.getSessionDirectory() == null) {
+            return null;
+        }
+        return options.getSessionDirectory().resolve(fileName(host) + ".session");
+    }
+
+    void emit(String type, Consumer<JsonEventWriter.Event> fields) {
+        if (options.getEvents() != null) {
+            options.getEvents().emit(host, type, fields);
+        }
+    }
+
+    void emitPaths(Optional<Collection<JShareCenterMediaPath>> foundPathList, Duration duration) {
+        emit("paths", event -> {
+            event.field("found", foundPathList.isPresent()).field("durationMs", duration);
+            foundPathList.ifPresent(mediaPaths -> {
+                StringJoiner paths = new StringJoiner(",", "[", "]");
+                mediaPaths.forEach(mediaPath -> paths.add("{\"volume\":" + Json.quote(mediaPath.getVolume())
+                    + ",\"path\":" + Json.quote(mediaPath.getInternalPath()) + "}"));
+                event.field("count", mediaPaths.size()).raw("paths", paths.toString());
+            });
+        });
+    }
+
+    private void emitScanFailed(JShareCenterMediaPath mediaPath, String error) {
+        emit("scan_failed", event -> event.field("volume", mediaPath.getVolume()).field("error", error));
+    }
+
+    private static Duration since(long start) {
+        return Duration.ofNanos(System.nanoTime() - start);
+    }
+
+    static String fileName(String host) {
+        return host.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    private static class ProgressSubscriber implements Flow.Subscriber<JShareCenterScanProgress> {
+
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final Consumer<JShareCenterScanProgress> listener;
+        private volatile JShareCenterScanProgress latest;
+        private Flow.Subscription subscription;
+
+        ProgressSubscriber(Consumer<JShareCenterScanProgress> listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(JShareCenterScanProgress progress) {
+            latest = progress;
+            if (listener != null) {
+                listener.accept(progress);
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            done.countDown();
+        }
+
+        JShareCenterScanProgress getLatest() {
+            return latest;
+        }
+
+        boolean await(long nanos) {
+            try {
+                return done.await(nanos, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the media scan", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package hu.codelens.sharecenter;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Uploads local files into a directory of the NAS over one session, a few at a time, with the aggregate throughput
+ * next to the progress bar. When the batch is done, the media path holding the directory is rescanned.
+ */
+class MediaUpload {
+
+    private static final long REDRAW_MILLIS = 500;
+
+    private final String host;
+    private final RescanOptions options;
+    private final ColorOutput output;
+    private final List<Path> files;
+    private final String targetDirectory;
+    private final int parallelism;
+    private final boolean rescan;
+    private final boolean overwrite;
+
+    MediaUpload(String host, RescanOptions options, ColorOutput output, List<Path> files, String targetDirectory,
+                int parallelism, boolean rescan, boolean overwrite) {
+        this.host = host;
+        this.options = options;
+        this.output = output;
+        this.files = files;
+        this.targetDirectory = targetDirectory;
+        this.parallelism = Math.max(1, Math.min(parallelism, files.size()));
+        this.rescan = rescan;
+        this.overwrite = overwrite;
+    }
+
+    static List<Path> collect(List<Path> sources) throws IOException {
+        // directories are uploaded with their files, not their sub-directories
+        List<Path> files = new ArrayList<>();
+        for (Path source : sources) {
+            if (Files.isDirectory(source)) {
+                List<Path> directoryFiles = new ArrayList<>();
+                try (DirectoryStream<Path> entries = Files.newDirectoryStream(source, Files::isRegularFile)) {
+                    entries.forEach(directoryFiles::add);
+                }
+                directoryFiles.sort(Comparator.naturalOrder());
+                files.addAll(directoryFiles);
+            } else if (Files.isRegularFile(source) && Files.isReadable(source)) {
+                files.add(source);
+            } else {
+                throw new IOException("Not a readable file or directory: " + source);
+            }
+        }
+        return files;
+    }
+
+    int run() {
+        MediaRescan mediaRescan = new MediaRescan(host, options, output);
+        JShareCenter shareCenter = mediaRescan.open();
+        try {
+            int failed = upload(shareCenter, mediaRescan);
+            if (rescan && failed < files.size()) {
+                failed += rescanTarget(shareCenter, mediaRescan) ? 0 : 1;
+            }
+            return failed;
+        } finally {
+            mediaRescan.close(shareCenter);
+        }
+    }
+
+    private int upload(JShareCenter shareCenter, MediaRescan mediaRescan) {
+        long totalBytes = 0;
+        for (Path file : files) {
+            totalBytes += size(file);
+        }
+        output.dotLineLn("Uploading " + files.size() + " files (" + Sizes.format(totalBytes) + ") to "
+            + targetDirectory + ", " + parallelism + " at a time");
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "jsharecenter-upload-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        AtomicLong sent = new AtomicLong();
+        long start = System.nanoTime();
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        try {
+            files.forEach(file -> futures.add(CompletableFuture.supplyAsync(() -> uploadFile(shareCenter, mediaRescan,
+                file, sent), executor)));
+            awaitWithProgress(CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])), sent, totalBytes,
+                start);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        int failed = 0;
+        for (int index = 0; index < files.size(); index++) {
+            String error = futures.get(index).join();
+            if (error != null) {
+                output.withRedLn("  " + files.get(index).getFileName() + ": " + error);
+                failed++;
+            }
+        }
+
+        Duration duration = Duration.ofNanos(System.nanoTime() - start);
+        long bytes = sent.get();
+        int uploaded = files.size() - failed;
+        output.dotLine("Uploaded " + uploaded + " of " + files.size() + " files, " + Sizes.format(bytes) + " in "
+            + Durations.format(duration) + " (" + rate(bytes, duration) + ")");
+        if (failed > 0) {
+            output.withRedLn(", " + failed + " failed");
+        } else {
+            output.getOutput().println();
+        }
+        mediaRescan.emit("upload_finish", event -> event.field("uploaded", uploaded)
+            .field("failed", files.size() - uploaded)
+            .field("bytes", bytes)
+            .field("durationMs", duration));
+        return failed;
+    }
+
+    private String uploadFile(JShareCenter shareCenter, MediaRescan mediaRescan, Path file, AtomicLong sent) {
+        long start = System.nanoTime();
+        String error;
+        try {
+            Optional<Boolean> uploaded = shareCenter.uploadFile(file, targetDirectory, overwrite, sent::addAndGet);
+            error = uploaded.isEmpty() ? "no answer from the NAS" : uploaded.get() ? null
+                : overwrite ? "rejected by the NAS" : "rejected by the NAS (it may exist already, see --overwrite)";
+        } catch (RuntimeException e) {
+            // any failure of one file is recorded, the others go on
+            error = e.getMessage() != null ? e.getMessage() : e.toString();
+        }
+
+        String message = error;
+        mediaRescan.emit("upload", event -> {
+            event.field("file", file.getFileName().toString()).field("size", size(file))
+                .field("success", message == null)
+                .field("durationMs", Duration.ofNanos(System.nanoTime() - start));
+            if (message != null) {
+                event.field("error", message);
+            }
+        });
+        return error;
+    }
+
+    private void awaitWithProgress(CompletableFuture<Void> all, AtomicLong sent, long totalBytes, long start) {
+        while (true) {
+            long bytes = sent.get();
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+            int percentage = totalBytes == 0 ? 100 : (int) Math.min(100, bytes * 100 / totalBytes);
+            output.progress(2, 50, percentage, true, Sizes.format(bytes) + ", " + rate(bytes, elapsed));
+            try {
+                all.get(REDRAW_MILLIS, TimeUnit.MILLISECONDS);
+                break;
+            } catch (TimeoutException e) {
+                // redraw
+            } catch (ExecutionException e) {
+                // the uploads report their own failures
+                break;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while uploading", e);
+            }
+        }
+        output.progress(2, 50, 100);
+        output.nl();
+    }
+
+    private boolean rescanTarget(JShareCenter shareCenter, MediaRescan mediaRescan) {
+        Collection<JShareCenterMediaPath> mediaPaths = shareCenter.getMediaServerPathList()
+            .orElseThrow(() -> new RescanException(4, "Media paths not found"));
+
+        // the innermost media path holding the target directory is the one to rescan
+        Optional<JShareCenterMediaPath> affected = mediaPaths.stream()
+            .filter(mediaPath -> targetDirectory.equals(mediaPath.getInternalPath())
+                || targetDirectory.startsWith(mediaPath.getInternalPath() + "/"))
+            .max(Comparator.comparingInt(mediaPath -> mediaPath.getInternalPath().length()));
+        if (affected.isEmpty()) {
+            output.dot();
+            output.withYellowLn(" No media path holds " + targetDirectory + ", not rescanned");
+            return true;
+        }
+
+        RescanResult result = new RescanResult(host);
+        mediaRescan.rescan(shareCenter, List.of(affected.get()), result);
+        return result.getStatus() == RescanResult.Status.OK;
+    }
+
+    private static String rate(long bytes, Duration duration) {
+        long millis = Math.max(1, duration.toMillis());
+        return Sizes.format(bytes * 1000 / millis) + "/s";
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package hu.codelens.sharecenter;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+class RescanDaemon {
+
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(30);
+    private static final Duration STOP_TIMEOUT = Duration.ofSeconds(10);
+
+    private final String host;
+    private final RescanOptions options;
+    private final ColorOutput output;
+    private final Duration interval;
+    private final Duration debounce;
+    private final boolean watch;
+    private final MediaRescan mediaRescan;
+
+    private final Object lock;
+    private final Map<String, JShareCenterMediaPath> pending;
+    private final Map<WatchKey, JShareCenterMediaPath> watchKeys;
+    private final CountDownLatch closed;
+    private boolean allPending;
+    private long lastTrigger;
+    private volatile boolean running;
+
+    private JShareCenter shareCenter;
+    private Collection<JShareCenterMediaPath> mediaPaths;
+
+    RescanDaemon(String host, RescanOptions options, ColorOutput output, Duration interval, Duration debounce,
+                 boolean watch) {
+        this.host = host;
+        this.options = options;
+        this.output = output;
+        this.interval = interval;
+        this.debounce = debounce;
+        this.watch = watch;
+        this.mediaRescan = new MediaRescan(host, options, output);
+
+        this.lock = new Object();
+        this.pending = new LinkedHashMap<>();
+        this.watchKeys = new ConcurrentHashMap<>();
+        this.closed = new CountDownLatch(1);
+        this.allPending = false;
+        this.lastTrigger = 0;
+        this.running = true;
+    }
+
+    void run() {
+        shareCenter = mediaRescan.open();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::stop, "jsharecenter-daemon-stop"));
+
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "jsharecenter-daemon-schedule");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            mediaPaths = mediaRescan.searchMedia(shareCenter).orElse(Collections.emptyList());
+            if (!interval.isZero()) {
+                scheduler.scheduleAtFixedRate(this::triggerAll, interval.toMillis(), interval.toMillis(),
+                    TimeUnit.MILLISECONDS);
+            }
+            if (watch) {
+                startWatching();
+            }
+
+            output.dotLineLn("Waiting for rescan triggers" + (interval.isZero() ? "" : ", rescanning every "
+                + Durations.format(interval)) + (watch ? ", watching local mounts" : ""));
+            while (running) {
+                Collection<JShareCenterMediaPath> batch = awaitBatch();
+                if (!batch.isEmpty()) {
+                    rescan(batch);
+                }
+            }
+        } finally {
+            scheduler.shutdownNow();
+            // the session is closed here, on the thread using it, never from the shutdown hook
+            try {
+                if (!running) {
+                    output.nl();
+                }
+                mediaRescan.close(shareCenter);
+            } finally {
+                closed.countDown();
+            }
+        }
+    }
+
+    void triggerAll() {
+        synchronized (lock) {
+            allPending = true;
+            lastTrigger = System.nanoTime();
+            lock.notifyAll();
+        }
+    }
+
+    void trigger(JShareCenterMediaPath mediaPath) {
+        synchronized (lock) {
+            pending.put(mediaPath.getInternalPath(), mediaPath);
+            lastTrigger = System.nanoTime();
+            lock.notifyAll();
+        }
+    }
+
+    private Collection<JShareCenterMediaPath> awaitBatch() {
+        synchronized (lock) {
+            while (running) {
+                if (pending.isEmpty() && !allPending) {
+                    waitForTrigger(0);
+                    continue;
+                }
+
+                // triggers arriving within the debounce window are merged into this batch
+                long remaining = lastTrigger + debounce.toNanos() - System.nanoTime();
+                if (remaining > 0) {
+                    waitForTrigger(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+                    continue;
+                }
+
+                boolean all = allPending;
+                List<JShareCenterMediaPath> batch = new ArrayList<>(pending.values());
+                pending.clear();
+                allPending = false;
+                return all ? refreshMediaPaths() : batch;
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    private Collection<JShareCenterMediaPath> refreshMediaPaths() {
+        try {
+            shareCenter.getMediaServerPathList().ifPresent(found -> mediaPaths = found);
+        } catch (RuntimeException e) {
+            output.withYellowLn("Could not refresh the media paths: " + e.getMessage());
+        }
+        return mediaPaths;
+    }
+
+    private void rescan(Collection<JShareCenterMediaPath> batch) {
+        RescanResult result = new RescanResult(host);
+        output.dotLineLn("Rescan triggered for " + batch.size() + " media path(s)");
+        try {
+            try {
+                mediaRescan.rescan(shareCenter, batch, result);
+            } catch (RescanException e) {
+                if (e.getExitCode() != -1) {
+                    throw e;
+                }
+                // the state could not be read, most likely the session expired
+                mediaRescan.login(shareCenter);
+                mediaRescan.rescan(shareCenter, batch, result);
+            }
+        } catch (RuntimeException e) {
+            output.withYellowLn("Rescan postponed: " + e.getMessage());
+            batch.forEach(this::trigger);
+            pause(RETRY_DELAY);
+        }
+    }
+
+    private void stop() {
+        synchronized (lock) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            lock.notifyAll();
+        }
+        // the JVM exits when the hook returns, give the main loop the time to log out
+        try {
+            closed.await(STOP_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void startWatching() {
+        WatchService watchService;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not watch the local mounts", e);
+        }
+
+        mediaPaths.forEach(mediaPath -> options.getLocalPath(mediaPath).ifPresentOrElse(
+            localPath -> registerTree(watchService, localPath, mediaPath),
+            () -> output.withYellowLn("  no local mount for " + mediaPath.getInternalPath() + ", not watched")));
+
+        Thread watcher = new Thread(() -> watch(watchService), "jsharecenter-daemon-watch");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void watch(WatchService watchService) {
+        while (running) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            JShareCenterMediaPath mediaPath = watchKeys.get(key);
+            if (mediaPath != null) {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                        Path created = ((Path) key.watchable()).resolve((Path) event.context());
+                        if (Files.isDirectory(created, LinkOption.NOFOLLOW_LINKS)) {
+                            registerTree(watchService, created, mediaPath);
+                        }
+                    }
+                }
+                trigger(mediaPath);
+            }
+
+            if (!key.reset()) {
+                watchKeys.remove(key);
+            }
+        }
+    }
+
+    private void registerTree(WatchService watchService, Path root, JShareCenterMediaPath mediaPath) {
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) throws IOException {
+                    watchKeys.put(directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY), mediaPath);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            output.withYellowLn("  could not watch " + root + ": " + e.getMessage());
+        }
+    }
+
+    private void waitForTrigger(long millis) {
+        try {
+            lock.wait(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    private void pause(Duration duration) {
+        long deadline = System.nanoTime() + duration.toNanos();
+        synchronized (lock) {
+            // woken up early by stop, an interrupt stops the daemon as well
+            while (running) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return;
+                }
+                waitForTrigger(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+            }
+        }
+    }
+}
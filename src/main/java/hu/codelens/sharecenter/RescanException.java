@@ -0,0 +1,17 @@
+package hu.codelens.sharecenter;
+
+class RescanException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int exitCode;
+
+    RescanException(int exitCode, String message) {
+        super(message);
+        this.exitCode = exitCode;
+    }
+
+    int getExitCode() {
+        return exitCode;
+    }
+}
@@ -0,0 +1,200 @@
+package hu.codelens.sharecenter;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+class RescanOptions {
+
+    private static final Path DEFAULT_MANIFEST_DIRECTORY = Paths.get(System.getProperty("user.home"), ".jsharecenter");
+
+    private String username;
+    private String pwd;
+    private Path sessionDirectory;
+    private final JShareCenterSettings clientSettings;
+    private boolean incremental;
+    private boolean remoteWalk;
+    private final Map<String, Path> mounts;
+    private Path manifestDirectory;
+    private Duration sampleInterval;
+    private Path sampleFile;
+    private boolean printSamples;
+    private JsonEventWriter events;
+    private boolean catalog;
+    private URI dlnaLocation;
+
+    RescanOptions() {
+        username = null;
+        pwd = null;
+        sessionDirectory = null;
+        clientSettings = new JShareCenterSettings();
+        incremental = false;
+        remoteWalk = false;
+        mounts = new LinkedHashMap<>();
+        manifestDirectory = DEFAULT_MANIFEST_DIRECTORY;
+        sampleInterval = null;
+        sampleFile = null;
+        printSamples = false;
+        events = null;
+        catalog = false;
+        dlnaLocation = null;
+    }
+
+    String getUsername() {
+        return username;
+    }
+
+    void setUsername(String username) {
+        this.username = username;
+    }
+
+    String getPwd() {
+        return pwd;
+    }
+
+    void setPwd(String pwd) {
+        this.pwd = pwd;
+    }
+
+    Duration getMinPollInterval() {
+        return clientSettings.getMinPollInterval();
+    }
+
+    void setMinPollInterval(Duration minPollInterval) {
+        clientSettings.setMinPollInterval(minPollInterval);
+    }
+
+    Duration getMaxPollInterval() {
+        return clientSettings.getMaxPollInterval();
+    }
+
+    void setMaxPollInterval(Duration maxPollInterval) {
+        clientSettings.setMaxPollInterval(maxPollInterval);
+    }
+
+    Path getSessionDirectory() {
+        return sessionDirectory;
+    }
+
+    void setSessionDirectory(Path sessionDirectory) {
+        this.sessionDirectory = sessionDirectory;
+    }
+
+    JShareCenterSettings getClientSettings() {
+        return clientSettings;
+    }
+
+    JShareCenterMetrics getMetrics() {
+        return clientSettings.getMetrics();
+    }
+
+    void setMetrics(JShareCenterMetrics metrics) {
+        clientSettings.setMetrics(metrics);
+    }
+
+    boolean isIncremental() {
+        return incremental;
+    }
+
+    void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    boolean isRemoteWalk() {
+        return remoteWalk;
+    }
+
+    void setRemoteWalk(boolean remoteWalk) {
+        this.remoteWalk = remoteWalk;
+    }
+
+    Map<String, Path> getMounts() {
+        return Collections.unmodifiableMap(mounts);
+    }
+
+    void addMount(String internalPrefix, Path localPath) {
+        mounts.put(internalPrefix, localPath);
+    }
+
+    Optional<Path> getLocalPath(JShareCenterMediaPath mediaPath) {
+        String internalPath = mediaPath.getInternalPath();
+        String bestPrefix = null;
+        for (String prefix : mounts.keySet()) {
+            boolean matches = internalPath.equals(prefix) || internalPath.startsWith(prefix.endsWith("/") ? prefix : prefix + "/");
+            if (matches && (bestPrefix == null || prefix.length() > bestPrefix.length())) {
+                bestPrefix = prefix;
+            }
+        }
+        if (bestPrefix == null) {
+            return Optional.empty();
+        }
+
+        String relative = internalPath.substring(bestPrefix.length());
+        while (relative.startsWith("/")) {
+            relative = relative.substring(1);
+        }
+        Path mount = mounts.get(bestPrefix);
+        return Optional.of(relative.isEmpty() ? mount : mount.resolve(relative));
+    }
+
+    Path getManifestDirectory() {
+        return manifestDirectory;
+    }
+
+    void setManifestDirectory(Path manifestDirectory) {
+        this.manifestDirectory = manifestDirectory;
+    }
+
+    Duration getSampleInterval() {
+        return sampleInterval;
+    }
+
+    void setSampleInterval(Duration sampleInterval) {
+        this.sampleInterval = sampleInterval;
+    }
+
+    Path getSampleFile() {
+        return sampleFile;
+    }
+
+    void setSampleFile(Path sampleFile) {
+        this.sampleFile = sampleFile;
+    }
+
+    boolean isPrintSamples() {
+        return printSamples;
+    }
+
+    void setPrintSamples(boolean printSamples) {
+        this.printSamples = printSamples;
+    }
+
+    JsonEventWriter getEvents() {
+        return events;
+    }
+
+    void setEvents(JsonEventWriter events) {
+        this.events = events;
+    }
+
+    boolean isCatalog() {
+        return catalog;
+    }
+
+    void setCatalog(boolean catalog) {
+        this.catalog = catalog;
+    }
+
+    URI getDlnaLocation() {
+        return dlnaLocation;
+    }
+
+    void setDlnaLocation(URI dlnaLocation) {
+        this.dlnaLocation = dlnaLocation;
+    }
+}
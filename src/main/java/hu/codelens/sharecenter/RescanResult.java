@@ -0,0 +1,72 @@
+package hu.codelens.sharecenter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+class RescanResult {
+
+    enum Status {
+        OK, PARTIAL, FAILED
+    }
+
+    private final String host;
+    private final Map<String, Duration> scanDurations;
+    private final List<String> failures;
+    private final List<String> skipped;
+    private Duration duration;
+
+    RescanResult(String host) {
+        this.host = host;
+        this.scanDurations = new LinkedHashMap<>();
+        this.failures = new ArrayList<>();
+        this.skipped = new ArrayList<>();
+        this.duration = Duration.ZERO;
+    }
+
+    String getHost() {
+        return host;
+    }
+
+    Status getStatus() {
+        if (failures.isEmpty()) {
+            return Status.OK;
+        }
+        return scanDurations.isEmpty() && skipped.isEmpty() ? Status.FAILED : Status.PARTIAL;
+    }
+
+    Duration getDuration() {
+        return duration;
+    }
+
+    void setDuration(Duration duration) {
+        this.duration = duration;
+    }
+
+    Map<String, Duration> getScanDurations() {
+        return Collections.unmodifiableMap(scanDurations);
+    }
+
+    void addScanDuration(String volume, Duration scanDuration) {
+        scanDurations.put(volume, scanDuration);
+    }
+
+    List<String> getFailures() {
+        return Collections.unmodifiableList(failures);
+    }
+
+    void addFailure(String failure) {
+        failures.add(failure);
+    }
+
+    List<String> getSkipped() {
+        return Collections.unmodifiableList(skipped);
+    }
+
+    void addSkipped(String volume) {
+        skipped.add(volume);
+    }
+}
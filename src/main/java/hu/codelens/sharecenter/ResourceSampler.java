@@ -0,0 +1,129 @@
+package hu.codelens.sharecenter;
+
+import hu.codelens.sharecenter.internal.ResourceSeries;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+class ResourceSampler {
+
+    private static final String[] METRICS = {"cpu_percent", "memory_used_bytes", "io_read_bytes_per_second",
+        "io_write_bytes_per_second", "system_temperature_celsius", "disk_temperature_celsius"};
+    private static final int CAPACITY = 1440;
+    private static final int FACTOR = 12;
+    private static final int LEVELS = 3;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    private final Duration interval;
+    private final Path dumpFile;
+    private final boolean print;
+    private final ColorOutput output;
+    private final ResourceSeries series;
+    private final double[] values;
+    private final AtomicBoolean stopped;
+
+    private ScheduledExecutorService scheduler;
+    private Thread shutdownHook;
+
+    ResourceSampler(Duration interval, Path dumpFile, boolean print, ColorOutput output) {
+        this.interval = interval;
+        this.dumpFile = dumpFile;
+        this.print = print;
+        this.output = output;
+        this.series = new ResourceSeries(METRICS, interval.toMillis(), CAPACITY, FACTOR, LEVELS);
+        this.values = new double[METRICS.length];
+        this.stopped = new AtomicBoolean(false);
+    }
+
+    void start(JShareCenter shareCenter) {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "jsharecenter-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(() -> sample(shareCenter), 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+
+        // the samples are saved on Ctrl+C too
+        shutdownHook = new Thread(this::stop, "jsharecenter-sampler-stop");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    void stop() {
+        if (!stopped.compareAndSet(false, true)) {
+            return;
+        }
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (shutdownHook != null && Thread.currentThread() != shutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // ignored, the JVM is already shutting down
+            }
+        }
+        if (dumpFile != null) {
+            try {
+                if (dumpFile.getFileName().toString().endsWith(".csv")) {
+                    series.writeCsv(dumpFile);
+                } else {
+                    series.writeBinary(dumpFile);
+                }
+            } catch (IllegalStateException e) {
+                output.dot();
+                output.withRedLn(" " + e.getMessage());
+            }
+        }
+    }
+
+    private void sample(JShareCenter shareCenter) {
+        JShareCenterSystemStatus status;
+        try {
+            status = shareCenter.getSystemStatus().orElse(null);
+        } catch (RuntimeException e) {
+            status = null;
+        }
+        if (status == null) {
+            return;
+        }
+
+        values[0] = value(status.getCpuUsage().orElse(null));
+        values[1] = status.getMemoryTotal().isPresent() && status.getMemoryFree().isPresent()
+            ? status.getMemoryTotal().get() - status.getMemoryFree().get()
+            : Double.NaN;
+        values[2] = value(status.getIoReadRate().orElse(null));
+        values[3] = value(status.getIoWriteRate().orElse(null));
+        values[4] = value(status.getSystemTemperature().orElse(null));
+        values[5] = status.getDisks().stream()
+            .filter(disk -> disk.getTemperature().isPresent())
+            .mapToDouble(disk -> disk.getTemperature().get())
+            .max()
+            .orElse(Double.NaN);
+        series.record(status.getTimestamp().toEpochMilli(), values);
+
+        if (print) {
+            output.getOutput().println("  " + LocalTime.now().format(TIME_FORMAT)
+                + "  cpu " + format(values[0], "%") + "  memory " + bytes(values[1])
+                + "  io " + bytes(values[2]) + "/s read, " + bytes(values[3]) + "/s write"
+                + "  temperature " + format(values[4], " °C") + ", disks " + format(values[5], " °C"));
+        }
+    }
+
+    private static double value(Number number) {
+        return number == null ? Double.NaN : number.doubleValue();
+    }
+
+    private static String format(double value, String unit) {
+        return Double.isNaN(value) ? "?" : (long) value + unit;
+    }
+
+    private static String bytes(double value) {
+        return Double.isNaN(value) ? "?" : Sizes.format((long) value);
+    }
+}
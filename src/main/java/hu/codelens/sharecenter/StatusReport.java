@@ -0,0 +1,94 @@
+package hu.codelens.sharecenter;
+
+import hu.codelens.sharecenter.internal.Json;
+
+import java.time.Duration;
+import java.util.StringJoiner;
+
+class StatusReport {
+
+    private final String host;
+    private final ColorOutput output;
+    private final MediaRescan mediaRescan;
+
+    StatusReport(String host, RescanOptions options, ColorOutput output) {
+        this.host = host;
+        this.output = output;
+        this.mediaRescan = new MediaRescan(host, options, output);
+    }
+
+    void run() {
+        JShareCenter shareCenter = mediaRescan.open();
+        try {
+            report(shareCenter);
+        } finally {
+            mediaRescan.close(shareCenter);
+        }
+    }
+
+    void report(JShareCenter shareCenter) {
+        long start = System.nanoTime();
+        output.dotLine("Fetching system status... ");
+        JShareCenterSystemStatus status = shareCenter.getSystemStatus().orElseThrow(() -> {
+            output.withRedLn("not available");
+            return new RescanException(4, "System status is not available");
+        });
+        output.withGreenLn("done in " + Durations.format(Duration.ofNanos(System.nanoTime() - start)));
+        mediaRescan.emit("status", event -> {
+            event.field("durationMs", Duration.ofNanos(System.nanoTime() - start));
+            status.getSystemTemperature().ifPresent(temperature -> event.field("temperature", temperature));
+            status.getUptime().ifPresent(uptime -> event.field("uptimeSeconds", uptime.getSeconds()));
+            status.getCpuUsage().ifPresent(cpu -> event.field("cpu", cpu));
+            status.getMemoryTotal().ifPresent(total -> event.field("memoryTotal", total));
+            status.getMemoryFree().ifPresent(free -> event.field("memoryFree", free));
+            status.getIoReadRate().ifPresent(rate -> event.field("ioRead", rate));
+            status.getIoWriteRate().ifPresent(rate -> event.field("ioWrite", rate));
+            StringJoiner disks = new StringJoiner(",", "[", "]");
+            status.getDisks().forEach(disk -> disks.add("{\"slot\":" + disk.getSlot()
+                + ",\"model\":" + Json.quote(disk.getModel()) + ",\"size\":" + disk.getSize()
+                + ",\"used\":" + disk.getUsed()
+                + disk.getTemperature().map(temperature -> ",\"temperature\":" + temperature).orElse("")
+                + ",\"smart\":" + Json.quote(disk.getSmartStatus()) + ",\"healthy\":" + disk.isHealthy() + "}"));
+            event.raw("disks", disks.toString());
+        });
+        print(status);
+    }
+
+    private void print(JShareCenterSystemStatus status) {
+        output.dotLineLn("System status of " + host + ":");
+        status.getSystemTemperature().ifPresent(temperature -> line("temperature", temperature + " °C"));
+        status.getUptime().ifPresent(uptime -> line("uptime", Durations.format(uptime)));
+        status.getCpuUsage().ifPresent(cpu -> line("cpu", cpu + "%"));
+        status.getMemoryTotal().ifPresent(total -> line("memory",
+            status.getMemoryFree().map(free -> Sizes.format(free) + " free of ").orElse("") + Sizes.format(total)));
+        if (status.getIoReadRate().isPresent() || status.getIoWriteRate().isPresent()) {
+            line("io", "read " + status.getIoReadRate().map(Sizes::format).orElse("?") + "/s, write "
+                + status.getIoWriteRate().map(Sizes::format).orElse("?") + "/s");
+        }
+
+        status.getDisks().forEach(disk -> {
+            String usage = disk.getSize() > 0 ? ", " + (disk.getUsed() * 100 / disk.getSize()) + "% used" : "";
+            output.getOutput().print(pad("  disk " + disk.getSlot()) + disk.getModel() + ", "
+                + Sizes.format(disk.getSize()) + usage
+                + disk.getTemperature().map(temperature -> ", " + temperature + " °C").orElse("") + ", SMART ");
+            if (disk.isHealthy()) {
+                output.withGreenLn(disk.getSmartStatus());
+            } else {
+                output.withRedLn(disk.getSmartStatus().isEmpty() ? "unknown" : disk.getSmartStatus());
+            }
+        });
+        output.nl();
+    }
+
+    private void line(String name, String value) {
+        output.getOutput().println(pad("  " + name) + value);
+    }
+
+    private static String pad(String text) {
+        StringBuilder padded = new StringBuilder(text);
+        while (padded.length() < 16) {
+            padded.append(' ');
+        }
+        return padded.toString();
+    }
+}
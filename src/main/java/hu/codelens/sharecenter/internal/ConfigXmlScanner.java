@@ -0,0 +1,214 @@
+package hu.codelens.sharecenter.internal;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+/**
+ * Low allocation scanner for the small {@code <config><name>value</name>...</config>} replies of the CGI status
+ * commands, read straight from the bytes of the body. Anything beyond plain elements and text (entities, CDATA,
+ * nested elements, DTD) is reported as {@link UnsupportedXmlException}, so the caller can fall back to a full XML
+ * parser.
+ */
+class ConfigXmlScanner {
+
+    static class UnsupportedXmlException extends Exception {
+        private static final long serialVersionUID = 1L;
+        private static final UnsupportedXmlException INSTANCE = new UnsupportedXmlException();
+
+        private UnsupportedXmlException() {
+            super("Unsupported XML construct", null, false, false);
+        }
+    }
+
+    private final byte[] xml;
+    private int position;
+
+    private ConfigXmlScanner(byte[] xml) {
+        this.xml = xml;
+        this.position = 0;
+    }
+
+    static Optional<String> scan(byte[] xml, String elementName, int expectedChildCount)
+        throws UnsupportedXmlException {
+        return new ConfigXmlScanner(xml).scanConfig(elementName, expectedChildCount);
+    }
+
+    private Optional<String> scanConfig(String elementName, int expectedChildCount) throws UnsupportedXmlException {
+        skipProlog();
+        expect('<');
+        int rootNameStart = position;
+        int rootNameEnd = readName();
+        boolean rootEmpty = skipAttributes();
+        if (!matches(rootNameStart, rootNameEnd, "config")) {
+            return Optional.empty();
+        }
+        if (rootEmpty) {
+            return Optional.empty();
+        }
+
+        String value = null;
+        int childCount = 0;
+        while (true) {
+            skipWhitespace();
+            expect('<');
+            if (peek() == '/') {
+                position++;
+                int endNameStart = position;
+                int endNameEnd = readName();
+                if (!matches(endNameStart, endNameEnd, "config")) {
+                    throw UnsupportedXmlException.INSTANCE;
+                }
+                skipWhitespace();
+                expect('>');
+                break;
+            }
+
+            int nameStart = position;
+            int nameEnd = readName();
+            boolean empty = skipAttributes();
+            int textStart = position;
+            int textEnd = position;
+            if (!empty) {
+                textEnd = indexOf('<', position);
+                if (textEnd < 0 || textEnd + 1 >= xml.length || xml[textEnd + 1] != '/') {
+                    throw UnsupportedXmlException.INSTANCE;
+                }
+                int entity = indexOf('&', textStart);
+                if (entity >= 0 && entity < textEnd) {
+                    throw UnsupportedXmlException.INSTANCE;
+                }
+                position = textEnd + 2;
+                int endNameStart = position;
+                int endNameEnd = readName();
+                if (endNameEnd - endNameStart != nameEnd - nameStart
+                    || !regionMatches(endNameStart, nameStart, nameEnd - nameStart)) {
+                    throw UnsupportedXmlException.INSTANCE;
+                }
+                skipWhitespace();
+                expect('>');
+            }
+
+            if (childCount == 0 && matches(nameStart, nameEnd, elementName)) {
+                value = new String(xml, textStart, textEnd - textStart, StandardCharsets.UTF_8);
+            }
+            childCount++;
+        }
+
+        return childCount == expectedChildCount ? Optional.ofNullable(value) : Optional.empty();
+    }
+
+    private void skipProlog() throws UnsupportedXmlException {
+        while (true) {
+            skipWhitespace();
+            if (startsWith("<?", position)) {
+                position = indexAfter("?>");
+            } else if (startsWith("<!--", position)) {
+                position = indexAfter("-->");
+            } else {
+                return;
+            }
+        }
+    }
+
+    private int readName() throws UnsupportedXmlException {
+        int start = position;
+        while (position < xml.length) {
+            int character = xml[position] & 0xff;
+            // bytes of multi-byte UTF-8 characters are all above 0x7f, they are taken as part of the name
+            if (character > 0x7f || Character.isLetterOrDigit(character) || character == '_' || character == '-'
+                || character == '.' || character == ':') {
+                position++;
+            } else {
+                break;
+            }
+        }
+        if (position == start) {
+            throw UnsupportedXmlException.INSTANCE;
+        }
+        return position;
+    }
+
+    private boolean skipAttributes() throws UnsupportedXmlException {
+        byte quote = 0;
+        while (position < xml.length) {
+            byte character = xml[position++];
+            if (quote != 0) {
+                if (character == quote) {
+                    quote = 0;
+                }
+            } else if (character == '"' || character == '\'') {
+                quote = character;
+            } else if (character == '>') {
+                return xml[position - 2] == '/';
+            }
+        }
+        throw UnsupportedXmlException.INSTANCE;
+    }
+
+    private void skipWhitespace() {
+        while (position < xml.length && isWhitespace(xml[position])) {
+            position++;
+        }
+    }
+
+    private void expect(char expected) throws UnsupportedXmlException {
+        if (peek() != expected) {
+            throw UnsupportedXmlException.INSTANCE;
+        }
+        position++;
+    }
+
+    private byte peek() throws UnsupportedXmlException {
+        if (position >= xml.length) {
+            throw UnsupportedXmlException.INSTANCE;
+        }
+        return xml[position];
+    }
+
+    private int indexOf(char character, int from) {
+        for (int index = from; index < xml.length; index++) {
+            if (xml[index] == character) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private int indexAfter(String token) throws UnsupportedXmlException {
+        for (int index = position; index + token.length() <= xml.length; index++) {
+            if (startsWith(token, index)) {
+                return index + token.length();
+            }
+        }
+        throw UnsupportedXmlException.INSTANCE;
+    }
+
+    private boolean startsWith(String token, int offset) {
+        if (offset + token.length() > xml.length) {
+            return false;
+        }
+        for (int index = 0; index < token.length(); index++) {
+            if (xml[offset + index] != token.charAt(index)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean regionMatches(int offset, int otherOffset, int length) {
+        for (int index = 0; index < length; index++) {
+            if (xml[offset + index] != xml[otherOffset + index]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matches(int start, int end, String name) {
+        return end - start == name.length() && startsWith(name, start);
+    }
+
+    private static boolean isWhitespace(byte character) {
+        return character == ' ' || character == '\t' || character == '\n' || character == '\r';
+    }
+}
@@ -0,0 +1,74 @@
+package hu.codelens.sharecenter.internal;
+
+import javax.net.ssl.*;
+import java.security.KeyManagementException;
+import java.security.SecureRandom;
+
+/**
+ * Delegates to an initialized context and reports every new SSL engine, which the HTTP client creates once per
+ * connection, so the requests above this count were sent on reused keep-alive connections.
+ */
+class ConnectionCountingSslContext extends SSLContext {
+
+    ConnectionCountingSslContext(SSLContext delegate, Runnable onConnection) {
+        super(new CountingSpi(delegate, onConnection), delegate.getProvider(), delegate.getProtocol());
+    }
+
+    private static class CountingSpi extends SSLContextSpi {
+        private final SSLContext delegate;
+        private final Runnable onConnection;
+
+        private CountingSpi(SSLContext delegate, Runnable onConnection) {
+            this.delegate = delegate;
+            this.onConnection = onConnection;
+        }
+
+        @Override
+        protected void engineInit(KeyManager[] keyManagers, TrustManager[] trustManagers, SecureRandom random)
+            throws KeyManagementException {
+            delegate.init(keyManagers, trustManagers, random);
+        }
+
+        @Override
+        protected SSLSocketFactory engineGetSocketFactory() {
+            return delegate.getSocketFactory();
+        }
+
+        @Override
+        protected SSLServerSocketFactory engineGetServerSocketFactory() {
+            return delegate.getServerSocketFactory();
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine() {
+            onConnection.run();
+            return delegate.createSSLEngine();
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine(String host, int port) {
+            onConnection.run();
+            return delegate.createSSLEngine(host, port);
+        }
+
+        @Override
+        protected SSLSessionContext engineGetServerSessionContext() {
+            return delegate.getServerSessionContext();
+        }
+
+        @Override
+        protected SSLSessionContext engineGetClientSessionContext() {
+            return delegate.getClientSessionContext();
+        }
+
+        @Override
+        protected SSLParameters engineGetDefaultSSLParameters() {
+            return delegate.getDefaultSSLParameters();
+        }
+
+        @Override
+        protected SSLParameters engineGetSupportedSSLParameters() {
+            return delegate.getSupportedSSLParameters();
+        }
+    }
+}
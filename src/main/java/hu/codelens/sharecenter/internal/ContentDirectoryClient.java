@@ -0,0 +1,366 @@
+package hu.codelens.sharecenter.internal;
+
+import hu.codelens.sharecenter.JShareCenterSettings;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads the catalog of the UPnP AV (DLNA) media server of the NAS with ContentDirectory {@code Browse} requests. The
+ * pages of a container and its sub-containers are requested concurrently, on a fixed number of threads. An item is
+ * kept once per resource URL: the virtual containers of minidlna (by artist, by album, ...) list the same file again
+ * under other titles.
+ */
+public class ContentDirectoryClient {
+
+    private static final String SERVICE_TYPE = "urn:schemas-upnp-org:service:ContentDirectory:1";
+    private static final String ROOT_ID = "0";
+    private static final int PAGE_SIZE = 100;
+
+    private final URI descriptionUri;
+    private final Duration requestTimeout;
+    private final RetryPolicy retryPolicy;
+    private final int parallelism;
+    private final HttpClient httpClient;
+
+    public ContentDirectoryClient(URI descriptionUri, JShareCenterSettings settings, int parallelism) {
+        this.descriptionUri = descriptionUri;
+        this.requestTimeout = settings.getRequestTimeout();
+        this.retryPolicy = new RetryPolicy(settings.getMaxRetries(), settings.getInitialBackoff(),
+            settings.getMaxBackoff());
+        this.parallelism = Math.max(1, parallelism);
+
+        HttpClient.Builder builder = HttpClient.newBuilder()
+            .followRedirects(HttpClient.Redirect.NORMAL);
+        if (settings.getConnectTimeout() != null) {
+            builder.connectTimeout(settings.getConnectTimeout());
+        }
+        if (settings.getExecutor() != null) {
+            builder.executor(settings.getExecutor());
+        }
+        this.httpClient = builder.build();
+    }
+
+    public List<MediaCatalog.Entry> browseAll() {
+        return new Walk(resolveControlUri()).run();
+    }
+
+    URI resolveControlUri() {
+        byte[] description = send(requestBuilder(descriptionUri).GET().build());
+
+        XMLStreamReader reader = null;
+        try {
+            reader = XmlInputFactoryHolder.FACTORY.createXMLStreamReader(new ByteArrayInputStream(description));
+            String baseUrl = null;
+            String serviceType = null;
+            String controlUrl = null;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    switch (reader.getLocalName()) {
+                        case "URLBase":
+                            baseUrl = reader.getElementText().trim();
+                            break;
+                        case "serviceType":
+                            serviceType = reader.getElementText().trim();
+                            break;
+                        case "controlURL":
+                            controlUrl = reader.getElementText().trim();
+                            break;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals("service")) {
+                    if (serviceType != null && controlUrl != null
+                        && serviceType.startsWith("urn:schemas-upnp-org:service:ContentDirectory:")) {
+                        URI base = baseUrl == null || baseUrl.isEmpty() ? descriptionUri : URI.create(baseUrl);
+                        return base.resolve(controlUrl);
+                    }
+                    serviceType = null;
+                    controlUrl = null;
+                }
+            }
+        } catch (XMLStreamException | IllegalArgumentException e) {
+            throw new IllegalStateException("Could not read the media server description: " + descriptionUri, e);
+        } finally {
+            close(reader);
+        }
+        throw new IllegalStateException("The media server has no ContentDirectory service: " + descriptionUri);
+    }
+
+    Page browse(URI controlUri, String objectId, int start, int count) {
+        String body = "<?xml version=\"1.0\" encoding=\"utf-8\"?>"
+            + "<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\""
+            + " s:encodingStyle=\"http://schemas.xmlsoap.org/soap/encoding/\"><s:Body>"
+            + "<u:Browse xmlns:u=\"" + SERVICE_TYPE + "\"><ObjectID>" + escape(objectId) + "</ObjectID>"
+            + "<BrowseFlag>BrowseDirectChildren</BrowseFlag><Filter>dc:title,res,res@size</Filter>"
+            + "<StartingIndex>" + start + "</StartingIndex><RequestedCount>" + count + "</RequestedCount>"
+            + "<SortCriteria></SortCriteria></u:Browse></s:Body></s:Envelope>";
+        HttpRequest request = requestBuilder(controlUri)
+            .header("Content-Type", "text/xml; charset=\"utf-8\"")
+            .header("SOAPAction", "\"" + SERVICE_TYPE + "#Browse\"")
+            .POST(HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8))
+            .build();
+        return parseBrowseResponse(send(request));
+    }
+
+    private HttpRequest.Builder requestBuilder(URI uri) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri);
+        if (requestTimeout != null) {
+            builder = builder.timeout(requestTimeout);
+        }
+        return builder;
+    }
+
+    private Page parseBrowseResponse(byte[] response) {
+        XMLStreamReader reader = null;
+        try {
+            reader = XmlInputFactoryHolder.FACTORY.createXMLStreamReader(new ByteArrayInputStream(response));
+            String result = null;
+            int returned = 0;
+            int total = 0;
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                    switch (reader.getLocalName()) {
+                        case "Result":
+                            result = reader.getElementText();
+                            break;
+                        case "NumberReturned":
+                            returned = Integer.parseInt(reader.getElementText().trim());
+                            break;
+                        case "TotalMatches":
+                            total = Integer.parseInt(reader.getElementText().trim());
+                            break;
+                    }
+                }
+            }
+            if (result == null) {
+                throw new IllegalStateException("Browse response without result");
+            }
+            return new Page(parseDidl(result), returned, total);
+        } catch (XMLStreamException | NumberFormatException e) {
+            throw new IllegalStateException("Could not parse the Browse response", e);
+        } finally {
+            close(reader);
+        }
+    }
+
+    private static List<DidlObject> parseDidl(String didl) throws XMLStreamException {
+        List<DidlObject> objects = new ArrayList<>();
+        XMLStreamReader reader = XmlInputFactoryHolder.FACTORY.createXMLStreamReader(new StringReader(didl));
+        try {
+            DidlObject current = null;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if (name.equals("container") || name.equals("item")) {
+                        current = new DidlObject(reader.getAttributeValue(null, "id"), name.equals("container"));
+                    } else if (current != null && name.equals("title")) {
+                        current.title = reader.getElementText().trim();
+                    } else if (current != null && name.equals("res") && current.resource == null) {
+                        current.size = parseSize(reader.getAttributeValue(null, "size"));
+                        current.resource = reader.getElementText().trim();
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && current != null
+                    && (reader.getLocalName().equals("container") || reader.getLocalName().equals("item"))) {
+                    if (current.id != null) {
+                        objects.add(current);
+                    }
+                    current = null;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return objects;
+    }
+
+    private byte[] send(HttpRequest request) {
+        int retry = 0;
+        while (true) {
+            try {
+                HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                if (response.statusCode() == 200) {
+                    return response.body();
+                }
+                if (response.statusCode() < 500 || retry >= retryPolicy.getMaxRetries()) {
+                    throw new IllegalStateException("The media server answered " + response.statusCode() + " to "
+                        + request.uri());
+                }
+            } catch (IOException e) {
+                if (retry >= retryPolicy.getMaxRetries()) {
+                    throw new IllegalStateException("Could not reach the media server: " + request.uri(), e);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while reading the media server catalog", e);
+            }
+
+            try {
+                Thread.sleep(retryPolicy.backoff(retry++).toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while reading the media server catalog", e);
+            }
+        }
+    }
+
+    private static long parseSize(String size) {
+        try {
+            return size == null ? -1 : Long.parseLong(size.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    private static void close(XMLStreamReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (XMLStreamException e) {
+                // ignored
+            }
+        }
+    }
+
+    static class Page {
+
+        private final List<DidlObject> objects;
+        private final int returned;
+        private final int total;
+
+        Page(List<DidlObject> objects, int returned, int total) {
+            this.objects = objects;
+            this.returned = returned;
+            this.total = total;
+        }
+    }
+
+    static class DidlObject {
+
+        private final String id;
+        private final boolean container;
+        private String title;
+        private long size;
+        private String resource;
+
+        DidlObject(String id, boolean container) {
+            this.id = id;
+            this.container = container;
+            this.title = "";
+            this.size = -1;
+            this.resource = null;
+        }
+    }
+
+    // one walk of the whole catalog; each task browses one page, the walk is over when no task is left
+    private class Walk {
+
+        private final URI controlUri;
+        private final ExecutorService executor;
+        private final Collection<MediaCatalog.Entry> containers;
+        private final ConcurrentMap<String, MediaCatalog.Entry> items;
+        private final AtomicInteger pending;
+        private final CountDownLatch done;
+        private volatile RuntimeException failure;
+
+        Walk(URI controlUri) {
+            this.controlUri = controlUri;
+            AtomicInteger threadCounter = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+                Thread thread = new Thread(runnable, "jsharecenter-catalog-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.containers = new ConcurrentLinkedQueue<>();
+            this.items = new ConcurrentHashMap<>();
+            this.pending = new AtomicInteger();
+            this.done = new CountDownLatch(1);
+        }
+
+        List<MediaCatalog.Entry> run() {
+            try {
+                submit(() -> browseContainer(ROOT_ID, ""));
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while reading the media server catalog", e);
+            } finally {
+                executor.shutdownNow();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            List<MediaCatalog.Entry> entries = new ArrayList<>(containers);
+            entries.addAll(items.values());
+            return entries;
+        }
+
+        private void browseContainer(String id, String path) {
+            Page first = browse(controlUri, id, 0, PAGE_SIZE);
+            accept(first, path);
+            // the server may return less than asked, the rest of the pages are requested in its page size
+            int pageSize = first.returned;
+            for (int start = pageSize; pageSize > 0 && start < first.total; start += pageSize) {
+                int pageStart = start;
+                submit(() -> accept(browse(controlUri, id, pageStart, pageSize), path));
+            }
+        }
+
+        private void accept(Page page, String path) {
+            page.objects.forEach(object -> {
+                String objectPath = path + "/" + object.title.replace('/', '_');
+                MediaCatalog.Entry entry = new MediaCatalog.Entry(object.id, objectPath, object.container, object.size);
+                if (object.container) {
+                    containers.add(entry);
+                    submit(() -> browseContainer(object.id, objectPath));
+                } else {
+                    // the same file seen in several containers keeps the first of its paths in sort order, so the
+                    // path does not depend on the order the pages arrived in
+                    items.merge(object.resource != null && !object.resource.isEmpty() ? object.resource : object.id,
+                        entry, (kept, other) -> kept.getPath().compareTo(other.getPath()) <= 0 ? kept : other);
+                }
+            });
+        }
+
+        private void submit(Runnable task) {
+            pending.incrementAndGet();
+            executor.execute(() -> {
+                try {
+                    if (failure == null) {
+                        task.run();
+                    }
+                } catch (RuntimeException e) {
+                    failure = e;
+                } finally {
+                    if (pending.decrementAndGet() == 0) {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package hu.codelens.sharecenter.internal;
+
+import hu.codelens.sharecenter.AsyncJShareCenter;
+import hu.codelens.sharecenter.JShareCenterMediaPath;
+import hu.codelens.sharecenter.JShareCenterMetrics;
+import hu.codelens.sharecenter.JShareCenterSettings;
+
+import java.net.http.HttpRequest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+public class DefaultAsyncJShareCenter implements AsyncJShareCenter {
+
+    private final String host;
+    private final HttpsClient client;
+    private final ShareCenterProtocol protocol;
+    private final JShareCenterMetrics metrics;
+    private final Object sessionLock;
+    private volatile boolean loggedIn;
+    private volatile String username;
+    private volatile String base64password;
+    private volatile int sessionGeneration;
+    private CompletableFuture<Boolean> relogin;
+
+    public DefaultAsyncJShareCenter(String host) {
+        this(host, new JShareCenterSettings());
+    }
+
+    public DefaultAsyncJShareCenter(String host, Executor executor) {
+        this(host, settings(executor));
+    }
+
+    public DefaultAsyncJShareCenter(String host, JShareCenterSettings settings) {
+        this.host = host;
+        this.client = new HttpsClient(host, settings);
+        this.protocol = new ShareCenterProtocol(client);
+        this.metrics = settings.getMetrics();
+        this.sessionLock = new Object();
+        this.loggedIn = false;
+        this.username = null;
+        this.base64password = null;
+        this.sessionGeneration = 0;
+        this.relogin = null;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> login(String username, String base64password) {
+        return client.sendAsync(protocol.loginRequest(username, base64password)).thenApply(response -> {
+            if (protocol.isLoginSuccessful(response)) {
+                synchronized (sessionLock) {
+                    this.username = username;
+                    this.base64password = base64password;
+                    sessionGeneration++;
+                    loggedIn = true;
+                }
+                return true;
+            }
+            return false;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> logout(String username) {
+        return checkLoggedIn("logout")
+            .thenCompose(ignored -> client.sendAsync(protocol.logoutRequest(username)))
+            .thenAccept(response -> {
+                if (protocol.isLogoutSuccessful(response)) {
+                    synchronized (sessionLock) {
+                        loggedIn = false;
+                        this.username = null;
+                        this.base64password = null;
+                    }
+                }
+            });
+    }
+
+    @Override
+    public CompletableFuture<Optional<Boolean>> checkMediaScanRunning() {
+        return checkLoggedIn("CheckRunningAvPrescan")
+            .thenCompose(ignored -> sendAuthenticated(protocol.mediaScanRunningRequest(), true))
+            .thenApply(protocol::parseFlag);
+    }
+
+    @Override
+    public CompletableFuture<Optional<Boolean>> startMediaScan(JShareCenterMediaPath mediaPath) {
+        return checkLoggedIn("CheckRunningAvPrescan")
+            .thenCompose(ignored -> sendAuthenticated(protocol.startMediaScanRequest(mediaPath), false))
+            .thenApply(protocol::parseFlag);
+    }
+
+    @Override
+    public CompletableFuture<Optional<Boolean>> checkMediaScanFinished() {
+        return checkLoggedIn("CheckRunningAvPrescanFinished")
+            .thenCompose(ignored -> sendAuthenticated(protocol.mediaScanFinishedRequest(), true))
+            .thenApply(protocol::parseFlag);
+    }
+
+    @Override
+    public CompletableFuture<Optional<Integer>> checkMediaScanProgress() {
+        return checkLoggedIn("CheckRunningAvPrescanProgress")
+            .thenCompose(ignored -> sendAuthenticated(protocol.mediaScanProgressRequest(), true))
+            .thenApply(protocol::parseMediaScanProgress);
+    }
+
+    @Override
+    public CompletableFuture<Optional<Collection<JShareCenterMediaPath>>> getMediaServerPathList() {
+        return checkLoggedIn("AvServerPathList")
+            .thenCompose(ignored -> fetchMediaServerPathList(1, ShareCenterProtocol.DEFAULT_PAGE_SIZE,
+                new ArrayList<>()));
+    }
+
+    private CompletableFuture<Optional<Collection<JShareCenterMediaPath>>> fetchMediaServerPathList(
+        int page, int pageSize, List<JShareCenterMediaPath> paths) {
+
+        return sendAuthenticated(protocol.mediaServerPathListRequest(page, pageSize), true)
+            .thenApply(protocol::parseMediaServerPathPage)
+            .thenCompose(mediaPathPage -> {
+                if (mediaPathPage.isEmpty()) {
+                    return CompletableFuture.completedFuture(Optional.empty());
+                }
+                paths.addAll(mediaPathPage.get().getPaths());
+                if (mediaPathPage.get().hasMore(page, pageSize)) {
+                    return fetchMediaServerPathList(page + 1, pageSize, paths);
+                }
+                return CompletableFuture.completedFuture(Optional.of(paths));
+            });
+    }
+
+    private CompletableFuture<HttpsClient.Response> sendAuthenticated(HttpRequest request, boolean idempotent) {
+        int generation = sessionGeneration;
+        return send(request, idempotent).thenCompose(response -> {
+            // a redirected request was not executed, so it can be sent again after a new login
+            if (!protocol.isSessionExpired(response)) {
+                return CompletableFuture.completedFuture(response);
+            }
+            return relogin(generation).thenCompose(loggedInAgain -> loggedInAgain ? send(request, idempotent)
+                : CompletableFuture.completedFuture(response));
+        });
+    }
+
+    private CompletableFuture<HttpsClient.Response> send(HttpRequest request, boolean idempotent) {
+        return idempotent ? client.sendIdempotentAsync(request) : client.sendAsync(request);
+    }
+
+    private CompletableFuture<Boolean> relogin(int generation) {
+        synchronized (sessionLock) {
+            // the callers that found the same session expired share one login
+            if (sessionGeneration != generation) {
+                return CompletableFuture.completedFuture(loggedIn);
+            }
+            if (relogin != null) {
+                return relogin;
+            }
+            if (username == null) {
+                return CompletableFuture.completedFuture(false);
+            }
+            if (metrics != null) {
+                metrics.recordRelogin(host);
+            }
+
+            CompletableFuture<Boolean> login = login(username, base64password);
+            relogin = login;
+            login.whenComplete((result, throwable) -> {
+                synchronized (sessionLock) {
+                    if (relogin == login) {
+                        relogin = null;
+                    }
+                }
+            });
+            return login;
+        }
+    }
+
+    private CompletableFuture<Void> checkLoggedIn(String operation) {
+        if (!loggedIn) {
+            return CompletableFuture.failedFuture(new IllegalStateException(
+                "Operation (" + operation + ") cannot be done, AsyncJShareCenter is not logged in"));
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private static JShareCenterSettings settings(Executor executor) {
+        JShareCenterSettings settings = new JShareCenterSettings();
+        settings.setExecutor(executor);
+        return settings;
+    }
+}
@@ -2,8 +2,17 @@ package hu.codelens.sharecenter.internal;
 
 import hu.codelens.sharecenter.ColorOutput;
 
+import java.io.IOException;
 import java.io.PrintStream;
-
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Objects;
+
+/**
+ * Writes each line and progress frame with a single print from a reused buffer. Without a terminal the colours are
+ * left out and the progress is printed as one line per 10%.
+ */
 public class DefaultColorOutput implements ColorOutput {
 
     private static final String RESET = "\u001B[0m";
@@ -17,16 +26,43 @@ public class DefaultColorOutput implements ColorOutput {
     private static final String CYAN = "\u001B[36m";
 
     private static final String DOT = "\u25cf";
-    private static final String PROG_FILL = "\u2588";
-    private static final String PROG_EMPTY = "\u2591";
+    private static final String PLAIN_DOT = "*";
+    private static final char PROG_FILL = '\u2588';
+    private static final char PROG_EMPTY = '\u2591';
 
-    private static final String[] SPINNER = {"-", "\\", "|", "/"};
-    private static int SPINNER_OFFSET = 0;
+    private static final char[] SPINNER = {'-', '\\', '|', '/'};
+    private static final int DEFAULT_FRAME_RATE = 10;
+    private static final int PLAIN_MILESTONE = 10;
 
+    private final StringBuilder buffer;
     private PrintStream output;
+    private Boolean ansi;
+    private long frameInterval;
+
+    private int spinnerOffset;
+    private int lastStatusLength;
+    private long lastFrameTime;
+    private int lastPercentage;
+    private int lastPadding;
+    private int lastLen;
+    private String lastStatus;
+    private int lastMilestone;
+    private boolean progressLineOpen;
 
     public DefaultColorOutput() {
+        this(null);
+    }
+
+    public DefaultColorOutput(boolean ansi) {
+        this(Boolean.valueOf(ansi));
+    }
+
+    private DefaultColorOutput(Boolean ansi) {
+        buffer = new StringBuilder(128);
         output = System.out;
+        this.ansi = ansi;
+        setFrameRate(DEFAULT_FRAME_RATE);
+        resetProgress();
     }
 
     @Override
@@ -40,122 +76,134 @@ public class DefaultColorOutput implements ColorOutput {
     }
 
     @Override
-    public void nl() {
+    public boolean isAnsi() {
+        // the console is only looked up when the first line is written
+        if (ansi == null) {
+            ansi = isTerminal();
+        }
+        return ansi;
+    }
+
+    @Override
+    public void setAnsi(boolean ansi) {
+        this.ansi = ansi;
+    }
+
+    @Override
+    public void setFrameRate(int framesPerSecond) {
+        frameInterval = framesPerSecond > 0 ? 1_000_000_000L / framesPerSecond : 0;
+    }
+
+    @Override
+    public synchronized void nl() {
+        resetProgress();
         output.println();
     }
 
     @Override
     public void reset() {
-        output.print(RESET);
+        color(RESET);
     }
 
     @Override
     public void black() {
-        output.print(BLACK);
+        color(BLACK);
     }
 
     @Override
     public void white() {
-        output.print(WHITE);
+        color(WHITE);
     }
 
     @Override
     public void red() {
-        output.print(RED);
+        color(RED);
     }
 
     @Override
     public void green() {
-        output.print(GREEN);
+        color(GREEN);
     }
 
     @Override
     public void blue() {
-        output.print(BLUE);
+        color(BLUE);
     }
 
     @Override
     public void yellow() {
-        output.print(YELLOW);
+        color(YELLOW);
     }
 
     @Override
     public void purple() {
-        output.print(PURPLE);
+        color(PURPLE);
     }
 
     @Override
     public void cyan() {
-        output.print(CYAN);
+        color(CYAN);
     }
 
     @Override
     public void lineReturn() {
-        output.print("\r");
+        if (isAnsi()) {
+            output.print('\r');
+        }
     }
 
     @Override
     public void dot() {
-        output.print(DOT);
+        output.print(getDot());
     }
 
     @Override
     public String getDot() {
-        return DOT;
+        return isAnsi() ? DOT : PLAIN_DOT;
     }
 
     @Override
-    public void dotLine(String line) {
-        dot();
-        output.print(" " + line);
+    public synchronized void dotLine(String line) {
+        buffer.setLength(0);
+        buffer.append(getDot()).append(' ').append(line);
+        flush();
     }
 
     @Override
-    public void dotLineLn(String line) {
-        dotLine(line);
-        output.println();
+    public synchronized void dotLineLn(String line) {
+        buffer.setLength(0);
+        buffer.append(getDot()).append(' ').append(line).append(System.lineSeparator());
+        flush();
     }
 
     @Override
     public void withGreen(String text) {
-        green();
-        output.print(text);
-        reset();
+        colored(GREEN, text, false);
     }
 
     @Override
     public void withGreenLn(String text) {
-        green();
-        output.println(text);
-        reset();
+        colored(GREEN, text, true);
     }
 
     @Override
     public void withRed(String text) {
-        red();
-        output.print(text);
-        reset();
+        colored(RED, text, false);
     }
 
     @Override
     public void withRedLn(String text) {
-        red();
-        output.println(text);
-        reset();
+        colored(RED, text, true);
     }
 
     @Override
     public void withYellow(String text) {
-        yellow();
-        output.print(text);
-        reset();
+        colored(YELLOW, text, false);
     }
 
     @Override
     public void withYellowLn(String text) {
-        yellow();
-        output.println(text);
-        reset();
+        colored(YELLOW, text, true);
     }
 
     @Override
@@ -170,32 +218,143 @@ public class DefaultColorOutput implements ColorOutput {
 
     @Override
     public void progress(int padding, int len, int percentage, boolean spinner) {
-        int filled = (int) ((float) (len) * ((float) percentage / 100f));
-        int empty = len - filled;
-        if (empty + filled < len) {
-            empty = 0;
-            filled = len;
+        progress(padding, len, percentage, spinner, null);
+    }
+
+    @Override
+    public synchronized void progress(int padding, int len, int percentage, boolean spinner, String status) {
+        if (isAnsi()) {
+            renderFrame(padding, len, percentage, spinner, status);
+        } else {
+            renderMilestone(padding, percentage, status);
         }
+    }
 
-        lineReturn();
-        for (int index = 0; index < padding; index++) {
-            output.print(" ");
+    private void renderFrame(int padding, int len, int percentage, boolean spinner, String status) {
+        long now = System.nanoTime();
+        boolean changed = !progressLineOpen || percentage != lastPercentage || padding != lastPadding
+            || len != lastLen || !Objects.equals(status, lastStatus);
+        boolean due = now - lastFrameTime >= frameInterval;
+        // the first and the completed frame are always drawn, others only when due and something moved
+        if (progressLineOpen && percentage < 100 && (!due || (!changed && !spinner))) {
+            return;
         }
 
-        for (int index = 0; index < filled; index++) {
-            output.print(PROG_FILL);
+        int filled = Math.max(0, Math.min(len, (int) ((float) len * ((float) percentage / 100f))));
+
+        buffer.setLength(0);
+        buffer.append('\r');
+        appendRepeated(' ', padding);
+        appendRepeated(PROG_FILL, filled);
+        appendRepeated(PROG_EMPTY, len - filled);
+        buffer.append(' ');
+        if (percentage < 10) {
+            buffer.append('0');
         }
-        for (int index = 0; index < empty; index++) {
-            output.print(PROG_EMPTY);
+        buffer.append(percentage).append("% ").append(spinner ? nextSpinner() : ' ').append(' ');
+
+        int statusLength = status == null ? 0 : status.length() + 1;
+        if (status != null) {
+            buffer.append(' ').append(status);
         }
+        appendRepeated(' ', lastStatusLength - statusLength);
+        flush();
+
+        lastStatusLength = statusLength;
+        lastFrameTime = now;
+        lastPercentage = percentage;
+        lastPadding = padding;
+        lastLen = len;
+        lastStatus = status;
+        progressLineOpen = true;
+    }
+
+    private void renderMilestone(int padding, int percentage, String status) {
+        int milestone = Math.min(100, percentage) / PLAIN_MILESTONE * PLAIN_MILESTONE;
+        if (progressLineOpen && milestone <= lastMilestone) {
+            return;
+        }
+
+        buffer.setLength(0);
+        if (progressLineOpen) {
+            buffer.append(System.lineSeparator());
+        }
+        appendRepeated(' ', padding);
+        buffer.append(milestone).append('%');
+        if (status != null && milestone < 100) {
+            buffer.append(' ').append(status);
+        }
+        flush();
+
+        lastMilestone = milestone;
+        progressLineOpen = true;
+    }
+
+    private synchronized void colored(String color, String text, boolean newLine) {
+        buffer.setLength(0);
+        if (isAnsi()) {
+            buffer.append(color);
+        }
+        buffer.append(text);
+        if (newLine) {
+            buffer.append(System.lineSeparator());
+        }
+        if (isAnsi()) {
+            buffer.append(RESET);
+        }
+        if (newLine) {
+            resetProgress();
+        }
+        flush();
+    }
+
+    private void color(String color) {
+        if (isAnsi()) {
+            output.print(color);
+        }
+    }
+
+    private void appendRepeated(char character, int count) {
+        for (int index = 0; index < count; index++) {
+            buffer.append(character);
+        }
+    }
+
+    private void flush() {
+        output.append(buffer);
+        output.flush();
+    }
+
+    private void resetProgress() {
+        progressLineOpen = false;
+        lastStatusLength = 0;
+        lastFrameTime = 0;
+        lastPercentage = -1;
+        lastMilestone = -1;
+        lastStatus = null;
+    }
+
+    private char nextSpinner() {
+        char frame = SPINNER[spinnerOffset];
+        spinnerOffset = (spinnerOffset + 1) % SPINNER.length;
+        return frame;
+    }
 
-        output.printf(" %02d%% %s", percentage, spinner ? getSpinner() : "  ");
+    private static boolean isTerminal() {
+        return isStdoutTerminal() && !"dumb".equals(System.getenv("TERM"));
     }
 
-    private static synchronized String getSpinner() {
-        if (SPINNER_OFFSET >= SPINNER.length) {
-            SPINNER_OFFSET = 0;
+    private static boolean isStdoutTerminal() {
+        // the console is null when only stdin is piped, so stdout is looked up where the system tells it
+        Path stdout = Paths.get("/proc/self/fd/1");
+        if (Files.exists(stdout)) {
+            try {
+                String target = Files.readSymbolicLink(stdout).toString();
+                return target.startsWith("/dev/pts/") || target.startsWith("/dev/tty");
+            } catch (IOException | UnsupportedOperationException e) {
+                // decided by the console below
+            }
         }
-        return SPINNER[SPINNER_OFFSET++];
+        return System.console() != null;
     }
 }
@@ -1,189 +1,411 @@
 package hu.codelens.sharecenter.internal;
 
 import hu.codelens.sharecenter.JShareCenter;
+import hu.codelens.sharecenter.JShareCenterDisk;
+import hu.codelens.sharecenter.JShareCenterFile;
 import hu.codelens.sharecenter.JShareCenterMediaPath;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import java.io.ByteArrayInputStream;
+import hu.codelens.sharecenter.JShareCenterMetrics;
+import hu.codelens.sharecenter.JShareCenterScanProgress;
+import hu.codelens.sharecenter.JShareCenterSettings;
+import hu.codelens.sharecenter.JShareCenterStatusCommand;
+import hu.codelens.sharecenter.JShareCenterSystemStatus;
+
 import java.io.IOException;
-import java.net.HttpURLConnection;
 import java.net.http.HttpRequest;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
-
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.function.LongConsumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A ShareCenter over one session, safe for concurrent use. Concurrent calls of the same status command share one
+ * request and its answer, which is kept for the cache TTL of the command; the system status is kept for the status
+ * cache TTL. When several callers find the session expired, only the first one logs in again.
+ */
 public class DefaultJShareCenter implements JShareCenter {
 
+    private static final String SYSTEM_STATUS = "systemStatus";
+
+    private final String host;
     private final HttpsClient client;
-    private final DocumentBuilderFactory documentBuilderFactory;
-    private boolean loggedIn;
+    private final ShareCenterProtocol protocol;
+    private final RetryPolicy retryPolicy;
+    private final Duration requestTimeout;
+    private final JShareCenterMetrics metrics;
+    private final Duration statusCacheTtl;
+    private final Map<JShareCenterStatusCommand, Duration> commandCacheTtls;
+    private final Duration minPollInterval;
+    private final Duration maxPollInterval;
+    private final Executor executor;
+    private final SingleFlight statusFlights;
+    private final Object sessionLock;
+    private volatile boolean loggedIn;
+    private volatile String username;
+    private volatile String base64password;
+    private volatile int sessionGeneration;
+    private MediaScanWatch mediaScanWatch;
 
     public DefaultJShareCenter(String host) {
-        this.client = new HttpsClient(host);
+        this(host, new JShareCenterSettings());
+    }
+
+    public DefaultJShareCenter(String host, JShareCenterMetrics metrics) {
+        this(host, settings(metrics));
+    }
+
+    public DefaultJShareCenter(String host, JShareCenterSettings settings) {
+        this.host = host;
+        this.client = new HttpsClient(host, settings);
+        this.protocol = new ShareCenterProtocol(client);
+        this.retryPolicy = new RetryPolicy(settings.getMaxRetries(), settings.getInitialBackoff(),
+            settings.getMaxBackoff());
+        this.requestTimeout = settings.getRequestTimeout();
+        this.metrics = settings.getMetrics();
+        this.statusCacheTtl = settings.getStatusCacheTtl();
+        this.commandCacheTtls = settings.getCommandCacheTtls();
+        this.minPollInterval = settings.getMinPollInterval();
+        this.maxPollInterval = settings.getMaxPollInterval();
+        this.executor = settings.getExecutor();
+        this.statusFlights = new SingleFlight();
+        this.sessionLock = new Object();
         this.loggedIn = false;
-        documentBuilderFactory = DocumentBuilderFactory.newInstance();
+        this.username = null;
+        this.base64password = null;
+        this.sessionGeneration = 0;
     }
 
     @Override
     public boolean login(String username, String base64password) {
-        HttpsClient.Response response = client.send(client.createRequest("/cgi-bin/login_mgr.cgi",
-            Map.of("cmd", "login", "username", username, "pwd", base64password, "ssl", 1,
-                "ssl_port", 443, "port", 443, "f_type", 1, "f_username", "")));
+        synchronized (sessionLock) {
+            HttpsClient.Response response = client.send(protocol.loginRequest(username, base64password));
 
-        if (response.getCode() == 302 || response.getCode() == 200) {
-            String location = response.getHeader("location");
-            if (location.contains("/web/home.html?v=")) {
+            if (protocol.isLoginSuccessful(response)) {
+                this.username = username;
+                this.base64password = base64password;
+                sessionGeneration++;
                 loggedIn = true;
                 return true;
             }
-        }
 
-        return false;
+            return false;
+        }
     }
 
     @Override
     public void logout(String username) {
         checkLoggedIn("logout");
-        HttpsClient.Response response = client.send(client.createRequest("/cgi-bin/login_mgr.cgi?cmd=logout&username=" + username));
-        if (response.getCode() == 302 || response.getCode() == 200) {
-            loggedIn = false;
+        synchronized (sessionLock) {
+            HttpsClient.Response response = client.send(protocol.logoutRequest(username));
+            if (protocol.isLogoutSuccessful(response)) {
+                loggedIn = false;
+                this.username = null;
+                this.base64password = null;
+                statusFlights.clear();
+            }
         }
     }
 
+    @Override
+    public boolean resumeSession(Path sessionFile) {
+        return resumeSession(sessionFile, null, null);
+    }
+
+    @Override
+    public boolean resumeSession(Path sessionFile, String username, String base64password) {
+        SessionStore sessionStore = new SessionStore(sessionFile);
+        if (sessionStore.load(client.getCookieStore(), client.getBaseUri()) == 0) {
+            return false;
+        }
+
+        // any authenticated status command tells if the stored session is still valid
+        if (protocol.parseFlag(client.sendIdempotent(protocol.mediaScanRunningRequest())).isPresent()) {
+            synchronized (sessionLock) {
+                // without the credentials an expired resumed session cannot be logged in again
+                this.username = username;
+                this.base64password = base64password;
+                sessionGeneration++;
+                loggedIn = true;
+            }
+            return true;
+        }
+
+        client.getCookieStore().removeAll();
+        sessionStore.delete();
+        return false;
+    }
+
+    @Override
+    public void saveSession(Path sessionFile) {
+        checkLoggedIn("saveSession");
+        new SessionStore(sessionFile).save(client.getCookieStore());
+    }
+
     @Override
     public Optional<Boolean> checkMediaScanRunning() {
         checkLoggedIn("CheckRunningAvPrescan");
 
-        HttpRequest request = client.createRequest("/cgi-bin/app_mgr.cgi", Map.of("cmd", "CGI_SQLDB_Stop_Finish"));
-        return getResponse(request).map(text -> text.equals("1"));
+        return sendShared(JShareCenterStatusCommand.MEDIA_SCAN_RUNNING, protocol.mediaScanRunningRequest(),
+            protocol::parseFlag);
     }
 
     @Override
     public Optional<Boolean> startMediaScan(JShareCenterMediaPath mediaPath) {
         checkLoggedIn("CheckRunningAvPrescan");
 
-        HttpRequest request = client.createRequest("/cgi-bin/app_mgr.cgi",
-            Map.of("cmd", "UPnP_AV_Server_Prescan", "f_dir", mediaPath.getInternalPath()));
-        return getResponse(request).map(text -> text.equals("1"));
+        Optional<Boolean> started = protocol.parseFlag(sendAuthenticated(protocol.startMediaScanRequest(mediaPath),
+            false));
+        // the scan state kept for other callers is out of date now
+        statusFlights.clear();
+        return started;
     }
 
     @Override
     public Optional<Boolean> checkMediaScanFinished() {
         checkLoggedIn("CheckRunningAvPrescanFinished");
 
-        HttpRequest request = client.createRequest("/cgi-bin/app_mgr.cgi", Map.of("cmd", "UPnP_AV_Server_Prescan_Finished"));
-        return getResponse(request).map(text -> text.equals("1"));
+        return sendShared(JShareCenterStatusCommand.MEDIA_SCAN_FINISHED, protocol.mediaScanFinishedRequest(),
+            protocol::parseFlag);
     }
 
     @Override
     public Optional<Integer> checkMediaScanProgress() {
         checkLoggedIn("CheckRunningAvPrescanProgress");
 
-        HttpRequest request = client.createRequest("/cgi-bin/app_mgr.cgi", Map.of("cmd", "UPnP_AV_Server_Get_SQLDB_State"));
-        HttpsClient.Response response = client.send(request);
-
-        if (response.getCode() == HttpURLConnection.HTTP_OK) {
-            Optional<Document> parsedDocument = parseXml(response.getBody());
-            if (parsedDocument.isPresent()) {
-                Document document = parsedDocument.get();
-                Element documentElement = document.getDocumentElement();
-                if (documentElement.getTagName().equals("config")) {
-                    NodeList childNodes = documentElement.getChildNodes();
-                    if (childNodes.getLength() == 2) {
-                        Node resNode = childNodes.item(0);
-                        if (resNode.getNodeName().equals("db_stste")) {
-                            try {
-                                return Optional.of(Integer.parseInt(resNode.getTextContent()));
-                            } catch (NumberFormatException e) {
-                                // ignored
-                                return Optional.empty();
-                            }
-                        }
-                    }
-                }
+        return sendShared(JShareCenterStatusCommand.MEDIA_SCAN_PROGRESS, protocol.mediaScanProgressRequest(),
+            protocol::parseMediaScanProgress);
+    }
+
+    @Override
+    public synchronized Flow.Publisher<JShareCenterScanProgress> watchMediaScan(JShareCenterMediaPath mediaPath) {
+        checkLoggedIn("WatchAvPrescan");
+
+        // the NAS runs one media scan at a time and the progress commands do not name it, so one poller serves all
+        if (mediaScanWatch == null || mediaScanWatch.isClosed()) {
+            mediaScanWatch = new MediaScanWatch(this, mediaPath, minPollInterval, maxPollInterval, executor);
+        } else if (!mediaScanWatch.getMediaPath().getInternalPath().equals(mediaPath.getInternalPath())) {
+            if (mediaScanWatch.hasSubscribers()) {
+                throw new IllegalStateException("The media scan of " + mediaScanWatch.getMediaPath().getVolume()
+                    + " is being watched");
             }
+            // nobody listens to the watch of the other scan anymore, or never did
+            mediaScanWatch.close();
+            mediaScanWatch = new MediaScanWatch(this, mediaPath, minPollInterval, maxPollInterval, executor);
         }
+        return mediaScanWatch;
+    }
 
-        return Optional.empty();
+    @Override
+    public Optional<JShareCenterSystemStatus> getSystemStatus() {
+        checkLoggedIn("SystemStatus");
+
+        return statusFlights.get(SYSTEM_STATUS, statusCacheTtl, this::fetchSystemStatus);
     }
 
     @Override
     public Optional<Collection<JShareCenterMediaPath>> getMediaServerPathList() {
         checkLoggedIn("AvServerPathList");
 
-        HttpRequest request = client.createRequest("/cgi-bin/app_mgr.cgi",
-            Map.of("cmd", "UPnP_AV_Server_Path_List", "page", 1, "rp", 10,
-                "query", "", "qtype", "", "f_field", "false", "user", ""));
-        HttpsClient.Response response = client.send(request);
+        int pageSize = ShareCenterProtocol.DEFAULT_PAGE_SIZE;
+        Optional<MediaPathPage> firstPage = protocol.parseMediaServerPathPage(
+            sendAuthenticated(protocol.mediaServerPathListRequest(1, pageSize), true));
+        if (firstPage.isEmpty()) {
+            return Optional.empty();
+        }
+
+        MediaPathPageIterator iterator = new MediaPathPageIterator(client, protocol, retryPolicy,
+            this::sendIdempotentAuthenticated, pageSize, firstPage.get());
+        try (Stream<JShareCenterMediaPath> paths = stream(iterator)) {
+            return Optional.of(paths.collect(Collectors.toList()));
+        } catch (IllegalStateException e) {
+            // a list missing a later page is no list at all, like a missing first page
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public Stream<JShareCenterMediaPath> streamMediaServerPathList() {
+        return streamMediaServerPathList(ShareCenterProtocol.DEFAULT_PAGE_SIZE);
+    }
+
+    @Override
+    public Stream<JShareCenterMediaPath> streamMediaServerPathList(int pageSize) {
+        checkLoggedIn("AvServerPathList");
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+
+        return stream(new MediaPathPageIterator(client, protocol, retryPolicy, this::sendIdempotentAuthenticated,
+            pageSize));
+    }
 
-        if (response.getCode() == 200) {
-            return parseAvServerPathListXml(response.getBody());
+    @Override
+    public Optional<List<JShareCenterFile>> listDirectory(String internalPath) {
+        checkLoggedIn("FileList");
+
+        int pageSize = ShareCenterProtocol.FILE_LIST_PAGE_SIZE;
+        List<JShareCenterFile> files = new ArrayList<>();
+        for (int page = 1; ; page++) {
+            Optional<FileListPage> filePage = protocol.parseFileListPage(
+                sendAuthenticated(protocol.fileListRequest(internalPath, page, pageSize), true), internalPath);
+            if (filePage.isEmpty()) {
+                return Optional.empty();
+            }
+            files.addAll(filePage.get().getFiles());
+            if (!filePage.get().hasMore(page, pageSize)) {
+                return Optional.of(files);
+            }
         }
+    }
+
+    @Override
+    public Optional<List<JShareCenterFile>> listFolders(String internalPath) {
+        checkLoggedIn("FolderList");
 
-        return Optional.empty();
+        return protocol.parseFileListPage(sendAuthenticated(protocol.folderListRequest(internalPath), true),
+            internalPath).map(FileListPage::getFiles);
+    }
+
+    @Override
+    public Optional<Boolean> uploadFile(Path localFile, String internalDirectory) {
+        return uploadFile(localFile, internalDirectory, null);
     }
 
-    private Optional<Document> parseXml(String xml) {
-        DocumentBuilder documentBuilder;
-        try {
-            documentBuilder = documentBuilderFactory.newDocumentBuilder();
-        } catch (ParserConfigurationException e) {
-            throw new IllegalStateException("Could not create XML document builder", e);
+    @Override
+    public Optional<Boolean> uploadFile(Path localFile, String internalDirectory, LongConsumer progress) {
+        // an existing file of the NAS is only replaced when asked for
+        return uploadFile(localFile, internalDirectory, false, progress);
+    }
+
+    @Override
+    public Optional<Boolean> uploadFile(Path localFile, String internalDirectory, boolean overwrite,
+                                        LongConsumer progress) {
+        checkLoggedIn("Upload");
+
+        return protocol.parseFlag(sendAuthenticated(protocol.uploadRequest(localFile, internalDirectory, overwrite,
+            progress), false));
+    }
+
+    @Override
+    public Optional<Long> downloadFile(String internalPath, Path localFile) {
+        return downloadFile(internalPath, localFile, RangedDownload.DEFAULT_SEGMENTS, null);
+    }
+
+    @Override
+    public Optional<Long> downloadFile(String internalPath, Path localFile, int segments, LongConsumer progress) {
+        checkLoggedIn("Download");
+        if (segments < 1) {
+            throw new IllegalArgumentException("Segments must be positive: " + segments);
         }
 
-        try (ByteArrayInputStream is = new ByteArrayInputStream(xml.getBytes())) {
-            return Optional.ofNullable(documentBuilder.parse(is));
-        } catch (IOException | SAXException e) {
-            // ignored
+        return new RangedDownload(protocol, retryPolicy, this::sendStreamingAuthenticated, internalPath, localFile,
+            segments, progress, requestTimeout).run();
+    }
+
+    private Optional<JShareCenterSystemStatus> fetchSystemStatus() {
+        List<HttpRequest> requests = List.of(protocol.systemStatusRequest(), protocol.resourceStatusRequest(),
+            protocol.diskStatusRequest());
+        int generation = sessionGeneration;
+        List<HttpsClient.Response> responses = sendAll(requests);
+        if (responses.stream().anyMatch(response -> response != null && protocol.isSessionExpired(response))
+            && relogin(generation)) {
+            responses = sendAll(requests);
+        }
+
+        Optional<Map<String, String>> system = parse(responses.get(0), protocol::parseConfigValues);
+        Optional<Map<String, String>> resources = parse(responses.get(1), protocol::parseConfigValues);
+        Optional<List<JShareCenterDisk>> disks = parse(responses.get(2), protocol::parseDisks);
+        if (system.isEmpty() && resources.isEmpty() && disks.isEmpty()) {
             return Optional.empty();
         }
+
+        return Optional.of(new DefaultJShareCenterSystemStatus(Instant.now(), system.orElse(Map.of()),
+            resources.orElse(Map.of()), disks.orElse(List.of())));
     }
 
-    private Optional<Collection<JShareCenterMediaPath>> parseAvServerPathListXml(String xmlBody) {
-        Optional<Document> parsedDocument = parseXml(xmlBody);
-        if (parsedDocument.isPresent()) {
-            Document document = parsedDocument.get();
-            List<JShareCenterMediaPath> paths = new ArrayList<>();
+    private List<HttpsClient.Response> sendAll(List<HttpRequest> requests) {
+        // all the requests are on the wire at the same time, a failed one leaves a gap instead of failing the others
+        List<CompletableFuture<HttpsClient.Response>> futures = new ArrayList<>();
+        requests.forEach(request -> futures.add(client.sendAsync(request).exceptionally(throwable -> null)));
 
-            NodeList rows = document.getElementsByTagName("row");
-            for (int rowIdx = 0; rowIdx < rows.getLength(); rowIdx++) {
-                Node row = rows.item(rowIdx);
-                NodeList cells = row.getChildNodes();
-                // todo: check if there are proper count of cell tags
-                paths.add(new DefaultJShareCenterMediaPath(cells.item(1).getTextContent(), cells.item(4).getTextContent()));
-            }
+        List<HttpsClient.Response> responses = new ArrayList<>();
+        futures.forEach(future -> responses.add(future.join()));
+        return responses;
+    }
+
+    private static <T> Optional<T> parse(HttpsClient.Response response,
+                                         Function<HttpsClient.Response, Optional<T>> parser) {
+        return response == null ? Optional.empty() : parser.apply(response);
+    }
+
+    private <T> Optional<T> sendShared(JShareCenterStatusCommand command, HttpRequest request,
+                                       Function<HttpsClient.Response, Optional<T>> parser) {
+        return statusFlights.get(command.name(), commandCacheTtls.get(command),
+            () -> parser.apply(sendAuthenticated(request, true)));
+    }
 
-            return Optional.of(paths);
+    private HttpsClient.Response sendAuthenticated(HttpRequest request, boolean idempotent) {
+        int generation = sessionGeneration;
+        HttpsClient.Response response = idempotent ? client.sendIdempotent(request) : client.send(request);
+        // a redirected request was not executed, so it can be sent again after a new login
+        if (protocol.isSessionExpired(response) && relogin(generation)) {
+            response = idempotent ? client.sendIdempotent(request) : client.send(request);
         }
+        return response;
+    }
 
-        return Optional.empty();
+    private HttpsClient.Response sendIdempotentAuthenticated(HttpRequest request) {
+        return sendAuthenticated(request, true);
     }
 
-    private Optional<String> getResponse(HttpRequest request) {
-        HttpsClient.Response response = client.send(request);
+    private HttpsClient.Response sendStreamingAuthenticated(HttpRequest request) {
+        int generation = sessionGeneration;
+        HttpsClient.Response response = client.sendStreaming(request);
+        if (protocol.isSessionExpired(response)) {
+            try {
+                response.getBodyStream().close();
+            } catch (IOException e) {
+                // ignored
+            }
+            if (relogin(generation)) {
+                response = client.sendStreaming(request);
+            }
+        }
+        return response;
+    }
 
-        if (response.getCode() == 200) {
-            Optional<Document> parsedDocument = parseXml(response.getBody());
-            if (parsedDocument.isPresent()) {
-                Document document = parsedDocument.get();
-                Element documentElement = document.getDocumentElement();
-                if (documentElement.getTagName().equals("config")) {
-                    NodeList childNodes = documentElement.getChildNodes();
-                    if (childNodes.getLength() == 1) {
-                        Node resNode = childNodes.item(0);
-                        if (resNode.getNodeName().equals("res")) {
-                            return Optional.ofNullable(resNode.getTextContent());
-                        }
-                    }
-                }
+    private boolean relogin(int generation) {
+        synchronized (sessionLock) {
+            // the callers that found the same session expired wait here, only the first one logs in again
+            if (sessionGeneration != generation) {
+                return loggedIn;
+            }
+            if (username == null) {
+                return false;
             }
+            if (metrics != null) {
+                metrics.recordRelogin(host);
+            }
+            return login(username, base64password);
         }
-        return Optional.empty();
+    }
+
+    private static JShareCenterSettings settings(JShareCenterMetrics metrics) {
+        JShareCenterSettings settings = new JShareCenterSettings();
+        settings.setMetrics(metrics);
+        return settings;
+    }
+
+    private static Stream<JShareCenterMediaPath> stream(MediaPathPageIterator iterator) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+            Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(iterator::cancel);
     }
 
     private void checkLoggedIn(String operation) {
@@ -0,0 +1,59 @@
+package hu.codelens.sharecenter.internal;
+
+import hu.codelens.sharecenter.JShareCenterDisk;
+
+import java.util.Optional;
+
+public class DefaultJShareCenterDisk implements JShareCenterDisk {
+
+    private final int slot;
+    private final String model;
+    private final long size;
+    private final long used;
+    private final Integer temperature;
+    private final String smartStatus;
+
+    DefaultJShareCenterDisk(int slot, String model, long size, long used, Integer temperature, String smartStatus) {
+        this.slot = slot;
+        this.model = model;
+        this.size = size;
+        this.used = used;
+        this.temperature = temperature;
+        this.smartStatus = smartStatus;
+    }
+
+    @Override
+    public int getSlot() {
+        return slot;
+    }
+
+    @Override
+    public String getModel() {
+        return model;
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public long getUsed() {
+        return used;
+    }
+
+    @Override
+    public Optional<Integer> getTemperature() {
+        return Optional.ofNullable(temperature);
+    }
+
+    @Override
+    public String getSmartStatus() {
+        return smartStatus;
+    }
+
+    @Override
+    public boolean isHealthy() {
+        return "PASS".equalsIgnoreCase(smartStatus) || "OK".equalsIgnoreCase(smartStatus);
+    }
+}
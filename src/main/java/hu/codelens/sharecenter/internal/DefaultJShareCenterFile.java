@@ -0,0 +1,47 @@
+package hu.codelens.sharecenter.internal;
+
+import hu.codelens.sharecenter.JShareCenterFile;
+
+import java.time.Instant;
+
+public class DefaultJShareCenterFile implements JShareCenterFile {
+
+    private final String name;
+    private final String path;
+    private final boolean directory;
+    private final long size;
+    private final Instant lastModified;
+
+    DefaultJShareCenterFile(String name, String path, boolean directory, long size, Instant lastModified) {
+        this.name = name;
+        this.path = path;
+        this.directory = directory;
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getPath() {
+        return path;
+    }
+
+    @Override
+    public boolean isDirectory() {
+        return directory;
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public Instant getLastModified() {
+        return lastModified;
+    }
+}
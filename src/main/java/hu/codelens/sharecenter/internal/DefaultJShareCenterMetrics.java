@@ -0,0 +1,314 @@
+package hu.codelens.sharecenter.internal;
+
+import hu.codelens.sharecenter.JShareCenterMetrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class DefaultJShareCenterMetrics implements JShareCenterMetrics {
+
+    private static final double[] BUCKET_SECONDS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60};
+    private static final long[] BUCKET_MICROS = new long[BUCKET_SECONDS.length];
+
+    static {
+        for (int index = 0; index < BUCKET_SECONDS.length; index++) {
+            BUCKET_MICROS[index] = Math.round(BUCKET_SECONDS[index] * 1_000_000);
+        }
+    }
+
+    private final Map<Key, RequestStats> requests;
+    private final Map<Key, ScanStats> scans;
+    private final Map<String, HostStats> hosts;
+
+    public DefaultJShareCenterMetrics() {
+        requests = new ConcurrentSkipListMap<>();
+        scans = new ConcurrentHashMap<>();
+        hosts = new ConcurrentSkipListMap<>();
+    }
+
+    @Override
+    public void recordRequest(String host, String command, Duration latency, long bytes, boolean error) {
+        RequestStats stats = requests.computeIfAbsent(new Key(host, command), key -> new RequestStats());
+        long micros = latency.toNanos() / 1000;
+        stats.latency.record(micros);
+        stats.recordBucket(micros);
+        stats.bytes.add(bytes);
+        if (error) {
+            stats.errors.increment();
+        }
+    }
+
+    @Override
+    public void recordRetry(String host, String command) {
+        requests.computeIfAbsent(new Key(host, command), key -> new RequestStats()).retries.increment();
+    }
+
+    @Override
+    public void recordConnection(String host) {
+        hosts.computeIfAbsent(host, key -> new HostStats()).connections.increment();
+    }
+
+    @Override
+    public void recordRelogin(String host) {
+        hosts.computeIfAbsent(host, key -> new HostStats()).relogins.increment();
+    }
+
+    @Override
+    public void recordScan(String host, String volume, Duration duration) {
+        ScanStats stats = scans.computeIfAbsent(new Key(host, volume), key -> new ScanStats());
+        stats.count.increment();
+        stats.totalNanos.add(duration.toNanos());
+        stats.lastNanos.set(duration.toNanos());
+    }
+
+    @Override
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\"requests\":[");
+        String separator = "";
+        for (Map.Entry<Key, RequestStats> entry : requests.entrySet()) {
+            LatencyHistogram latency = entry.getValue().latency;
+            json.append(separator)
+                .append("{\"host\":").append(Json.quote(entry.getKey().host))
+                .append(",\"cmd\":").append(Json.quote(entry.getKey().name))
+                .append(",\"count\":").append(latency.getCount())
+                .append(",\"errors\":").append(entry.getValue().errors.sum())
+                .append(",\"retries\":").append(entry.getValue().retries.sum())
+                .append(",\"bytes\":").append(entry.getValue().bytes.sum())
+                .append(",\"latencyMillis\":{")
+                .append("\"mean\":").append(millis((long) latency.getMean()))
+                .append(",\"p50\":").append(millis(latency.getValueAtPercentile(50)))
+                .append(",\"p90\":").append(millis(latency.getValueAtPercentile(90)))
+                .append(",\"p99\":").append(millis(latency.getValueAtPercentile(99)))
+                .append(",\"max\":").append(millis(latency.getMax()))
+                .append("}}");
+            separator = ",";
+        }
+
+        json.append("],\"scans\":[");
+        separator = "";
+        for (Map.Entry<Key, ScanStats> entry : new ConcurrentSkipListMap<>(scans).entrySet()) {
+            ScanStats stats = entry.getValue();
+            json.append(separator)
+                .append("{\"host\":").append(Json.quote(entry.getKey().host))
+                .append(",\"volume\":").append(Json.quote(entry.getKey().name))
+                .append(",\"count\":").append(stats.count.sum())
+                .append(",\"lastSeconds\":").append(seconds(stats.lastNanos.get()))
+                .append(",\"totalSeconds\":").append(seconds(stats.totalNanos.sum()))
+                .append("}");
+            separator = ",";
+        }
+
+        json.append("],\"connections\":[");
+        separator = "";
+        for (Map.Entry<String, HostStats> entry : hosts.entrySet()) {
+            long connections = entry.getValue().connections.sum();
+            json.append(separator)
+                .append("{\"host\":").append(Json.quote(entry.getKey()))
+                .append(",\"opened\":").append(connections)
+                .append(",\"reused\":").append(Math.max(0, requestCount(entry.getKey()) - connections))
+                .append(",\"relogins\":").append(entry.getValue().relogins.sum())
+                .append("}");
+            separator = ",";
+        }
+        return json.append("]}").toString();
+    }
+
+    @Override
+    public String toPrometheus() {
+        StringBuilder text = new StringBuilder();
+        text.append("# HELP jsharecenter_requests_total CGI requests sent to the ShareCenter\n")
+            .append("# TYPE jsharecenter_requests_total counter\n");
+        requests.forEach((key, stats) -> sample(text, "jsharecenter_requests_total", requestLabels(key),
+            String.valueOf(stats.latency.getCount())));
+
+        text.append("# HELP jsharecenter_request_errors_total Failed CGI requests\n")
+            .append("# TYPE jsharecenter_request_errors_total counter\n");
+        requests.forEach((key, stats) -> sample(text, "jsharecenter_request_errors_total", requestLabels(key),
+            String.valueOf(stats.errors.sum())));
+
+        text.append("# HELP jsharecenter_request_retries_total Retried CGI requests\n")
+            .append("# TYPE jsharecenter_request_retries_total counter\n");
+        requests.forEach((key, stats) -> sample(text, "jsharecenter_request_retries_total", requestLabels(key),
+            String.valueOf(stats.retries.sum())));
+
+        text.append("# HELP jsharecenter_response_bytes_total Bytes received in CGI responses\n")
+            .append("# TYPE jsharecenter_response_bytes_total counter\n");
+        requests.forEach((key, stats) -> sample(text, "jsharecenter_response_bytes_total", requestLabels(key),
+            String.valueOf(stats.bytes.sum())));
+
+        text.append("# HELP jsharecenter_request_duration_seconds CGI request latency\n")
+            .append("# TYPE jsharecenter_request_duration_seconds histogram\n");
+        requests.forEach((key, stats) -> {
+            LatencyHistogram latency = stats.latency;
+            long cumulative = 0;
+            for (int index = 0; index < BUCKET_SECONDS.length; index++) {
+                cumulative += stats.buckets.get(index);
+                sample(text, "jsharecenter_request_duration_seconds_bucket",
+                    requestLabels(key) + ",le=\"" + format(BUCKET_SECONDS[index]) + "\"", String.valueOf(cumulative));
+            }
+            sample(text, "jsharecenter_request_duration_seconds_bucket", requestLabels(key) + ",le=\"+Inf\"",
+                String.valueOf(latency.getCount()));
+            sample(text, "jsharecenter_request_duration_seconds_sum", requestLabels(key),
+                format(latency.getSum() / 1_000_000.0));
+            sample(text, "jsharecenter_request_duration_seconds_count", requestLabels(key),
+                String.valueOf(latency.getCount()));
+        });
+
+        text.append("# HELP jsharecenter_scan_duration_seconds Duration of the last media scan of the volume\n")
+            .append("# TYPE jsharecenter_scan_duration_seconds gauge\n");
+        scans.forEach((key, stats) -> sample(text, "jsharecenter_scan_duration_seconds", scanLabels(key),
+            seconds(stats.lastNanos.get())));
+
+        text.append("# HELP jsharecenter_scans_total Media scans of the volume\n")
+            .append("# TYPE jsharecenter_scans_total counter\n");
+        scans.forEach((key, stats) -> sample(text, "jsharecenter_scans_total", scanLabels(key),
+            String.valueOf(stats.count.sum())));
+
+        text.append("# HELP jsharecenter_connections_total Connections opened to the ShareCenter\n")
+            .append("# TYPE jsharecenter_connections_total counter\n");
+        hosts.forEach((host, stats) -> sample(text, "jsharecenter_connections_total", hostLabels(host),
+            String.valueOf(stats.connections.sum())));
+
+        text.append("# HELP jsharecenter_connection_reuses_total Requests sent on a reused keep-alive connection\n")
+            .append("# TYPE jsharecenter_connection_reuses_total counter\n");
+        hosts.forEach((host, stats) -> sample(text, "jsharecenter_connection_reuses_total", hostLabels(host),
+            String.valueOf(Math.max(0, requestCount(host) - stats.connections.sum()))));
+
+        text.append("# HELP jsharecenter_relogins_total Logins repeated after the session expired\n")
+            .append("# TYPE jsharecenter_relogins_total counter\n");
+        hosts.forEach((host, stats) -> sample(text, "jsharecenter_relogins_total", hostLabels(host),
+            String.valueOf(stats.relogins.sum())));
+
+        return text.toString();
+    }
+
+    private long requestCount(String host) {
+        return requests.entrySet().stream()
+            .filter(entry -> entry.getKey().host.equals(host))
+            .mapToLong(entry -> entry.getValue().latency.getCount())
+            .sum();
+    }
+
+    @Override
+    public void writeJson(Path file) {
+        write(file, toJson() + "\n");
+    }
+
+    @Override
+    public void writePrometheus(Path file) {
+        write(file, toPrometheus());
+    }
+
+    private static void write(Path file, String content) {
+        // written next to the target and moved, so collectors never read a half written file
+        try {
+            Path directory = file.toAbsolutePath().getParent();
+            Path temporary = Files.createTempFile(directory, ".metrics", ".tmp");
+            Files.write(temporary, content.getBytes(StandardCharsets.UTF_8));
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write metrics to: " + file, e);
+        }
+    }
+
+    private static void sample(StringBuilder text, String name, String labels, String value) {
+        text.append(name).append('{').append(labels).append("} ").append(value).append('\n');
+    }
+
+    private static String hostLabels(String host) {
+        return "host=\"" + escapeLabel(host) + "\"";
+    }
+
+    private static String requestLabels(Key key) {
+        return "host=\"" + escapeLabel(key.host) + "\",cmd=\"" + escapeLabel(key.name) + "\"";
+    }
+
+    private static String scanLabels(Key key) {
+        return "host=\"" + escapeLabel(key.host) + "\",volume=\"" + escapeLabel(key.name) + "\"";
+    }
+
+    private static String escapeLabel(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String millis(long micros) {
+        return format(micros / 1000.0);
+    }
+
+    private static String seconds(long nanos) {
+        return format(nanos / 1_000_000_000.0);
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static class Key implements Comparable<Key> {
+        private final String host;
+        private final String name;
+
+        private Key(String host, String name) {
+            this.host = host;
+            this.name = name;
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int result = host.compareTo(other.host);
+            return result != 0 ? result : name.compareTo(other.name);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            return host.equals(((Key) other).host) && name.equals(((Key) other).name);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * host.hashCode() + name.hashCode();
+        }
+    }
+
+    private static class RequestStats {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_SECONDS.length);
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+
+        private void recordBucket(long micros) {
+            // the exact value decides the bucket, le bounds are inclusive: 5 ms goes to le="0.005"
+            for (int index = 0; index < BUCKET_MICROS.length; index++) {
+                if (micros <= BUCKET_MICROS[index]) {
+                    buckets.incrementAndGet(index);
+                    return;
+                }
+            }
+        }
+    }
+
+    private static class HostStats {
+        private final LongAdder connections = new LongAdder();
+        private final LongAdder relogins = new LongAdder();
+    }
+
+    private static class ScanStats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong lastNanos = new AtomicLong();
+    }
+}
@@ -0,0 +1,62 @@
+package hu.codelens.sharecenter.internal;
+
+import hu.codelens.sharecenter.JShareCenterMediaPath;
+import hu.codelens.sharecenter.JShareCenterScanProgress;
+
+import java.time.Duration;
+import java.util.Optional;
+
+public class DefaultJShareCenterScanProgress implements JShareCenterScanProgress {
+
+    private final JShareCenterMediaPath mediaPath;
+    private final int percentage;
+    private final Duration elapsed;
+    private final Duration estimatedRemaining;
+    private final boolean finished;
+    private final String failure;
+
+    DefaultJShareCenterScanProgress(JShareCenterMediaPath mediaPath, int percentage, Duration elapsed,
+                                    Duration estimatedRemaining, boolean finished, String failure) {
+        this.mediaPath = mediaPath;
+        this.percentage = percentage;
+        this.elapsed = elapsed;
+        this.estimatedRemaining = estimatedRemaining;
+        this.finished = finished;
+        this.failure = failure;
+    }
+
+    @Override
+    public JShareCenterMediaPath getMediaPath() {
+        return mediaPath;
+    }
+
+    @Override
+    public int getPercentage() {
+        return percentage;
+    }
+
+    @Override
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    @Override
+    public Optional<Duration> getEstimatedRemaining() {
+        return Optional.ofNullable(estimatedRemaining);
+    }
+
+    @Override
+    public boolean isFinished() {
+        return finished;
+    }
+
+    @Override
+    public boolean isFailed() {
+        return failure != null;
+    }
+
+    @Override
+    public Optional<String> getFailure() {
+        return Optional.ofNullable(failure);
+    }
+}
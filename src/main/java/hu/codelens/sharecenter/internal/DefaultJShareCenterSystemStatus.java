@@ -0,0 +1,108 @@
+package hu.codelens.sharecenter.internal;
+
+import hu.codelens.sharecenter.JShareCenterDisk;
+import hu.codelens.sharecenter.JShareCenterSystemStatus;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+public class DefaultJShareCenterSystemStatus implements JShareCenterSystemStatus {
+
+    private static final long KILOBYTE = 1024;
+
+    private final Instant timestamp;
+    private final Integer systemTemperature;
+    private final Duration uptime;
+    private final Integer cpuUsage;
+    private final Long memoryTotal;
+    private final Long memoryFree;
+    private final Long ioReadRate;
+    private final Long ioWriteRate;
+    private final List<JShareCenterDisk> disks;
+
+    DefaultJShareCenterSystemStatus(Instant timestamp, Map<String, String> system, Map<String, String> resources,
+                                    List<JShareCenterDisk> disks) {
+        this.timestamp = timestamp;
+        this.systemTemperature = parseInt(system.get("temperature"));
+        Long uptimeSeconds = parseLong(system.get("uptime"));
+        this.uptime = uptimeSeconds == null ? null : Duration.ofSeconds(uptimeSeconds);
+        this.cpuUsage = parseInt(resources.get("cpu"));
+        // the resource CGI reports the memory in kilobytes and the IO in kilobytes per second
+        this.memoryTotal = kilobytes(resources.get("mem_total"));
+        this.memoryFree = kilobytes(resources.get("mem_free"));
+        this.ioReadRate = kilobytes(resources.get("io_read"));
+        this.ioWriteRate = kilobytes(resources.get("io_write"));
+        this.disks = Collections.unmodifiableList(disks);
+    }
+
+    @Override
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public Optional<Integer> getSystemTemperature() {
+        return Optional.ofNullable(systemTemperature);
+    }
+
+    @Override
+    public Optional<Duration> getUptime() {
+        return Optional.ofNullable(uptime);
+    }
+
+    @Override
+    public Optional<Integer> getCpuUsage() {
+        return Optional.ofNullable(cpuUsage);
+    }
+
+    @Override
+    public Optional<Long> getMemoryTotal() {
+        return Optional.ofNullable(memoryTotal);
+    }
+
+    @Override
+    public Optional<Long> getMemoryFree() {
+        return Optional.ofNullable(memoryFree);
+    }
+
+    @Override
+    public Optional<Long> getIoReadRate() {
+        return Optional.ofNullable(ioReadRate);
+    }
+
+    @Override
+    public Optional<Long> getIoWriteRate() {
+        return Optional.ofNullable(ioWriteRate);
+    }
+
+    @Override
+    public List<JShareCenterDisk> getDisks() {
+        return disks;
+    }
+
+    static Integer parseInt(String text) {
+        Long value = parseLong(text);
+        return value == null ? null : value.intValue();
+    }
+
+    static Long parseLong(String text) {
+        if (text == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(text.trim());
+        } catch (NumberFormatException e) {
+            // ignored
+            return null;
+        }
+    }
+
+    private static Long kilobytes(String text) {
+        Long value = parseLong(text);
+        return value == null ? null : value * KILOBYTE;
+    }
+}
@@ -0,0 +1,104 @@
+package hu.codelens.sharecenter.internal;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The directory trees of the media paths of a host as seen by the last remote walk: per directory its modification
+ * time, the number of its sub-folders and the manifest of the files directly in it, one line per directory.
+ */
+public class DirectoryTreeCache {
+
+    private final Path file;
+    private final Map<String, Directory> directories;
+
+    public DirectoryTreeCache(Path file) {
+        this.file = file;
+        this.directories = new ConcurrentSkipListMap<>();
+        load();
+    }
+
+    public Optional<Directory> get(String path) {
+        return Optional.ofNullable(directories.get(path));
+    }
+
+    public synchronized void replace(String root, Map<String, Directory> walked) {
+        // folders missing from the new walk were deleted on the NAS
+        directories.keySet().removeIf(path -> path.equals(root) || path.startsWith(root + "/"));
+        directories.putAll(walked);
+        save();
+    }
+
+    private void load() {
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+        try {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                // the path is the last field, so it may contain anything but a line break
+                String[] fields = line.split("\t", 7);
+                if (fields.length == 7) {
+                    directories.put(fields[6], new Directory(Long.parseLong(fields[0]), Integer.parseInt(fields[1]),
+                        new MediaManifest(Long.parseLong(fields[2]), Long.parseLong(fields[3]),
+                            Long.parseLong(fields[4]), Long.parseUnsignedLong(fields[5], 16))));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // an unreadable cache means everything is listed again
+            directories.clear();
+        }
+    }
+
+    private void save() {
+        try {
+            Path directory = file.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temporary = Files.createTempFile(directory, ".tree", ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Directory> entry : directories.entrySet()) {
+                    Directory cached = entry.getValue();
+                    MediaManifest files = cached.getFiles();
+                    writer.write(cached.getLastModified() + "\t" + cached.getFolderCount() + "\t"
+                        + files.getFileCount() + "\t" + files.getTotalSize() + "\t" + files.getLastModified() + "\t"
+                        + Long.toHexString(files.getHash()) + "\t" + entry.getKey());
+                    writer.newLine();
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not save directory tree to: " + file, e);
+        }
+    }
+
+    public static class Directory {
+
+        private final long lastModified;
+        private final int folderCount;
+        private final MediaManifest files;
+
+        public Directory(long lastModified, int folderCount, MediaManifest files) {
+            this.lastModified = lastModified;
+            this.folderCount = folderCount;
+            this.files = files;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public int getFolderCount() {
+            return folderCount;
+        }
+
+        public MediaManifest getFiles() {
+            return files;
+        }
+    }
+}
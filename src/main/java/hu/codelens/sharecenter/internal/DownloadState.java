@@ -0,0 +1,138 @@
+package hu.codelens.sharecenter.internal;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The progress of a ranged download, kept in a small file next to the partial file: the NAS file it belongs to, its
+ * size and validator, then one line per segment with the next offset still to fetch and the end of the segment.
+ */
+class DownloadState {
+
+    private static final String HEADER = "jsharecenter-download 1";
+
+    private final Path file;
+    private final String source;
+    private final long size;
+    private final String validator;
+    private final AtomicLongArray next;
+    private final long[] ends;
+
+    private DownloadState(Path file, String source, long size, String validator, long[] next, long[] ends) {
+        this.file = file;
+        this.source = source;
+        this.size = size;
+        this.validator = validator;
+        this.next = new AtomicLongArray(next);
+        this.ends = ends;
+    }
+
+    static DownloadState create(Path file, String source, long size, String validator, int segments) {
+        long[] next = new long[segments];
+        long[] ends = new long[segments];
+        for (int index = 0; index < segments; index++) {
+            next[index] = size * index / segments;
+            ends[index] = size * (index + 1) / segments;
+        }
+        return new DownloadState(file, source, size, validator, next, ends);
+    }
+
+    static Optional<DownloadState> load(Path file, String source, long size, String validator) {
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+
+        try {
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            if (lines.size() < 4 || !HEADER.equals(lines.get(0)) || !source.equals(lines.get(1))) {
+                return Optional.empty();
+            }
+            String[] fields = lines.get(2).split("\t", 2);
+            String savedValidator = fields.length > 1 && !fields[1].isEmpty() ? fields[1] : null;
+            // a file changed on the NAS since the previous attempt is fetched from the start
+            if (Long.parseLong(fields[0]) != size || !Objects.equals(savedValidator, validator)) {
+                return Optional.empty();
+            }
+
+            int segments = lines.size() - 3;
+            long[] next = new long[segments];
+            long[] ends = new long[segments];
+            for (int index = 0; index < segments; index++) {
+                String[] range = lines.get(index + 3).split("\t");
+                next[index] = Long.parseLong(range[0]);
+                ends[index] = Long.parseLong(range[1]);
+                if (next[index] > ends[index] || ends[index] > size) {
+                    return Optional.empty();
+                }
+            }
+            return Optional.of(new DownloadState(file, source, size, validator, next, ends));
+        } catch (IOException | RuntimeException e) {
+            // an unreadable state only costs the bytes fetched before
+            return Optional.empty();
+        }
+    }
+
+    int getSegmentCount() {
+        return ends.length;
+    }
+
+    long getNext(int segment) {
+        return next.get(segment);
+    }
+
+    long getEnd(int segment) {
+        return ends[segment];
+    }
+
+    void setNext(int segment, long offset) {
+        next.set(segment, offset);
+    }
+
+    long getDone() {
+        long done = size;
+        for (int index = 0; index < ends.length; index++) {
+            done -= ends[index] - next.get(index);
+        }
+        return done;
+    }
+
+    long[] snapshot() {
+        long[] offsets = new long[ends.length];
+        for (int index = 0; index < ends.length; index++) {
+            offsets[index] = next.get(index);
+        }
+        return offsets;
+    }
+
+    synchronized void save(long[] offsets) {
+        try {
+            Path directory = file.toAbsolutePath().getParent();
+            Path temporary = Files.createTempFile(directory, ".download", ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                writer.write(HEADER + "\n" + source + "\n" + size + "\t" + (validator == null ? "" : validator) + "\n");
+                for (int index = 0; index < ends.length; index++) {
+                    writer.write(offsets[index] + "\t" + ends[index] + "\n");
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not save download state to: " + file, e);
+        }
+    }
+
+    void delete() {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not delete download state: " + file, e);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package hu.codelens.sharecenter.internal;
+
+import hu.codelens.sharecenter.JShareCenterFile;
+
+import java.util.List;
+
+class FileListPage {
+
+    private final List<JShareCenterFile> files;
+    private final int total;
+
+    FileListPage(List<JShareCenterFile> files, int total) {
+        this.files = files;
+        this.total = total;
+    }
+
+    List<JShareCenterFile> getFiles() {
+        return files;
+    }
+
+    int getTotal() {
+        return total;
+    }
+
+    boolean hasMore(int page, int pageSize) {
+        if (files.size() < pageSize) {
+            return false;
+        }
+        return total < 0 || (long) page * pageSize < total;
+    }
+}
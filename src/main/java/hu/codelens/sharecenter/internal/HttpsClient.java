@@ -1,19 +1,38 @@
 package hu.codelens.sharecenter.internal;
 
+import hu.codelens.sharecenter.JShareCenterMetrics;
+import hu.codelens.sharecenter.JShareCenterSettings;
+
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLParameters;
 import javax.net.ssl.TrustManager;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
 import java.net.CookieManager;
+import java.net.CookieStore;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.time.Duration;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+import java.util.zip.GZIPInputStream;
 
 public class HttpsClient {
 
@@ -21,19 +40,42 @@ public class HttpsClient {
         GET, POST
     }
 
+    /**
+     * The body of a reply could not be decompressed, it is truncated or not gzip at all.
+     */
+    public static class MalformedBodyException extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+
+        private MalformedBodyException(IOException cause) {
+            super("Could not decompress response of ShareCenter", cause);
+        }
+    }
+
     public interface Response {
         int getCode();
 
         String getBody();
 
+        byte[] getBodyBytes();
+
+        InputStream getBodyStream();
+
+        long getContentLength();
+
         String getHeader(String header);
     }
 
     private static class ResponseImpl implements Response {
-        private final HttpResponse<String> response;
+        private final HttpResponse<byte[]> response;
+        private final boolean gzip;
+        private String body;
+        private byte[] decompressed;
 
-        private ResponseImpl(HttpResponse<String> response) {
+        private ResponseImpl(HttpResponse<byte[]> response) {
             this.response = response;
+            this.gzip = response.headers().firstValue("content-encoding")
+                .map(encoding -> encoding.equalsIgnoreCase("gzip"))
+                .orElse(false);
         }
 
         @Override
@@ -43,40 +85,156 @@ public class HttpsClient {
 
         @Override
         public String getBody() {
+            if (body == null) {
+                body = new String(getBodyBytes(), StandardCharsets.UTF_8);
+            }
+            return body;
+        }
+
+        @Override
+        public byte[] getBodyBytes() {
+            if (!gzip) {
+                // the received bytes as they are, the callers only read them
+                return response.body();
+            }
+            if (decompressed == null) {
+                try (InputStream stream = getBodyStream()) {
+                    decompressed = stream.readAllBytes();
+                } catch (IOException e) {
+                    // ZipException or EOFException, the bytes are already here, only the gzip can be wrong
+                    throw new MalformedBodyException(e);
+                }
+            }
+            return decompressed;
+        }
+
+        @Override
+        public InputStream getBodyStream() {
+            InputStream stream = new ByteArrayInputStream(response.body());
+            if (!gzip) {
+                return stream;
+            }
+            try {
+                return new GZIPInputStream(stream);
+            } catch (IOException e) {
+                throw new MalformedBodyException(e);
+            }
+        }
+
+        @Override
+        public long getContentLength() {
+            return response.body().length;
+        }
+
+        @Override
+        public String getHeader(String header) {
+            return response.headers().firstValue(header).orElse(null);
+        }
+    }
+
+    private static class StreamingResponseImpl implements Response {
+        private final HttpResponse<InputStream> response;
+
+        private StreamingResponseImpl(HttpResponse<InputStream> response) {
+            this.response = response;
+        }
+
+        @Override
+        public int getCode() {
+            return response.statusCode();
+        }
+
+        @Override
+        public String getBody() {
+            return new String(getBodyBytes(), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public byte[] getBodyBytes() {
+            try (InputStream stream = getBodyStream()) {
+                return stream.readAllBytes();
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not read response of ShareCenter", e);
+            }
+        }
+
+        @Override
+        public InputStream getBodyStream() {
+            // the body is read from the connection as it arrives, it can be read only once and has to be closed
             return response.body();
         }
 
+        @Override
+        public long getContentLength() {
+            return response.headers().firstValueAsLong("content-length").orElse(-1);
+        }
+
         @Override
         public String getHeader(String header) {
             return response.headers().firstValue(header).orElse(null);
         }
     }
 
+    private static class FormBodyPublisher implements HttpRequest.BodyPublisher {
+        private final HttpRequest.BodyPublisher delegate;
+        private final String command;
+
+        private FormBodyPublisher(String body, String command) {
+            this.delegate = HttpRequest.BodyPublishers.ofString(body);
+            this.command = command;
+        }
+
+        @Override
+        public long contentLength() {
+            return delegate.contentLength();
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            delegate.subscribe(subscriber);
+        }
+    }
+
     private final String host;
-    private final HttpClient httpClient;
+    private final CookieManager cookieManager;
+    private final JShareCenterMetrics metrics;
+    private final Duration requestTimeout;
+    private final RetryPolicy retryPolicy;
+    private final HttpClient.Version httpVersion;
+    private final Duration connectTimeout;
+    private final Executor executor;
+    private volatile HttpClient httpClient;
 
     public HttpsClient(String host) {
-        this.host = host;
+        this(host, new JShareCenterSettings());
+    }
 
-        SSLContext sslContext;
-        try {
-            sslContext = SSLContext.getInstance("TLS");
-            sslContext.init(null, new TrustManager[]{new IgnoreAllX509TrustManager()}, new SecureRandom());
-        } catch (NoSuchAlgorithmException | KeyManagementException e) {
-            throw new IllegalStateException("Could not initialize ShareCenter client", e);
-        }
+    public HttpsClient(String host, Executor executor) {
+        this(host, executor, null);
+    }
 
-        SSLParameters sslParameters = new SSLParameters();
-        sslParameters.setEndpointIdentificationAlgorithm("");
+    public HttpsClient(String host, Executor executor, JShareCenterMetrics metrics) {
+        this(host, settings(executor, metrics));
+    }
 
-        CookieManager cookieManager = new CookieManager();
+    public HttpsClient(String host, JShareCenterSettings settings) {
+        this.host = host;
+        this.metrics = settings.getMetrics();
+        this.requestTimeout = settings.getRequestTimeout();
+        this.retryPolicy = new RetryPolicy(settings.getMaxRetries(), settings.getInitialBackoff(),
+            settings.getMaxBackoff());
+        this.httpVersion = settings.getHttpVersion();
+        this.connectTimeout = settings.getConnectTimeout();
+        this.executor = settings.getExecutor();
+        this.cookieManager = new CookieManager();
+    }
 
-        httpClient = HttpClient
-            .newBuilder()
-            .sslContext(sslContext)
-            .sslParameters(sslParameters)
-            .cookieHandler(cookieManager)
-            .build();
+    public URI getBaseUri() {
+        return URI.create("https://" + host + "/");
+    }
+
+    public CookieStore getCookieStore() {
+        return cookieManager.getCookieStore();
     }
 
     public HttpRequest createRequest(String path) {
@@ -96,20 +254,223 @@ public class HttpsClient {
         if (method == Method.GET) {
             builder = builder.GET();
         } else {
-            builder = builder.POST(HttpRequest.BodyPublishers.ofString(dataToString(data)));
+            Serializable command = data.get("cmd");
+            builder = builder.POST(new FormBodyPublisher(dataToString(data), command == null ? null : command.toString()));
+        }
+        if (requestTimeout != null) {
+            builder = builder.timeout(requestTimeout);
         }
         builder.header("Content-Type", "application/x-www-form-urlencoded");
+        builder.header("Accept-Encoding", "gzip");
+        return builder.build();
+    }
+
+    public HttpRequest createUploadRequest(String path, Map<String, Serializable> data, String fileField, Path file,
+                                           LongConsumer progress) {
+        MultipartFilePublisher publisher = new MultipartFilePublisher(data, fileField, file, progress);
+        // no request timeout, a large file on a slow link takes as long as it takes
+        return HttpRequest.newBuilder(URI.create("https://" + host + path))
+            .POST(publisher)
+            .header("Content-Type", publisher.getContentType())
+            .header("Accept-Encoding", "gzip")
+            .build();
+    }
+
+    public HttpRequest createRangeRequest(String path, long first, long last, String validator) {
+        // no compression, the range is counted in the bytes of the file
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create("https://" + host + path))
+            .GET()
+            .header("Range", "bytes=" + first + "-" + last);
+        if (validator != null) {
+            builder = builder.header("If-Range", validator);
+        }
+        if (requestTimeout != null) {
+            builder = builder.timeout(requestTimeout);
+        }
         return builder.build();
     }
 
     public Response send(HttpRequest request) {
+        long start = System.nanoTime();
+        try {
+            Response response = new ResponseImpl(httpClient().send(request, HttpResponse.BodyHandlers.ofByteArray()));
+            record(request, start, response);
+            return response;
+        } catch (IOException e) {
+            record(request, start, null);
+            throw new IllegalStateException("Could not send request to ShareCenter", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            record(request, start, null);
+            throw new IllegalStateException("Could not send request to ShareCenter", e);
+        }
+    }
+
+    public Response sendStreaming(HttpRequest request) {
+        long start = System.nanoTime();
         try {
-            return new ResponseImpl(httpClient.send(request, HttpResponse.BodyHandlers.ofString()));
-        } catch (IOException | InterruptedException e) {
+            Response response = new StreamingResponseImpl(httpClient().send(request,
+                HttpResponse.BodyHandlers.ofInputStream()));
+            record(request, start, response);
+            return response;
+        } catch (IOException e) {
+            record(request, start, null);
+            throw new IllegalStateException("Could not send request to ShareCenter", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            record(request, start, null);
             throw new IllegalStateException("Could not send request to ShareCenter", e);
         }
     }
 
+    public Response sendIdempotent(HttpRequest request) {
+        int retry = 0;
+        while (true) {
+            try {
+                Response response = send(request);
+                if (!retryPolicy.isRetryable(response) || retry >= retryPolicy.getMaxRetries()) {
+                    return response;
+                }
+            } catch (IllegalStateException e) {
+                if (retry >= retryPolicy.getMaxRetries() || Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+            }
+
+            if (metrics != null) {
+                metrics.recordRetry(host, commandOf(request));
+            }
+            backoff(retryPolicy.backoff(retry++));
+        }
+    }
+
+    public CompletableFuture<Response> sendAsync(HttpRequest request) {
+        long start = System.nanoTime();
+        return httpClient().sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+            .handle((response, throwable) -> {
+                if (throwable != null) {
+                    record(request, start, null);
+                    Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+                    throw new CompletionException(new IllegalStateException("Could not send request to ShareCenter", cause));
+                }
+                Response result = new ResponseImpl(response);
+                record(request, start, result);
+                return result;
+            });
+    }
+
+    public CompletableFuture<Response> sendIdempotentAsync(HttpRequest request) {
+        return sendIdempotentAsync(request, 0);
+    }
+
+    private CompletableFuture<Response> sendIdempotentAsync(HttpRequest request, int retry) {
+        // the same retries as sendIdempotent, with the delays scheduled instead of slept
+        return sendAsync(request).handle((response, throwable) -> {
+            if (retry >= retryPolicy.getMaxRetries() || (throwable == null && !retryPolicy.isRetryable(response))) {
+                return throwable == null ? CompletableFuture.completedFuture(response)
+                    : CompletableFuture.<Response>failedFuture(throwable);
+            }
+
+            if (metrics != null) {
+                metrics.recordRetry(host, commandOf(request));
+            }
+            Executor delayed = CompletableFuture.delayedExecutor(retryPolicy.backoff(retry).toMillis(),
+                TimeUnit.MILLISECONDS, executor != null ? executor : ForkJoinPool.commonPool());
+            return CompletableFuture.runAsync(() -> { }, delayed)
+                .thenCompose(ignored -> sendIdempotentAsync(request, retry + 1));
+        }).thenCompose(Function.identity());
+    }
+
+    private HttpClient httpClient() {
+        // the TLS and HTTP machinery is only loaded when the first request is sent
+        HttpClient client = httpClient;
+        if (client == null) {
+            synchronized (this) {
+                client = httpClient;
+                if (client == null) {
+                    client = createHttpClient();
+                    httpClient = client;
+                }
+            }
+        }
+        return client;
+    }
+
+    private HttpClient createHttpClient() {
+        SSLContext sslContext;
+        try {
+            sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, new TrustManager[]{new IgnoreAllX509TrustManager()}, new SecureRandom());
+        } catch (NoSuchAlgorithmException | KeyManagementException e) {
+            throw new IllegalStateException("Could not initialize ShareCenter client", e);
+        }
+        if (metrics != null) {
+            sslContext = new ConnectionCountingSslContext(sslContext, () -> metrics.recordConnection(host));
+        }
+
+        SSLParameters sslParameters = new SSLParameters();
+        sslParameters.setEndpointIdentificationAlgorithm("");
+
+        HttpClient.Builder builder = HttpClient
+            .newBuilder()
+            .sslContext(sslContext)
+            .sslParameters(sslParameters)
+            .cookieHandler(cookieManager)
+            .version(httpVersion);
+        if (connectTimeout != null) {
+            builder = builder.connectTimeout(connectTimeout);
+        }
+        if (executor != null) {
+            builder = builder.executor(executor);
+        }
+        return builder.build();
+    }
+
+    private static void backoff(Duration delay) {
+        try {
+            Thread.sleep(delay.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to retry the request", e);
+        }
+    }
+
+    private void record(HttpRequest request, long start, Response response) {
+        if (metrics == null) {
+            return;
+        }
+
+        long bytes = response != null ? Math.max(0, response.getContentLength()) : 0;
+        boolean error = response == null || response.getCode() >= 400;
+        metrics.recordRequest(host, commandOf(request), Duration.ofNanos(System.nanoTime() - start), bytes, error);
+    }
+
+    static String commandOf(HttpRequest request) {
+        String command = request.bodyPublisher()
+            .map(publisher -> publisher instanceof FormBodyPublisher ? ((FormBodyPublisher) publisher).command
+                : publisher instanceof MultipartFilePublisher ? ((MultipartFilePublisher) publisher).getCommand()
+                : null)
+            .orElse(null);
+        if (command == null) {
+            String query = request.uri().getRawQuery();
+            if (query != null) {
+                for (String parameter : query.split("&")) {
+                    if (parameter.startsWith("cmd=")) {
+                        command = parameter.substring(4);
+                    }
+                }
+            }
+        }
+        return command != null ? command : request.uri().getPath();
+    }
+
+    private static JShareCenterSettings settings(Executor executor, JShareCenterMetrics metrics) {
+        JShareCenterSettings settings = new JShareCenterSettings();
+        settings.setExecutor(executor);
+        settings.setMetrics(metrics);
+        return settings;
+    }
+
     private static String dataToString(Map<String, Serializable> data) {
         StringBuilder stringBuilder = new StringBuilder();
         data.forEach((name, value) -> {
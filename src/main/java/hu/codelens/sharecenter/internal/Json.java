@@ -0,0 +1,41 @@
+package hu.codelens.sharecenter.internal;
+
+public final class Json {
+
+    private Json() {
+    }
+
+    public static String quote(String text) {
+        if (text == null) {
+            return "null";
+        }
+        StringBuilder builder = new StringBuilder(text.length() + 2).append('"');
+        for (int index = 0; index < text.length(); index++) {
+            char character = text.charAt(index);
+            switch (character) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if (character < 0x20) {
+                        builder.append(String.format("\\u%04x", (int) character));
+                    } else {
+                        builder.append(character);
+                    }
+            }
+        }
+        return builder.append('"').toString();
+    }
+}
@@ -0,0 +1,87 @@
+package hu.codelens.sharecenter.internal;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free log-linear histogram of microsecond values, in the spirit of HdrHistogram: every power of two range is
+ * split into 16 linear sub-buckets, which keeps the relative error of the recorded values under about 6%.
+ */
+class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_MAGNITUDE = 40;
+    private static final long MAX_VALUE = (1L << MAX_MAGNITUDE) - 1;
+
+    private final AtomicLongArray counts;
+    private final LongAdder count;
+    private final LongAdder sum;
+    private final AtomicLong max;
+
+    LatencyHistogram() {
+        counts = new AtomicLongArray(indexOf(MAX_VALUE) + 1);
+        count = new LongAdder();
+        sum = new LongAdder();
+        max = new AtomicLong();
+    }
+
+    void record(long micros) {
+        long value = Math.max(0, Math.min(MAX_VALUE, micros));
+        counts.incrementAndGet(indexOf(value));
+        count.increment();
+        sum.add(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    long getCount() {
+        return count.sum();
+    }
+
+    long getMax() {
+        return max.get();
+    }
+
+    double getMean() {
+        long total = count.sum();
+        return total == 0 ? 0 : (double) sum.sum() / total;
+    }
+
+    long getSum() {
+        return sum.sum();
+    }
+
+    long getValueAtPercentile(double percentile) {
+        long total = count.sum();
+        if (total == 0) {
+            return 0;
+        }
+        long threshold = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long cumulative = 0;
+        for (int index = 0; index < counts.length(); index++) {
+            cumulative += counts.get(index);
+            if (cumulative >= threshold) {
+                return Math.min(upperBoundOf(index), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int row = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS + 1;
+        return SUB_BUCKETS * row + (int) (value >>> (row - 1)) - SUB_BUCKETS;
+    }
+
+    private static long upperBoundOf(int index) {
+        int row = index / SUB_BUCKETS;
+        int subBucket = index % SUB_BUCKETS;
+        if (row == 0) {
+            return subBucket;
+        }
+        return ((long) (SUB_BUCKETS + subBucket) << (row - 1)) + (1L << (row - 1)) - 1;
+    }
+}
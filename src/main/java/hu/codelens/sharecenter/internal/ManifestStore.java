@@ -0,0 +1,72 @@
+package hu.codelens.sharecenter.internal;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The manifests of the last successfully scanned media paths of a host, one line per internal path.
+ */
+public class ManifestStore {
+
+    private final Path file;
+    private final Map<String, MediaManifest> manifests;
+
+    public ManifestStore(Path file) {
+        this.file = file;
+        this.manifests = new ConcurrentSkipListMap<>();
+        load();
+    }
+
+    public Optional<MediaManifest> get(String internalPath) {
+        return Optional.ofNullable(manifests.get(internalPath));
+    }
+
+    public synchronized void put(String internalPath, MediaManifest manifest) {
+        manifests.put(internalPath, manifest);
+        save();
+    }
+
+    private void load() {
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+        try {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                String[] fields = line.split("\t");
+                if (fields.length == 5) {
+                    manifests.put(fields[0], new MediaManifest(Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+                        Long.parseLong(fields[3]), Long.parseUnsignedLong(fields[4], 16)));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // an unreadable manifest means everything is rescanned
+            manifests.clear();
+        }
+    }
+
+    private void save() {
+        try {
+            Path directory = file.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temporary = Files.createTempFile(directory, ".manifest", ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, MediaManifest> entry : manifests.entrySet()) {
+                    MediaManifest manifest = entry.getValue();
+                    writer.write(entry.getKey() + "\t" + manifest.getFileCount() + "\t" + manifest.getTotalSize() + "\t"
+                        + manifest.getLastModified() + "\t" + Long.toHexString(manifest.getHash()));
+                    writer.newLine();
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not save media manifest to: " + file, e);
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package hu.codelens.sharecenter.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * A snapshot of the media server catalog. The entries are stored once, with three tables of record offsets sorted by
+ * path, object ID and lower case title, so lookups are binary searches without reading the file whole. A saved file is
+ * memory-mapped; a catalog just written keeps the buffer it was built in, so it never holds a mapping of a file that
+ * the next write replaces (a mapped file cannot be replaced on Windows).
+ * <p>
+ * Layout: magic, version, creation time, entry count, the three offset tables, then the records (flags, size, ID,
+ * path, title key; the strings as length prefixed UTF-8).
+ */
+public class MediaCatalog {
+
+    private static final int MAGIC = 0x4a534343;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 20;
+    private static final int FLAG_CONTAINER = 1;
+
+    private static final int BY_PATH = 0;
+    private static final int BY_ID = 1;
+    private static final int BY_TITLE = 2;
+    private static final int ID = 0;
+    private static final int PATH = 1;
+    private static final int TITLE = 2;
+
+    private final ByteBuffer buffer;
+    private final Instant createdAt;
+    private final int count;
+
+    private MediaCatalog(ByteBuffer buffer) {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IllegalStateException("Not a media catalog file");
+        }
+        this.createdAt = Instant.ofEpochMilli(buffer.getLong(8));
+        this.count = buffer.getInt(16);
+        if (count < 0 || HEADER_SIZE + 12L * count > buffer.capacity()) {
+            throw new IllegalStateException("Truncated media catalog file");
+        }
+    }
+
+    public static MediaCatalog open(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new MediaCatalog(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read media catalog: " + file, e);
+        }
+    }
+
+    public static MediaCatalog write(Path file, Collection<Entry> entries) {
+        List<byte[]> paths = new ArrayList<>(entries.size());
+        List<byte[]> ids = new ArrayList<>(entries.size());
+        List<byte[]> titles = new ArrayList<>(entries.size());
+        int[] offsets = new int[entries.size()];
+
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(records);
+        int recordStart = HEADER_SIZE + 12 * entries.size();
+        try {
+            int index = 0;
+            for (Entry entry : entries) {
+                byte[] id = utf8(entry.getId());
+                byte[] path = utf8(entry.getPath());
+                byte[] title = utf8(titleKey(entry.getTitle()));
+                offsets[index++] = recordStart + output.size();
+                output.writeByte(entry.isContainer() ? FLAG_CONTAINER : 0);
+                output.writeLong(entry.getSize());
+                writeString(output, id);
+                writeString(output, path);
+                writeString(output, title);
+                ids.add(id);
+                paths.add(path);
+                titles.add(title);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not build media catalog", e);
+        }
+
+        ByteBuffer content = ByteBuffer.allocate(recordStart + records.size());
+        content.putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis()).putInt(entries.size());
+        for (List<byte[]> keys : List.of(paths, ids, titles)) {
+            for (int index : sortedBy(keys)) {
+                content.putInt(offsets[index]);
+            }
+        }
+        content.put(records.toByteArray()).flip();
+
+        try {
+            Path directory = file.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temporary = Files.createTempFile(directory, ".catalog", ".tmp");
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                while (content.hasRemaining()) {
+                    channel.write(content);
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not save media catalog to: " + file, e);
+        }
+        return new MediaCatalog(content.rewind());
+    }
+
+    public static Diff diff(MediaCatalog before, MediaCatalog after) {
+        List<Entry> added = new ArrayList<>();
+        List<Entry> missing = new ArrayList<>();
+        int beforeIndex = 0;
+        int afterIndex = 0;
+        // both are walked in path order, like a merge
+        while (beforeIndex < before.count || afterIndex < after.count) {
+            int comparison;
+            if (beforeIndex >= before.count) {
+                comparison = 1;
+            } else if (afterIndex >= after.count) {
+                comparison = -1;
+            } else {
+                comparison = compareRecords(before, before.record(BY_PATH, beforeIndex),
+                    after, after.record(BY_PATH, afterIndex));
+            }
+
+            if (comparison < 0) {
+                Entry entry = before.read(before.record(BY_PATH, beforeIndex++));
+                if (!entry.isContainer()) {
+                    missing.add(entry);
+                }
+            } else if (comparison > 0) {
+                Entry entry = after.read(after.record(BY_PATH, afterIndex++));
+                if (!entry.isContainer()) {
+                    added.add(entry);
+                }
+            } else {
+                beforeIndex++;
+                afterIndex++;
+            }
+        }
+        return new Diff(added, missing);
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int getFileCount() {
+        int files = 0;
+        for (int index = 0; index < count; index++) {
+            if ((buffer.get(record(BY_PATH, index)) & FLAG_CONTAINER) == 0) {
+                files++;
+            }
+        }
+        return files;
+    }
+
+    public Optional<Entry> findByPath(String path) {
+        int index = search(BY_PATH, utf8(path));
+        return index < 0 ? Optional.empty() : Optional.of(read(record(BY_PATH, index)));
+    }
+
+    public Optional<Entry> findById(String id) {
+        int index = search(BY_ID, utf8(id));
+        return index < 0 ? Optional.empty() : Optional.of(read(record(BY_ID, index)));
+    }
+
+    public List<Entry> findByTitle(String title) {
+        byte[] key = utf8(titleKey(title));
+        int index = search(BY_TITLE, key);
+        if (index < 0) {
+            return List.of();
+        }
+        // the binary search lands on any of the equal titles, the others are its neighbours
+        int first = index;
+        while (first > 0 && compareKey(key, stringAt(record(BY_TITLE, first - 1), TITLE)) == 0) {
+            first--;
+        }
+        List<Entry> found = new ArrayList<>();
+        for (int current = first; current < count; current++) {
+            int record = record(BY_TITLE, current);
+            if (compareKey(key, stringAt(record, TITLE)) != 0) {
+                break;
+            }
+            found.add(read(record));
+        }
+        return found;
+    }
+
+    private int search(int table, byte[] key) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int field = table == BY_PATH ? PATH : table == BY_ID ? ID : TITLE;
+            int comparison = compareKey(key, stringAt(record(table, middle), field));
+            if (comparison > 0) {
+                low = middle + 1;
+            } else if (comparison < 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private int record(int table, int index) {
+        return buffer.getInt(HEADER_SIZE + (table * count + index) * 4);
+    }
+
+    // the position of the length prefix of the ID, path or title key string of a record
+    private int stringAt(int record, int field) {
+        int position = record + 9;
+        for (int skipped = 0; skipped < field; skipped++) {
+            position += 2 + Short.toUnsignedInt(buffer.getShort(position));
+        }
+        return position;
+    }
+
+    private int compareKey(byte[] key, int stringPosition) {
+        int length = Short.toUnsignedInt(buffer.getShort(stringPosition));
+        int start = stringPosition + 2;
+        for (int index = 0; index < Math.min(key.length, length); index++) {
+            int comparison = Integer.compare(key[index] & 0xff, buffer.get(start + index) & 0xff);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return Integer.compare(key.length, length);
+    }
+
+    private static int compareRecords(MediaCatalog left, int leftRecord, MediaCatalog right, int rightRecord) {
+        int leftPosition = left.stringAt(leftRecord, PATH);
+        int rightPosition = right.stringAt(rightRecord, PATH);
+        int leftLength = Short.toUnsignedInt(left.buffer.getShort(leftPosition));
+        int rightLength = Short.toUnsignedInt(right.buffer.getShort(rightPosition));
+        for (int index = 0; index < Math.min(leftLength, rightLength); index++) {
+            int comparison = Integer.compare(left.buffer.get(leftPosition + 2 + index) & 0xff,
+                right.buffer.get(rightPosition + 2 + index) & 0xff);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return Integer.compare(leftLength, rightLength);
+    }
+
+    private Entry read(int record) {
+        boolean container = (buffer.get(record) & FLAG_CONTAINER) != 0;
+        long size = buffer.getLong(record + 1);
+        return new Entry(readString(stringAt(record, ID)), readString(stringAt(record, PATH)), container, size);
+    }
+
+    private String readString(int position) {
+        byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort(position))];
+        for (int index = 0; index < bytes.length; index++) {
+            bytes[index] = buffer.get(position + 2 + index);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int[] sortedBy(List<byte[]> keys) {
+        Integer[] order = new Integer[keys.size()];
+        for (int index = 0; index < order.length; index++) {
+            order[index] = index;
+        }
+        Arrays.sort(order, (left, right) -> Arrays.compareUnsigned(keys.get(left), keys.get(right)));
+        return Arrays.stream(order).mapToInt(Integer::intValue).toArray();
+    }
+
+    private static void writeString(DataOutputStream output, byte[] bytes) throws IOException {
+        if (bytes.length > 0xffff) {
+            throw new IllegalStateException("Catalog entry is too long");
+        }
+        output.writeShort(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String titleKey(String title) {
+        return title.toLowerCase(Locale.ROOT);
+    }
+
+    private static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static class Entry {
+
+        private final String id;
+        private final String path;
+        private final boolean container;
+        private final long size;
+
+        public Entry(String id, String path, boolean container, long size) {
+            this.id = id;
+            this.path = path;
+            this.container = container;
+            this.size = size;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getTitle() {
+            return path.substring(path.lastIndexOf('/') + 1);
+        }
+
+        public boolean isContainer() {
+            return container;
+        }
+
+        public long getSize() {
+            return size;
+        }
+    }
+
+    public static class Diff {
+
+        private final List<Entry> added;
+        private final List<Entry> missing;
+
+        Diff(List<Entry> added, List<Entry> missing) {
+            this.added = Collections.unmodifiableList(added);
+            this.missing = Collections.unmodifiableList(missing);
+        }
+
+        public List<Entry> getAdded() {
+            return added;
+        }
+
+        public List<Entry> getMissing() {
+            return missing;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package hu.codelens.sharecenter.internal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Compact summary of a media directory tree: file count, total size, latest modification and a hash over the
+ * relative path, size and modification time of every file. The hash is a sum of per-file hashes, so it does not
+ * depend on the order the tree is walked in, and sub-trees can be summarized in parallel.
+ */
+public class MediaManifest {
+
+    private final long fileCount;
+    private final long totalSize;
+    private final long lastModified;
+    private final long hash;
+
+    public MediaManifest(long fileCount, long totalSize, long lastModified, long hash) {
+        this.fileCount = fileCount;
+        this.totalSize = totalSize;
+        this.lastModified = lastModified;
+        this.hash = hash;
+    }
+
+    public static MediaManifest scan(Path root) {
+        return scan(root, ScanPoolHolder.POOL);
+    }
+
+    public static MediaManifest scan(Path root, ForkJoinPool pool) {
+        try {
+            return pool.invoke(new DirectoryTask(root, ""));
+        } catch (UncheckedIOException e) {
+            throw new IllegalStateException("Could not scan media directory: " + root, e.getCause());
+        }
+    }
+
+    public long getFileCount() {
+        return fileCount;
+    }
+
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public long getHash() {
+        return hash;
+    }
+
+    MediaManifest combine(MediaManifest other) {
+        return new MediaManifest(fileCount + other.fileCount, totalSize + other.totalSize,
+            Math.max(lastModified, other.lastModified), hash + other.hash);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof MediaManifest)) {
+            return false;
+        }
+        MediaManifest manifest = (MediaManifest) other;
+        return fileCount == manifest.fileCount && totalSize == manifest.totalSize
+            && lastModified == manifest.lastModified && hash == manifest.hash;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(fileCount, totalSize, lastModified, hash);
+    }
+
+    @Override
+    public String toString() {
+        return fileCount + " files, " + totalSize + " bytes";
+    }
+
+    static long fileHash(String relativePath, long size, long modified) {
+        long hash = 0xcbf29ce484222325L;
+        for (int index = 0; index < relativePath.length(); index++) {
+            hash = (hash ^ relativePath.charAt(index)) * 0x100000001b3L;
+        }
+        return mix(hash ^ mix(size) ^ mix(modified + 0x9e3779b97f4a7c15L));
+    }
+
+    private static long mix(long value) {
+        // splitmix64 finalizer
+        long mixed = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        mixed = (mixed ^ (mixed >>> 27)) * 0x94d049bb133111ebL;
+        return mixed ^ (mixed >>> 31);
+    }
+
+    // the tasks block on file system calls, so they get their own pool instead of starving the common pool
+    private static final class ScanPoolHolder {
+
+        private static final ForkJoinPool POOL = new ForkJoinPool(Math.max(4,
+            Runtime.getRuntime().availableProcessors()), pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("jsharecenter-manifest-" + thread.getPoolIndex());
+                thread.setDaemon(true);
+                return thread;
+            }, null, false);
+
+        private ScanPoolHolder() {
+        }
+    }
+
+    private static class DirectoryTask extends RecursiveTask<MediaManifest> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path directory;
+        private final String relativePath;
+
+        private DirectoryTask(Path directory, String relativePath) {
+            this.directory = directory;
+            this.relativePath = relativePath;
+        }
+
+        @Override
+        protected MediaManifest compute() {
+            MediaManifest manifest = new MediaManifest(0, 0, 0, 0);
+            List<DirectoryTask> subdirectories = new ArrayList<>();
+
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class,
+                        LinkOption.NOFOLLOW_LINKS);
+                    String name = relativePath + "/" + entry.getFileName();
+                    if (attributes.isDirectory()) {
+                        DirectoryTask task = new DirectoryTask(entry, name);
+                        task.fork();
+                        subdirectories.add(task);
+                    } else if (attributes.isRegularFile()) {
+                        long modified = attributes.lastModifiedTime().toMillis();
+                        manifest = manifest.combine(new MediaManifest(1, attributes.size(), modified,
+                            fileHash(name, attributes.size(), modified)));
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            for (DirectoryTask task : subdirectories) {
+                manifest = manifest.combine(task.join());
+            }
+            return manifest;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package hu.codelens.sharecenter.internal;
+
+import hu.codelens.sharecenter.JShareCenterMediaPath;
+
+import java.util.List;
+
+public class MediaPathPage {
+
+    private final List<JShareCenterMediaPath> paths;
+    private final int total;
+
+    MediaPathPage(List<JShareCenterMediaPath> paths, int total) {
+        this.paths = paths;
+        this.total = total;
+    }
+
+    public List<JShareCenterMediaPath> getPaths() {
+        return paths;
+    }
+
+    int getTotal() {
+        return total;
+    }
+
+    boolean hasMore(int page, int pageSize) {
+        if (paths.size() < pageSize) {
+            return false;
+        }
+        return total < 0 || (long) page * pageSize < total;
+    }
+}
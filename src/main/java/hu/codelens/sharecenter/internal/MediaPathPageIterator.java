@@ -0,0 +1,96 @@
+package hu.codelens.sharecenter.internal;
+
+import hu.codelens.sharecenter.JShareCenterMediaPath;
+
+import java.net.http.HttpRequest;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+class MediaPathPageIterator implements Iterator<JShareCenterMediaPath> {
+
+    private final HttpsClient client;
+    private final ShareCenterProtocol protocol;
+    private final RetryPolicy retryPolicy;
+    private final Function<HttpRequest, HttpsClient.Response> sender;
+    private final int pageSize;
+
+    private Iterator<JShareCenterMediaPath> current;
+    private HttpRequest nextRequest;
+    private CompletableFuture<HttpsClient.Response> nextPage;
+    private int page;
+
+    MediaPathPageIterator(HttpsClient client, ShareCenterProtocol protocol, RetryPolicy retryPolicy,
+                          Function<HttpRequest, HttpsClient.Response> sender, int pageSize) {
+        this.client = client;
+        this.protocol = protocol;
+        this.retryPolicy = retryPolicy;
+        this.sender = sender;
+        this.pageSize = pageSize;
+        this.current = Collections.emptyIterator();
+        this.page = 0;
+        this.nextPage = null;
+    }
+
+    MediaPathPageIterator(HttpsClient client, ShareCenterProtocol protocol, RetryPolicy retryPolicy,
+                          Function<HttpRequest, HttpsClient.Response> sender, int pageSize, MediaPathPage firstPage) {
+        this(client, protocol, retryPolicy, sender, pageSize);
+        accept(firstPage);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (page == 0 && nextPage == null) {
+            nextPage = fetch(1);
+        }
+        while (!current.hasNext()) {
+            if (nextPage == null) {
+                return false;
+            }
+            accept(awaitNextPage());
+        }
+        return true;
+    }
+
+    @Override
+    public JShareCenterMediaPath next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    void cancel() {
+        if (nextPage != null) {
+            nextPage.cancel(true);
+            nextPage = null;
+        }
+    }
+
+    private void accept(MediaPathPage mediaPathPage) {
+        page++;
+        current = mediaPathPage.getPaths().iterator();
+        // the next page is already requested while the current one is consumed
+        nextPage = mediaPathPage.hasMore(page, pageSize) ? fetch(page + 1) : null;
+    }
+
+    private MediaPathPage awaitNextPage() {
+        HttpsClient.Response response = nextPage.join();
+        // an expired session or a failed prefetch is sent again the way single requests are, with login and retries
+        if (response == null || protocol.isSessionExpired(response) || retryPolicy.isRetryable(response)) {
+            response = sender.apply(nextRequest);
+        }
+        return protocol.parseMediaServerPathPage(response).orElseThrow(() -> pageFailed(page + 1));
+    }
+
+    private CompletableFuture<HttpsClient.Response> fetch(int pageNumber) {
+        nextRequest = protocol.mediaServerPathListRequest(pageNumber, pageSize);
+        return client.sendAsync(nextRequest).exceptionally(throwable -> null);
+    }
+
+    private IllegalStateException pageFailed(int pageNumber) {
+        return new IllegalStateException("Could not fetch page " + pageNumber + " of the media server path list");
+    }
+}
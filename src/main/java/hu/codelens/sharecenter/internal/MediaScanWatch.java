@@ -0,0 +1,127 @@
+package hu.codelens.sharecenter.internal;
+
+import hu.codelens.sharecenter.JShareCenter;
+import hu.codelens.sharecenter.JShareCenterMediaPath;
+import hu.codelens.sharecenter.JShareCenterScanProgress;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Polls the progress of a running media scan on one thread and publishes it to any number of subscribers. The
+ * polling starts with the first subscriber, a watch nobody subscribes to starts no thread at all, and the watch
+ * closes at the first poll that finds no subscribers. A subscriber that does not keep up misses intermediate events,
+ * the final finished or failed event is always queued.
+ */
+class MediaScanWatch implements Flow.Publisher<JShareCenterScanProgress> {
+
+    private static final int NEAR_COMPLETION = 90;
+    private static final int MAX_FAILED_POLLS = 10;
+    private static final long FINAL_EVENT_TIMEOUT_SECONDS = 30;
+
+    private final JShareCenter shareCenter;
+    private final JShareCenterMediaPath mediaPath;
+    private final ScanProgressTracker tracker;
+    private final SubmissionPublisher<JShareCenterScanProgress> publisher;
+    private final ScheduledExecutorService scheduler;
+    private final long start;
+    private final AtomicBoolean started;
+    private int failedPolls;
+
+    MediaScanWatch(JShareCenter shareCenter, JShareCenterMediaPath mediaPath, Duration minPollInterval,
+                   Duration maxPollInterval, Executor executor) {
+        this.shareCenter = shareCenter;
+        this.mediaPath = mediaPath;
+        this.tracker = new ScanProgressTracker(minPollInterval, maxPollInterval);
+        this.publisher = new SubmissionPublisher<>(executor == null ? ForkJoinPool.commonPool() : executor,
+            Flow.defaultBufferSize());
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "jsharecenter-scan-watch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.start = System.nanoTime();
+        this.started = new AtomicBoolean(false);
+        this.failedPolls = 0;
+    }
+
+    JShareCenterMediaPath getMediaPath() {
+        return mediaPath;
+    }
+
+    boolean isClosed() {
+        return publisher.isClosed();
+    }
+
+    boolean hasSubscribers() {
+        return publisher.hasSubscribers();
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super JShareCenterScanProgress> subscriber) {
+        publisher.subscribe(subscriber);
+        if (started.compareAndSet(false, true)) {
+            schedule(tracker.nextPollDelay());
+        }
+    }
+
+    private void poll() {
+        // once everybody unsubscribed nobody needs the progress anymore, even if it was before the first poll
+        if (!publisher.hasSubscribers()) {
+            close();
+            return;
+        }
+
+        try {
+            Optional<Integer> percentage = shareCenter.checkMediaScanProgress();
+            percentage.ifPresent(value -> tracker.record(System.nanoTime(), value));
+            failedPolls = percentage.isPresent() ? 0 : failedPolls + 1;
+
+            // the finished flag is only asked when the progress is not moving anymore near the end of the scan
+            if (tracker.getLastPercentage() > NEAR_COMPLETION
+                && (percentage.isEmpty() || percentage.get() >= 100 || tracker.isStalled())
+                && shareCenter.checkMediaScanFinished().orElse(false)) {
+                finish(event(100, true, null));
+                return;
+            }
+            if (failedPolls >= MAX_FAILED_POLLS) {
+                finish(event(tracker.getLastPercentage(), false, "Could not read the scan progress"));
+                return;
+            }
+
+            if (percentage.isPresent()) {
+                publisher.offer(event(tracker.getLastPercentage(), false, null), (subscriber, dropped) -> false);
+            }
+            schedule(tracker.nextPollDelay());
+        } catch (RuntimeException e) {
+            finish(event(tracker.getLastPercentage(), false, e.getMessage() == null ? e.toString() : e.getMessage()));
+        }
+    }
+
+    private JShareCenterScanProgress event(int percentage, boolean finished, String failure) {
+        return new DefaultJShareCenterScanProgress(mediaPath, percentage, Duration.ofNanos(System.nanoTime() - start),
+            finished ? Duration.ZERO : tracker.estimateRemaining().orElse(null), finished, failure);
+    }
+
+    private void finish(JShareCenterScanProgress progress) {
+        publisher.offer(progress, FINAL_EVENT_TIMEOUT_SECONDS, TimeUnit.SECONDS, null);
+        close();
+    }
+
+    void close() {
+        publisher.close();
+        scheduler.shutdown();
+    }
+
+    private void schedule(Duration delay) {
+        scheduler.schedule(this::poll, delay.toNanos(), TimeUnit.NANOSECONDS);
+    }
+}
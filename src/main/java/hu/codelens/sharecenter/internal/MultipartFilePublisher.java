@@ -0,0 +1,195 @@
+package hu.codelens.sharecenter.internal;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * A multipart/form-data body of some form fields and one file. The file is read through a {@link FileChannel}, one
+ * chunk whenever the HTTP client asks for more, so it is never held in memory whole. Every subscription reads the
+ * file again, so a request can be resent; the bytes handed over of the file are reported to a listener, and a new
+ * subscription takes back what the previous one reported.
+ */
+class MultipartFilePublisher implements HttpRequest.BodyPublisher {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final String command;
+    private final String boundary;
+    private final byte[] head;
+    private final byte[] tail;
+    private final Path file;
+    private final long fileSize;
+    private final LongConsumer progress;
+    private final AtomicLong reported;
+
+    MultipartFilePublisher(Map<String, Serializable> fields, String fileField, Path file, LongConsumer progress) {
+        Serializable command = fields.get("cmd");
+        this.command = command == null ? null : command.toString();
+        this.boundary = "----jsharecenter" + UUID.randomUUID().toString().replace("-", "");
+        this.file = file;
+        this.progress = progress;
+        this.reported = new AtomicLong();
+        try {
+            this.fileSize = Files.size(file);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read file to upload: " + file, e);
+        }
+
+        StringBuilder head = new StringBuilder();
+        fields.forEach((name, value) -> head.append("--").append(boundary).append("\r\n")
+            .append("Content-Disposition: form-data; name=\"").append(name).append("\"\r\n\r\n")
+            .append(value).append("\r\n"));
+        head.append("--").append(boundary).append("\r\n")
+            .append("Content-Disposition: form-data; name=\"").append(fileField).append("\"; filename=\"")
+            .append(file.getFileName().toString().replace("\"", "%22")).append("\"\r\n")
+            .append("Content-Type: application/octet-stream\r\n\r\n");
+        this.head = head.toString().getBytes(StandardCharsets.UTF_8);
+        this.tail = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    String getCommand() {
+        return command;
+    }
+
+    String getContentType() {
+        return "multipart/form-data; boundary=" + boundary;
+    }
+
+    @Override
+    public long contentLength() {
+        return head.length + fileSize + tail.length;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        long previous = reported.getAndSet(0);
+        if (previous > 0 && progress != null) {
+            progress.accept(-previous);
+        }
+        subscriber.onSubscribe(new FileSubscription(subscriber));
+    }
+
+    private class FileSubscription implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super ByteBuffer> subscriber;
+        private final AtomicLong demand;
+        private final AtomicInteger work;
+        private FileChannel channel;
+        private long position;
+        private volatile boolean done;
+
+        private FileSubscription(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            this.subscriber = subscriber;
+            this.demand = new AtomicLong();
+            this.work = new AtomicInteger();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                done = true;
+                subscriber.onError(new IllegalArgumentException("Requested chunks must be positive: " + n));
+                drain();
+                return;
+            }
+            demand.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            done = true;
+            drain();
+        }
+
+        private void drain() {
+            // onNext may request more from the same thread, only the first caller emits, the others leave a note
+            if (work.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                while (!done && demand.get() > 0) {
+                    ByteBuffer chunk;
+                    try {
+                        chunk = nextChunk();
+                    } catch (IOException e) {
+                        done = true;
+                        closeChannel();
+                        subscriber.onError(e);
+                        return;
+                    }
+                    if (chunk == null) {
+                        done = true;
+                        closeChannel();
+                        subscriber.onComplete();
+                        return;
+                    }
+                    demand.decrementAndGet();
+                    subscriber.onNext(chunk);
+                }
+                if (done) {
+                    closeChannel();
+                }
+                missed = work.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private ByteBuffer nextChunk() throws IOException {
+            if (position < head.length) {
+                position = head.length;
+                return ByteBuffer.wrap(head);
+            }
+
+            long filePosition = position - head.length;
+            if (filePosition < fileSize) {
+                if (channel == null) {
+                    channel = FileChannel.open(file, StandardOpenOption.READ);
+                }
+                // a new buffer every time, the client may still hold the previous ones
+                ByteBuffer chunk = ByteBuffer.allocate((int) Math.min(CHUNK_SIZE, fileSize - filePosition));
+                while (chunk.hasRemaining()) {
+                    if (channel.read(chunk, filePosition + chunk.position()) < 0) {
+                        throw new IOException("File got shorter while uploading: " + file);
+                    }
+                }
+                position += chunk.capacity();
+                reported.addAndGet(chunk.capacity());
+                if (progress != null) {
+                    progress.accept(chunk.capacity());
+                }
+                return chunk.flip();
+            }
+
+            if (position < head.length + fileSize + tail.length) {
+                position += tail.length;
+                return ByteBuffer.wrap(tail);
+            }
+            return null;
+        }
+
+        private void closeChannel() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // ignored
+                }
+                channel = null;
+            }
+        }
+    }
+}
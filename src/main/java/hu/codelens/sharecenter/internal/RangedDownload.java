@@ -0,0 +1,404 @@
+package hu.codelens.sharecenter.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+
+/**
+ * Downloads a file of the NAS in a few byte ranges at the same time. The ranges are written straight to their place
+ * in a partial file of the full size through positional writes, and the offsets reached are saved in a
+ * {@link DownloadState} every few megabytes, so a download started again continues where the previous one stopped.
+ * The partial file becomes the destination once every range arrived. A range that gets no bytes for the stall
+ * timeout is asked for again, the body of a response has no timeout of its own. When the file turns out to have
+ * changed on the NAS meanwhile, the other ranges are cancelled and the download starts over.
+ */
+class RangedDownload {
+
+    static final int DEFAULT_SEGMENTS = 4;
+
+    private static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+    private static final long CHECKPOINT_BYTES = 4 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long WATCH_MILLIS = 1000;
+    private static final int MAX_RESTARTS = 2;
+
+    private final ShareCenterProtocol protocol;
+    private final RetryPolicy retryPolicy;
+    private final Function<HttpRequest, HttpsClient.Response> sender;
+    private final String source;
+    private final Path destination;
+    private final Path partFile;
+    private final Path stateFile;
+    private final int segments;
+    private final LongConsumer progress;
+    private final long stallTimeout;
+    private final AtomicLong transferred;
+    private final AtomicLong reported;
+    private AtomicReferenceArray<InputStream> bodies;
+    private AtomicLongArray lastRead;
+    private volatile boolean changed;
+    private volatile boolean cancelled;
+
+    RangedDownload(ShareCenterProtocol protocol, RetryPolicy retryPolicy,
+                   Function<HttpRequest, HttpsClient.Response> sender, String source, Path destination, int segments,
+                   LongConsumer progress, Duration stallTimeout) {
+        this.protocol = protocol;
+        this.retryPolicy = retryPolicy;
+        this.sender = sender;
+        this.source = source;
+        this.destination = destination;
+        this.partFile = destination.resolveSibling(destination.getFileName() + ".part");
+        this.stateFile = destination.resolveSibling(destination.getFileName() + ".part.state");
+        this.segments = segments;
+        this.progress = progress != null ? progress : bytes -> { };
+        this.stallTimeout = stallTimeout != null ? stallTimeout.toNanos() : Long.MAX_VALUE;
+        this.transferred = new AtomicLong();
+        this.reported = new AtomicLong();
+    }
+
+    Optional<Long> run() {
+        for (int restart = 0; ; restart++) {
+            // the first byte tells the size of the file and whether the NAS serves ranges at all
+            HttpsClient.Response probe = open(0, 0, null);
+            long size;
+            String validator;
+            try (InputStream body = probe.getBodyStream()) {
+                if (probe.getCode() == 404 || protocol.isSessionExpired(probe)) {
+                    return Optional.empty();
+                }
+                if (probe.getCode() == 200) {
+                    return Optional.of(downloadWhole(body));
+                }
+                if (probe.getCode() == 416 && parseSize(probe.getHeader("content-range")) == 0) {
+                    Files.write(destination, new byte[0]);
+                    return Optional.of(0L);
+                }
+                if (probe.getCode() != 206) {
+                    throw new IllegalStateException("ShareCenter answered " + probe.getCode() + " to the download of "
+                        + source);
+                }
+                size = parseSize(probe.getHeader("content-range"));
+                validator = probe.getHeader("etag") != null ? probe.getHeader("etag")
+                    : probe.getHeader("last-modified");
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not download " + source, e);
+            }
+            if (size < 0) {
+                throw new IllegalStateException("ShareCenter did not tell the size of " + source);
+            }
+
+            try {
+                downloadRanges(size, validator);
+                Files.move(partFile, destination, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+                Files.deleteIfExists(stateFile);
+                return Optional.of(transferred.get());
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not write downloaded file: " + destination, e);
+            } catch (IllegalStateException e) {
+                if (!changed || restart >= MAX_RESTARTS) {
+                    throw e;
+                }
+                // the bytes written so far belong to the old file, the progress starts over with the new one
+                changed = false;
+                cancelled = false;
+                transferred.set(0);
+                report(-reported.get());
+            }
+        }
+    }
+
+    private void downloadRanges(long size, String validator) throws IOException {
+        DownloadState state = Files.isRegularFile(partFile)
+            ? DownloadState.load(stateFile, source, size, validator).orElse(null)
+            : null;
+        if (state == null) {
+            int count = (int) Math.max(1, Math.min(segments, (size + MIN_SEGMENT_SIZE - 1) / MIN_SEGMENT_SIZE));
+            state = DownloadState.create(stateFile, source, size, validator, count);
+            Files.deleteIfExists(partFile);
+        }
+
+        try (FileChannel channel = FileChannel.open(partFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+            if (channel.size() < size) {
+                // the whole file is allocated up front, every range has its place to be written to
+                channel.write(ByteBuffer.wrap(new byte[1]), size - 1);
+            }
+            checkpoint(channel, state);
+            report(state.getDone());
+
+            AtomicInteger threadCounter = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(state.getSegmentCount(), runnable -> {
+                Thread thread = new Thread(runnable, "jsharecenter-download-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            bodies = new AtomicReferenceArray<>(state.getSegmentCount());
+            lastRead = new AtomicLongArray(state.getSegmentCount());
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            try {
+                DownloadState ranges = state;
+                for (int index = 0; index < state.getSegmentCount(); index++) {
+                    int segment = index;
+                    if (state.getNext(segment) < state.getEnd(segment)) {
+                        futures.add(CompletableFuture.runAsync(() -> fetchSegment(channel, ranges, segment, validator),
+                            executor).whenComplete((ignored, e) -> {
+                                // the first failure stops the other ranges, they would only fail later or in vain
+                                if (e != null && failure.compareAndSet(null, e)) {
+                                    cancelSegments();
+                                }
+                            }));
+                    }
+                }
+                awaitSegments(CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])));
+            } catch (CompletionException e) {
+                Throwable cause = failure.get() instanceof CompletionException ? failure.get().getCause()
+                    : failure.get() != null ? failure.get() : e.getCause();
+                if (!changed) {
+                    checkpoint(channel, state);
+                }
+                throw cause instanceof IllegalStateException ? (IllegalStateException) cause
+                    : new IllegalStateException("Could not download " + source, cause);
+            } finally {
+                executor.shutdownNow();
+            }
+            channel.force(false);
+        } catch (IllegalStateException e) {
+            if (changed) {
+                // nothing of the partial file is worth continuing from, it is deleted once the channel is closed
+                state.delete();
+                Files.deleteIfExists(partFile);
+            }
+            throw e;
+        }
+    }
+
+    private void awaitSegments(CompletableFuture<Void> all) {
+        while (true) {
+            try {
+                all.get(WATCH_MILLIS, TimeUnit.MILLISECONDS);
+                return;
+            } catch (TimeoutException e) {
+                // closing the body of a silent connection wakes its reader, which asks for the rest of the range again
+                long now = System.nanoTime();
+                for (int segment = 0; segment < bodies.length(); segment++) {
+                    InputStream body = bodies.get(segment);
+                    if (body != null && now - lastRead.get(segment) > stallTimeout
+                        && bodies.compareAndSet(segment, body, null)) {
+                        closeQuietly(body);
+                    }
+                }
+            } catch (ExecutionException e) {
+                throw new CompletionException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while downloading " + source, e);
+            }
+        }
+    }
+
+    private void fetchSegment(FileChannel channel, DownloadState state, int segment, String validator) {
+        int retry = 0;
+        while (state.getNext(segment) < state.getEnd(segment)) {
+            if (cancelled) {
+                throw new IllegalStateException("Download of " + source + " cancelled");
+            }
+            long before = state.getNext(segment);
+            Exception failure;
+            try {
+                transfer(channel, state, segment, validator);
+                continue;
+            } catch (IOException e) {
+                failure = e;
+            } catch (IllegalStateException e) {
+                if (!(e.getCause() instanceof IOException)) {
+                    throw e;
+                }
+                failure = e;
+            }
+
+            // a connection dropped after some progress starts the retries over
+            if (state.getNext(segment) > before) {
+                retry = 0;
+            }
+            if (retry >= retryPolicy.getMaxRetries() || cancelled || Thread.currentThread().isInterrupted()) {
+                throw new IllegalStateException("Could not download " + source + " from byte "
+                    + state.getNext(segment), failure);
+            }
+            try {
+                Thread.sleep(retryPolicy.backoff(retry++).toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while downloading " + source, e);
+            }
+        }
+    }
+
+    private void transfer(FileChannel channel, DownloadState state, int segment, String validator)
+        throws IOException {
+        long position = state.getNext(segment);
+        long end = state.getEnd(segment);
+        HttpsClient.Response response = open(position, end - 1, validator);
+        try (InputStream body = response.getBodyStream()) {
+            if (protocol.isSessionExpired(response)) {
+                throw new IOException("Session of ShareCenter expired");
+            }
+            if (response.getCode() == 200) {
+                // If-Range answers with the whole file when it is not the one the ranges were taken from
+                changed = true;
+                throw new IllegalStateException(source + " changed on the ShareCenter while downloading");
+            }
+            if (response.getCode() != 206) {
+                throw new IllegalStateException("ShareCenter answered " + response.getCode() + " to the download of "
+                    + source);
+            }
+            if (parseStart(response.getHeader("content-range")) != position) {
+                throw new IllegalStateException("ShareCenter sent another range of " + source + " than asked");
+            }
+
+            lastRead.set(segment, System.nanoTime());
+            bodies.set(segment, body);
+            try {
+                copyRange(channel, state, segment, body, position, end);
+            } catch (IOException e) {
+                // the watchdog takes the body away before it closes it
+                if (bodies.get(segment) != body) {
+                    throw new IOException("No data for " + Duration.ofNanos(stallTimeout).toSeconds()
+                        + "s from byte " + state.getNext(segment) + " of " + source, e);
+                }
+                throw e;
+            } finally {
+                bodies.set(segment, null);
+            }
+        }
+    }
+
+    private void copyRange(FileChannel channel, DownloadState state, int segment, InputStream body, long position,
+                           long end) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long unsaved = 0;
+        while (position < end) {
+            int read = body.read(buffer, 0, (int) Math.min(buffer.length, end - position));
+            if (read < 0) {
+                throw new IOException("Connection closed at byte " + position + " of " + source);
+            }
+            ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+            while (chunk.hasRemaining()) {
+                position += channel.write(chunk, position);
+            }
+            state.setNext(segment, position);
+            lastRead.set(segment, System.nanoTime());
+            transferred.addAndGet(read);
+            report(read);
+
+            unsaved += read;
+            if (unsaved >= CHECKPOINT_BYTES) {
+                checkpoint(channel, state);
+                unsaved = 0;
+            }
+        }
+    }
+
+    private long downloadWhole(InputStream body) throws IOException {
+        // the NAS ignores ranges, the file arrives in one piece and cannot be continued later
+        Files.deleteIfExists(stateFile);
+        try (FileChannel channel = FileChannel.open(partFile, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = body.read(buffer)) >= 0) {
+                channel.write(ByteBuffer.wrap(buffer, 0, read));
+                transferred.addAndGet(read);
+                report(read);
+            }
+            channel.force(false);
+        }
+        Files.move(partFile, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return transferred.get();
+    }
+
+    private void checkpoint(FileChannel channel, DownloadState state) throws IOException {
+        // the offsets are taken before the flush, so the state never claims bytes that are not on the disk yet
+        synchronized (state) {
+            long[] offsets = state.snapshot();
+            channel.force(false);
+            state.save(offsets);
+        }
+    }
+
+    private void cancelSegments() {
+        // no interrupt, it would close the shared file channel under a write; closing the bodies wakes the readers
+        cancelled = true;
+        for (int segment = 0; segment < bodies.length(); segment++) {
+            InputStream body = bodies.getAndSet(segment, null);
+            if (body != null) {
+                closeQuietly(body);
+            }
+        }
+    }
+
+    private void report(long bytes) {
+        reported.addAndGet(bytes);
+        progress.accept(bytes);
+    }
+
+    private HttpsClient.Response open(long first, long last, String validator) {
+        // the sender logs in again and repeats the request when the session expired
+        return sender.apply(protocol.downloadRequest(source, first, last, validator));
+    }
+
+    private static void closeQuietly(InputStream body) {
+        try {
+            body.close();
+        } catch (IOException e) {
+            // ignored
+        }
+    }
+
+    private static long parseStart(String contentRange) {
+        // bytes 0-1023/4096
+        if (contentRange == null || !contentRange.startsWith("bytes ")) {
+            return -1;
+        }
+        int dash = contentRange.indexOf('-');
+        try {
+            return dash < 0 ? -1 : Long.parseLong(contentRange.substring(6, dash).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static long parseSize(String contentRange) {
+        int slash = contentRange == null ? -1 : contentRange.lastIndexOf('/');
+        try {
+            return slash < 0 ? -1 : Long.parseLong(contentRange.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
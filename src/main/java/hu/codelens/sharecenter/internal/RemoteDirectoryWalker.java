@@ -0,0 +1,163 @@
+package hu.codelens.sharecenter.internal;
+
+import hu.codelens.sharecenter.JShareCenter;
+import hu.codelens.sharecenter.JShareCenterFile;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Summarizes a media directory tree through the file manager CGI of the NAS, like {@link MediaManifest#scan} does
+ * for a mounted one. The listings run on a fixed number of threads, so no more requests are in flight at a time.
+ * Adding, removing or renaming a file moves the modification time of its directory, so a directory whose time did not
+ * move since the cached walk is not listed again: only its sub-folders are asked for, and a leaf folder is not asked
+ * at all.
+ */
+public class RemoteDirectoryWalker {
+
+    private final JShareCenter shareCenter;
+    private final DirectoryTreeCache cache;
+    private final int maxInFlight;
+    private final AtomicInteger listed;
+    private final AtomicInteger checked;
+    private final AtomicInteger reused;
+
+    public RemoteDirectoryWalker(JShareCenter shareCenter, DirectoryTreeCache cache, int maxInFlight) {
+        this.shareCenter = shareCenter;
+        this.cache = cache;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.listed = new AtomicInteger();
+        this.checked = new AtomicInteger();
+        this.reused = new AtomicInteger();
+    }
+
+    public MediaManifest walk(String root) {
+        Map<String, DirectoryTreeCache.Directory> walked = new Walk(root).run();
+        cache.replace(root, walked);
+        return walked.values().stream().map(DirectoryTreeCache.Directory::getFiles)
+            .reduce(new MediaManifest(0, 0, 0, 0), MediaManifest::combine);
+    }
+
+    public int getListedCount() {
+        return listed.get();
+    }
+
+    public int getCheckedCount() {
+        return checked.get();
+    }
+
+    public int getReusedCount() {
+        return reused.get();
+    }
+
+    // one walk of a tree; each task lists one directory, the walk is over when no task is left
+    private class Walk {
+
+        private final String root;
+        private final ExecutorService executor;
+        private final Map<String, DirectoryTreeCache.Directory> walked;
+        private final AtomicInteger pending;
+        private final CountDownLatch done;
+        private volatile RuntimeException failure;
+
+        Walk(String root) {
+            this.root = root;
+            AtomicInteger threadCounter = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(maxInFlight, runnable -> {
+                Thread thread = new Thread(runnable, "jsharecenter-walk-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.walked = new ConcurrentHashMap<>();
+            this.pending = new AtomicInteger();
+            this.done = new CountDownLatch(1);
+        }
+
+        Map<String, DirectoryTreeCache.Directory> run() {
+            try {
+                // the modification time of the root is not known without listing its parent, it is always listed
+                submit(() -> list(root, -1));
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while walking " + root, e);
+            } finally {
+                executor.shutdownNow();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return walked;
+        }
+
+        private void visit(String path, long lastModified) {
+            Optional<DirectoryTreeCache.Directory> cached = cache.get(path)
+                .filter(directory -> directory.getLastModified() == lastModified);
+            if (cached.isEmpty()) {
+                submit(() -> list(path, lastModified));
+            } else if (cached.get().getFolderCount() == 0) {
+                walked.put(path, cached.get());
+                reused.incrementAndGet();
+            } else {
+                submit(() -> check(path, cached.get()));
+            }
+        }
+
+        private void list(String path, long lastModified) {
+            List<JShareCenterFile> files = shareCenter.listDirectory(path)
+                .orElseThrow(() -> new IllegalStateException("Could not list " + path));
+            listed.incrementAndGet();
+
+            MediaManifest manifest = new MediaManifest(0, 0, 0, 0);
+            int folderCount = 0;
+            for (JShareCenterFile file : files) {
+                if (file.isDirectory()) {
+                    folderCount++;
+                } else {
+                    long modified = file.getLastModified().toEpochMilli();
+                    String name = path.substring(root.length()) + "/" + file.getName();
+                    manifest = manifest.combine(new MediaManifest(1, file.getSize(), modified,
+                        MediaManifest.fileHash(name, file.getSize(), modified)));
+                }
+            }
+            walked.put(path, new DirectoryTreeCache.Directory(lastModified, folderCount, manifest));
+            visitFolders(files);
+        }
+
+        private void check(String path, DirectoryTreeCache.Directory cached) {
+            List<JShareCenterFile> folders = shareCenter.listFolders(path)
+                .orElseThrow(() -> new IllegalStateException("Could not list the folders of " + path));
+            checked.incrementAndGet();
+            walked.put(path, cached);
+            visitFolders(folders);
+        }
+
+        private void visitFolders(List<JShareCenterFile> files) {
+            files.stream().filter(JShareCenterFile::isDirectory)
+                .forEach(folder -> visit(folder.getPath(), folder.getLastModified().toEpochMilli()));
+        }
+
+        private void submit(Runnable task) {
+            pending.incrementAndGet();
+            executor.execute(() -> {
+                try {
+                    if (failure == null) {
+                        task.run();
+                    }
+                } catch (RuntimeException e) {
+                    failure = e;
+                } finally {
+                    if (pending.decrementAndGet() == 0) {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package hu.codelens.sharecenter.internal;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Fixed size time series of a few metrics, kept in primitive ring buffers. The first level holds the samples, every
+ * further level holds min/avg/max buckets of {@code factor} entries of the previous one, so a long run keeps the
+ * recent samples in detail and the older ones with decreasing resolution without growing.
+ */
+public class ResourceSeries {
+
+    private static final int MAGIC = 0x4a534353;
+    private static final int VERSION = 1;
+
+    private final String[] metrics;
+    private final int factor;
+    private final Level[] levels;
+
+    public ResourceSeries(String[] metrics, long intervalMillis, int capacity, int factor, int levelCount) {
+        this.metrics = metrics.clone();
+        this.factor = factor;
+        this.levels = new Level[levelCount];
+        long bucketMillis = intervalMillis;
+        for (int index = 0; index < levelCount; index++) {
+            levels[index] = new Level(bucketMillis, capacity, metrics.length);
+            bucketMillis *= factor;
+        }
+    }
+
+    public synchronized void record(long timestamp, double[] values) {
+        if (values.length != metrics.length) {
+            throw new IllegalArgumentException("Expected " + metrics.length + " values, got " + values.length);
+        }
+        add(0, timestamp, values, values, values);
+    }
+
+    public synchronized int size(int level) {
+        return levels[level].size;
+    }
+
+    public synchronized void writeCsv(Path file) {
+        write(file, stream -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+            writer.write("level,bucket_seconds,timestamp");
+            for (String metric : metrics) {
+                writer.write("," + metric + "_min," + metric + "_avg," + metric + "_max");
+            }
+            writer.write('\n');
+
+            StringBuilder line = new StringBuilder();
+            for (int level = levels.length - 1; level >= 0; level--) {
+                Level current = levels[level];
+                for (int entry = 0; entry < current.size; entry++) {
+                    int slot = current.slot(entry);
+                    line.setLength(0);
+                    line.append(level).append(',').append(current.bucketMillis / 1000.0).append(',')
+                        .append(current.timestamps[slot]);
+                    for (int metric = 0; metric < metrics.length; metric++) {
+                        line.append(',').append(format(current.min[metric][slot]))
+                            .append(',').append(format(current.avg[metric][slot]))
+                            .append(',').append(format(current.max[metric][slot]));
+                    }
+                    writer.append(line).append('\n');
+                }
+            }
+            writer.flush();
+        });
+    }
+
+    public synchronized void writeBinary(Path file) {
+        write(file, stream -> {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream));
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(metrics.length);
+            for (String metric : metrics) {
+                output.writeUTF(metric);
+            }
+            output.writeInt(levels.length);
+            for (Level level : levels) {
+                output.writeLong(level.bucketMillis);
+                output.writeInt(level.size);
+                for (int entry = 0; entry < level.size; entry++) {
+                    int slot = level.slot(entry);
+                    output.writeLong(level.timestamps[slot]);
+                    for (int metric = 0; metric < metrics.length; metric++) {
+                        output.writeFloat(level.min[metric][slot]);
+                        output.writeFloat(level.avg[metric][slot]);
+                        output.writeFloat(level.max[metric][slot]);
+                    }
+                }
+            }
+            output.flush();
+        });
+    }
+
+    private void add(int levelIndex, long timestamp, double[] min, double[] avg, double[] max) {
+        Level level = levels[levelIndex];
+        level.put(timestamp, min, avg, max);
+        if (levelIndex + 1 < levels.length && level.consolidate(timestamp, min, avg, max, factor)) {
+            add(levelIndex + 1, level.pendingStart, level.pendingMin, level.pendingAvg(), level.pendingMax);
+            level.resetPending();
+        }
+    }
+
+    private static String format(float value) {
+        return Float.isNaN(value) ? "" : String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    private static void write(Path file, StreamWriter writer) {
+        // written next to the target and moved, so a reader never sees a half written dump
+        try {
+            Path directory = file.toAbsolutePath().getParent();
+            Path temporary = Files.createTempFile(directory, ".series", ".tmp");
+            try (OutputStream stream = Files.newOutputStream(temporary)) {
+                writer.write(stream);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write resource samples to: " + file, e);
+        }
+    }
+
+    private interface StreamWriter {
+        void write(OutputStream stream) throws IOException;
+    }
+
+    private static class Level {
+        private final long bucketMillis;
+        private final long[] timestamps;
+        private final float[][] min;
+        private final float[][] avg;
+        private final float[][] max;
+        private int head;
+        private int size;
+
+        private final double[] pendingMin;
+        private final double[] pendingSum;
+        private final double[] pendingMax;
+        private final int[] pendingCount;
+        private long pendingStart;
+        private int pendingEntries;
+
+        private Level(long bucketMillis, int capacity, int metricCount) {
+            this.bucketMillis = bucketMillis;
+            this.timestamps = new long[capacity];
+            this.min = new float[metricCount][capacity];
+            this.avg = new float[metricCount][capacity];
+            this.max = new float[metricCount][capacity];
+            this.head = 0;
+            this.size = 0;
+            this.pendingMin = new double[metricCount];
+            this.pendingSum = new double[metricCount];
+            this.pendingMax = new double[metricCount];
+            this.pendingCount = new int[metricCount];
+            resetPending();
+        }
+
+        private int slot(int entry) {
+            int capacity = timestamps.length;
+            return (head - size + entry + capacity) % capacity;
+        }
+
+        private void put(long timestamp, double[] minValues, double[] avgValues, double[] maxValues) {
+            timestamps[head] = timestamp;
+            for (int metric = 0; metric < minValues.length; metric++) {
+                min[metric][head] = (float) minValues[metric];
+                avg[metric][head] = (float) avgValues[metric];
+                max[metric][head] = (float) maxValues[metric];
+            }
+            head = (head + 1) % timestamps.length;
+            size = Math.min(size + 1, timestamps.length);
+        }
+
+        private boolean consolidate(long timestamp, double[] minValues, double[] avgValues, double[] maxValues,
+                                    int factor) {
+            if (pendingEntries == 0) {
+                pendingStart = timestamp;
+            }
+            for (int metric = 0; metric < minValues.length; metric++) {
+                // missing values (NaN) are left out of the bucket instead of poisoning it
+                if (!Double.isNaN(avgValues[metric])) {
+                    pendingMin[metric] = Math.min(pendingMin[metric], minValues[metric]);
+                    pendingMax[metric] = Math.max(pendingMax[metric], maxValues[metric]);
+                    pendingSum[metric] += avgValues[metric];
+                    pendingCount[metric]++;
+                }
+            }
+            return ++pendingEntries >= factor;
+        }
+
+        private double[] pendingAvg() {
+            double[] values = new double[pendingSum.length];
+            for (int metric = 0; metric < values.length; metric++) {
+                values[metric] = pendingCount[metric] == 0 ? Double.NaN : pendingSum[metric] / pendingCount[metric];
+                if (pendingCount[metric] == 0) {
+                    pendingMin[metric] = Double.NaN;
+                    pendingMax[metric] = Double.NaN;
+                }
+            }
+            return values;
+        }
+
+        private void resetPending() {
+            Arrays.fill(pendingMin, Double.POSITIVE_INFINITY);
+            Arrays.fill(pendingMax, Double.NEGATIVE_INFINITY);
+            Arrays.fill(pendingSum, 0);
+            Arrays.fill(pendingCount, 0);
+            pendingEntries = 0;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package hu.codelens.sharecenter.internal;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+class RetryPolicy {
+
+    private final int maxRetries;
+    private final long initialBackoff;
+    private final long maxBackoff;
+
+    RetryPolicy(int maxRetries, Duration initialBackoff, Duration maxBackoff) {
+        this.maxRetries = Math.max(0, maxRetries);
+        this.initialBackoff = Math.max(1, initialBackoff.toMillis());
+        this.maxBackoff = Math.max(this.initialBackoff, maxBackoff.toMillis());
+    }
+
+    int getMaxRetries() {
+        return maxRetries;
+    }
+
+    boolean isRetryable(HttpsClient.Response response) {
+        return response.getCode() >= 500;
+    }
+
+    Duration backoff(int retry) {
+        // full jitter: a random delay up to the exponentially growing cap spreads the retries of many clients
+        long cap = initialBackoff << Math.min(retry, 20);
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(Math.min(cap, maxBackoff) + 1));
+    }
+}
@@ -0,0 +1,86 @@
+package hu.codelens.sharecenter.internal;
+
+import java.time.Duration;
+import java.util.Optional;
+
+public class ScanProgressTracker {
+
+    private static final int WINDOW = 8;
+    private static final int NEAR_COMPLETION = 90;
+
+    private final long minDelay;
+    private final long maxDelay;
+    private final long[] times;
+    private final int[] percentages;
+    private int count;
+    private long currentDelay;
+
+    public ScanProgressTracker(Duration minDelay, Duration maxDelay) {
+        this.minDelay = minDelay.toNanos();
+        this.maxDelay = Math.max(this.minDelay, maxDelay.toNanos());
+        this.times = new long[WINDOW];
+        this.percentages = new int[WINDOW];
+        this.count = 0;
+        this.currentDelay = this.minDelay;
+    }
+
+    public void record(long nanoTime, int percentage) {
+        times[count % WINDOW] = nanoTime;
+        percentages[count % WINDOW] = percentage;
+        count++;
+    }
+
+    public int getLastPercentage() {
+        return count == 0 ? 0 : percentages[(count - 1) % WINDOW];
+    }
+
+    public boolean isStalled() {
+        return count >= 2 && percentages[(count - 1) % WINDOW] == percentages[(count - 2) % WINDOW];
+    }
+
+    public Duration nextPollDelay() {
+        if (count < 2) {
+            return Duration.ofNanos(minDelay);
+        }
+
+        int lastPercentage = getLastPercentage();
+        double rate = rate();
+        long delay;
+        if (rate <= 0) {
+            // nothing moved, back off, but stay responsive when the scan is about to finish
+            long limit = lastPercentage >= NEAR_COMPLETION ? Math.min(maxDelay, minDelay * 4) : maxDelay;
+            delay = Math.min(limit, currentDelay + currentDelay / 2);
+        } else {
+            // poll about once per percent, and at least twice in the remaining time near completion
+            delay = (long) (1 / rate);
+            if (lastPercentage >= NEAR_COMPLETION) {
+                delay = Math.min(delay, (long) ((100 - lastPercentage) / rate / 2));
+            }
+        }
+
+        currentDelay = Math.max(minDelay, Math.min(maxDelay, delay));
+        return Duration.ofNanos(currentDelay);
+    }
+
+    public Optional<Duration> estimateRemaining() {
+        double rate = rate();
+        if (rate <= 0) {
+            return Optional.empty();
+        }
+        int remaining = Math.max(0, 100 - getLastPercentage());
+        return Optional.of(Duration.ofNanos((long) (remaining / rate)));
+    }
+
+    private double rate() {
+        if (count < 2) {
+            return 0;
+        }
+        int first = count > WINDOW ? count % WINDOW : 0;
+        int last = (count - 1) % WINDOW;
+        long elapsed = times[last] - times[first];
+        if (elapsed <= 0) {
+            return 0;
+        }
+        return (double) (percentages[last] - percentages[first]) / elapsed;
+    }
+}
@@ -0,0 +1,129 @@
+package hu.codelens.sharecenter.internal;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.CookieStore;
+import java.net.HttpCookie;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.Set;
+
+class SessionStore {
+
+    private static final String HEADER = "# jsharecenter session";
+    private static final Set<PosixFilePermission> FILE_PERMISSIONS = PosixFilePermissions.fromString("rw-------");
+    private static final Set<PosixFilePermission> DIRECTORY_PERMISSIONS = PosixFilePermissions.fromString("rwx------");
+
+    private final Path file;
+
+    SessionStore(Path file) {
+        this.file = file;
+    }
+
+    int load(CookieStore cookieStore, URI uri) {
+        if (!Files.isRegularFile(file)) {
+            return 0;
+        }
+
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            // ignored, the session is just not reused
+            return 0;
+        }
+
+        long now = System.currentTimeMillis() / 1000;
+        int loaded = 0;
+        for (String line : lines) {
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\t", -1);
+            if (fields.length != 7) {
+                continue;
+            }
+
+            long expires;
+            try {
+                expires = Long.parseLong(fields[4]);
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            if (expires >= 0 && expires <= now) {
+                continue;
+            }
+
+            HttpCookie cookie = new HttpCookie(fields[0], fields[1]);
+            // a new HttpCookie is an RFC 2965 one, which would be sent back quoted, with $Version and $Path
+            cookie.setVersion(0);
+            cookie.setDomain(fields[2].isEmpty() ? null : fields[2]);
+            cookie.setPath(fields[3].isEmpty() ? null : fields[3]);
+            cookie.setMaxAge(expires < 0 ? -1 : expires - now);
+            cookie.setSecure(Boolean.parseBoolean(fields[5]));
+            cookie.setHttpOnly(Boolean.parseBoolean(fields[6]));
+            cookieStore.add(uri, cookie);
+            loaded++;
+        }
+        return loaded;
+    }
+
+    void save(CookieStore cookieStore) {
+        long now = System.currentTimeMillis() / 1000;
+        try {
+            Path directory = file.toAbsolutePath().getParent();
+            if (directory != null && !Files.isDirectory(directory)) {
+                createDirectories(directory);
+            }
+
+            Path temporary = Files.createTempFile(directory, ".session", ".tmp");
+            restrict(temporary, FILE_PERMISSIONS);
+            try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                writer.write(HEADER);
+                writer.newLine();
+                for (HttpCookie cookie : cookieStore.getCookies()) {
+                    if (cookie.hasExpired()) {
+                        continue;
+                    }
+                    writer.write(String.join("\t", cookie.getName(), cookie.getValue(), nullToEmpty(cookie.getDomain()),
+                        nullToEmpty(cookie.getPath()), String.valueOf(cookie.getMaxAge() < 0 ? -1 : now + cookie.getMaxAge()),
+                        String.valueOf(cookie.getSecure()), String.valueOf(cookie.isHttpOnly())));
+                    writer.newLine();
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not save ShareCenter session to: " + file, e);
+        }
+    }
+
+    void delete() {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // ignored
+        }
+    }
+
+    private static void createDirectories(Path directory) throws IOException {
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(DIRECTORY_PERMISSIONS));
+        } else {
+            Files.createDirectories(directory);
+        }
+    }
+
+    private static void restrict(Path path, Set<PosixFilePermission> permissions) throws IOException {
+        if (Files.getFileStore(path).supportsFileAttributeView("posix")) {
+            Files.setPosixFilePermissions(path, permissions);
+        }
+    }
+
+    private static String nullToEmpty(String text) {
+        return text == null ? "" : text;
+    }
+}
@@ -0,0 +1,425 @@
+package hu.codelens.sharecenter.internal;
+
+import hu.codelens.sharecenter.JShareCenterDisk;
+import hu.codelens.sharecenter.JShareCenterFile;
+import hu.codelens.sharecenter.JShareCenterMediaPath;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.LongConsumer;
+
+public class ShareCenterProtocol {
+
+    static final int DEFAULT_PAGE_SIZE = 50;
+    static final int FILE_LIST_PAGE_SIZE = 500;
+
+    private final HttpsClient client;
+
+    public ShareCenterProtocol(HttpsClient client) {
+        this.client = client;
+    }
+
+    HttpRequest loginRequest(String username, String base64password) {
+        return client.createRequest("/cgi-bin/login_mgr.cgi",
+            Map.of("cmd", "login", "username", username, "pwd", base64password, "ssl", 1,
+                "ssl_port", 443, "port", 443, "f_type", 1, "f_username", ""));
+    }
+
+    HttpRequest logoutRequest(String username) {
+        return client.createRequest("/cgi-bin/login_mgr.cgi?cmd=logout&username=" + username);
+    }
+
+    HttpRequest mediaScanRunningRequest() {
+        return client.createRequest("/cgi-bin/app_mgr.cgi", Map.of("cmd", "CGI_SQLDB_Stop_Finish"));
+    }
+
+    HttpRequest startMediaScanRequest(JShareCenterMediaPath mediaPath) {
+        return client.createRequest("/cgi-bin/app_mgr.cgi",
+            Map.of("cmd", "UPnP_AV_Server_Prescan", "f_dir", mediaPath.getInternalPath()));
+    }
+
+    HttpRequest mediaScanFinishedRequest() {
+        return client.createRequest("/cgi-bin/app_mgr.cgi", Map.of("cmd", "UPnP_AV_Server_Prescan_Finished"));
+    }
+
+    HttpRequest mediaScanProgressRequest() {
+        return client.createRequest("/cgi-bin/app_mgr.cgi", Map.of("cmd", "UPnP_AV_Server_Get_SQLDB_State"));
+    }
+
+    HttpRequest mediaServerPathListRequest(int page, int pageSize) {
+        return client.createRequest("/cgi-bin/app_mgr.cgi",
+            Map.of("cmd", "UPnP_AV_Server_Path_List", "page", page, "rp", pageSize,
+                "query", "", "qtype", "", "f_field", "false", "user", ""));
+    }
+
+    // The status_mgr.cgi and dsk_mgr.cgi commands below follow the naming of the other CGIs, but unlike the app_mgr.cgi
+    // ones above they were not checked against a real firmware or a capture of its web UI. The CLI only sends them
+    // with --experimental.
+
+    HttpRequest systemStatusRequest() {
+        return client.createRequest("/cgi-bin/status_mgr.cgi", Map.of("cmd", "cgi_get_status"));
+    }
+
+    HttpRequest resourceStatusRequest() {
+        return client.createRequest("/cgi-bin/status_mgr.cgi", Map.of("cmd", "cgi_get_resource"));
+    }
+
+    HttpRequest diskStatusRequest() {
+        return client.createRequest("/cgi-bin/dsk_mgr.cgi", Map.of("cmd", "cgi_get_disks"));
+    }
+
+    // Neither are the webfile_mgr.cgi commands (cgi_get_file_list, cgi_open_tree) nor the row layout of their replies
+    // (name, type, size, modification), they only mirror the simulator.
+
+    HttpRequest fileListRequest(String directory, int page, int pageSize) {
+        return client.createRequest("/cgi-bin/webfile_mgr.cgi",
+            Map.of("cmd", "cgi_get_file_list", "dir", encode(directory), "page", page, "rp", pageSize,
+                "sortname", "name", "sortorder", "asc"));
+    }
+
+    HttpRequest folderListRequest(String directory) {
+        return client.createRequest("/cgi-bin/webfile_mgr.cgi",
+            Map.of("cmd", "cgi_open_tree", "dir", encode(directory)));
+    }
+
+    HttpRequest uploadRequest(Path file, String directory, boolean overwrite, LongConsumer progress) {
+        // cgi_upload and its fields are unverified as well
+        return client.createUploadRequest("/cgi-bin/webfile_mgr.cgi",
+            Map.of("cmd", "cgi_upload", "path", directory, "overwrite", overwrite ? 1 : 0), "file", file, progress);
+    }
+
+    HttpRequest downloadRequest(String file, long first, long last, String validator) {
+        // cgi_download is unverified too, as is its support of Range and If-Range
+        return client.createRangeRequest("/cgi-bin/webfile_mgr.cgi?cmd=cgi_download&path=" + encode(file), first, last,
+            validator);
+    }
+
+    boolean isLoginSuccessful(HttpsClient.Response response) {
+        if (response.getCode() == 302 || response.getCode() == 200) {
+            String location = response.getHeader("location");
+            return location != null && location.contains("/web/home.html?v=");
+        }
+        return false;
+    }
+
+    boolean isLogoutSuccessful(HttpsClient.Response response) {
+        return response.getCode() == 302 || response.getCode() == 200;
+    }
+
+    boolean isSessionExpired(HttpsClient.Response response) {
+        // the CGIs redirect to the login page instead of answering when the session is not valid anymore
+        if (response.getCode() == 401 || response.getCode() == 403) {
+            return true;
+        }
+        String location = response.getCode() >= 300 && response.getCode() < 400 ? response.getHeader("location") : null;
+        return location != null && location.contains("login.html");
+    }
+
+    public Optional<Boolean> parseFlag(HttpsClient.Response response) {
+        return parseResult(response).map(text -> text.equals("1"));
+    }
+
+    public Optional<Integer> parseMediaScanProgress(HttpsClient.Response response) {
+        if (response.getCode() == HttpURLConnection.HTTP_OK) {
+            try {
+                return parseConfigValue(response.getBodyBytes(), "db_stste", 2).map(Integer::parseInt);
+            } catch (NumberFormatException | HttpsClient.MalformedBodyException e) {
+                // ignored
+                return Optional.empty();
+            }
+        }
+
+        return Optional.empty();
+    }
+
+    public Optional<MediaPathPage> parseMediaServerPathPage(HttpsClient.Response response) {
+        if (response.getCode() == 200) {
+            return bodyStream(response).flatMap(this::parseAvServerPathListXml);
+        }
+
+        return Optional.empty();
+    }
+
+    Optional<FileListPage> parseFileListPage(HttpsClient.Response response, String directory) {
+        if (response.getCode() == 200) {
+            return bodyStream(response).flatMap(body -> parseFileListXml(body, directory));
+        }
+
+        return Optional.empty();
+    }
+
+    Optional<Map<String, String>> parseConfigValues(HttpsClient.Response response) {
+        if (response.getCode() != 200) {
+            return Optional.empty();
+        }
+
+        XMLStreamReader reader = null;
+        try {
+            reader = XmlInputFactoryHolder.FACTORY.createXMLStreamReader(response.getBodyStream());
+            if (reader.nextTag() != XMLStreamConstants.START_ELEMENT || !reader.getLocalName().equals("config")) {
+                return Optional.empty();
+            }
+            return Optional.of(readChildValues(reader));
+        } catch (XMLStreamException | HttpsClient.MalformedBodyException e) {
+            // ignored
+            return Optional.empty();
+        } finally {
+            close(reader);
+        }
+    }
+
+    Optional<List<JShareCenterDisk>> parseDisks(HttpsClient.Response response) {
+        if (response.getCode() != 200) {
+            return Optional.empty();
+        }
+
+        XMLStreamReader reader = null;
+        try {
+            reader = XmlInputFactoryHolder.FACTORY.createXMLStreamReader(response.getBodyStream());
+            if (reader.nextTag() != XMLStreamConstants.START_ELEMENT || !reader.getLocalName().equals("config")) {
+                return Optional.empty();
+            }
+
+            List<JShareCenterDisk> disks = new ArrayList<>();
+            while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                if (!reader.getLocalName().equals("disk")) {
+                    skipElement(reader);
+                    continue;
+                }
+                Map<String, String> values = readChildValues(reader);
+                Integer slot = DefaultJShareCenterSystemStatus.parseInt(values.get("slot"));
+                Long size = DefaultJShareCenterSystemStatus.parseLong(values.get("size"));
+                Long used = DefaultJShareCenterSystemStatus.parseLong(values.get("used"));
+                disks.add(new DefaultJShareCenterDisk(slot == null ? disks.size() + 1 : slot,
+                    values.getOrDefault("model", ""), size == null ? 0 : size, used == null ? 0 : used,
+                    DefaultJShareCenterSystemStatus.parseInt(values.get("temperature")),
+                    values.getOrDefault("smart", "")));
+            }
+            return Optional.of(disks);
+        } catch (XMLStreamException | HttpsClient.MalformedBodyException e) {
+            // ignored
+            return Optional.empty();
+        } finally {
+            close(reader);
+        }
+    }
+
+    private Optional<String> parseResult(HttpsClient.Response response) {
+        if (response.getCode() == 200) {
+            try {
+                return parseConfigValue(response.getBodyBytes(), "res", 1);
+            } catch (HttpsClient.MalformedBodyException e) {
+                // ignored, like any other malformed reply
+                return Optional.empty();
+            }
+        }
+        return Optional.empty();
+    }
+
+    private Optional<String> parseConfigValue(byte[] xml, String elementName, int expectedChildCount) {
+        try {
+            return ConfigXmlScanner.scan(xml, elementName, expectedChildCount);
+        } catch (ConfigXmlScanner.UnsupportedXmlException e) {
+            return parseConfigValueWithStax(xml, elementName, expectedChildCount);
+        }
+    }
+
+    private Optional<String> parseConfigValueWithStax(byte[] xml, String elementName, int expectedChildCount) {
+        XMLStreamReader reader = null;
+        try {
+            reader = XmlInputFactoryHolder.FACTORY.createXMLStreamReader(new ByteArrayInputStream(xml));
+            if (reader.nextTag() != XMLStreamConstants.START_ELEMENT || !reader.getLocalName().equals("config")) {
+                return Optional.empty();
+            }
+
+            String value = null;
+            int childCount = 0;
+            while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                if (childCount == 0 && reader.getLocalName().equals(elementName)) {
+                    value = reader.getElementText();
+                } else {
+                    skipElement(reader);
+                }
+                childCount++;
+            }
+
+            return childCount == expectedChildCount ? Optional.ofNullable(value) : Optional.empty();
+        } catch (XMLStreamException e) {
+            // ignored
+            return Optional.empty();
+        } finally {
+            close(reader);
+        }
+    }
+
+    private Optional<MediaPathPage> parseAvServerPathListXml(InputStream xmlBody) {
+        XMLStreamReader reader = null;
+        try {
+            // the (possibly decompressed) bytes are parsed directly, the list is never decoded into a string
+            reader = XmlInputFactoryHolder.FACTORY.createXMLStreamReader(xmlBody);
+            List<JShareCenterMediaPath> paths = new ArrayList<>();
+
+            String volume = null;
+            String internalPath = null;
+            int total = -1;
+            int cellIndex = -1;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    if (cellIndex >= 0) {
+                        // direct children of a row are the cells, the 2nd one is the volume, the 5th is the path
+                        if (cellIndex == 1) {
+                            volume = reader.getElementText();
+                        } else if (cellIndex == 4) {
+                            internalPath = reader.getElementText();
+                        } else {
+                            skipElement(reader);
+                        }
+                        cellIndex++;
+                    } else if (reader.getLocalName().equals("row")) {
+                        cellIndex = 0;
+                        volume = null;
+                        internalPath = null;
+                    } else if (reader.getLocalName().equals("total")) {
+                        total = parseTotal(reader.getElementText());
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && cellIndex >= 0) {
+                    if (internalPath != null) {
+                        paths.add(new DefaultJShareCenterMediaPath(volume, internalPath));
+                    }
+                    cellIndex = -1;
+                }
+            }
+
+            return Optional.of(new MediaPathPage(paths, total));
+        } catch (XMLStreamException e) {
+            // ignored
+            return Optional.empty();
+        } finally {
+            close(reader);
+        }
+    }
+
+    private Optional<FileListPage> parseFileListXml(InputStream xmlBody, String directory) {
+        XMLStreamReader reader = null;
+        try {
+            reader = XmlInputFactoryHolder.FACTORY.createXMLStreamReader(xmlBody);
+            if (reader.nextTag() != XMLStreamConstants.START_ELEMENT || !reader.getLocalName().equals("rows")) {
+                return Optional.empty();
+            }
+
+            List<JShareCenterFile> files = new ArrayList<>();
+            int total = -1;
+            while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                if (reader.getLocalName().equals("total")) {
+                    total = parseTotal(reader.getElementText());
+                    continue;
+                }
+                if (!reader.getLocalName().equals("row")) {
+                    skipElement(reader);
+                    continue;
+                }
+
+                // the cells of a row are the name, the type (dir or file), the size and the modification in seconds,
+                // a layout assumed from the path list, not read from a real reply
+                List<String> cells = new ArrayList<>(4);
+                while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                    cells.add(reader.getElementText().trim());
+                }
+                if (cells.size() >= 4 && !cells.get(0).isEmpty()) {
+                    String name = cells.get(0);
+                    files.add(new DefaultJShareCenterFile(name, directory.endsWith("/") ? directory + name
+                        : directory + "/" + name, cells.get(1).equals("dir"), Long.parseLong(cells.get(2)),
+                        Instant.ofEpochSecond(Long.parseLong(cells.get(3)))));
+                }
+            }
+            return Optional.of(new FileListPage(files, total));
+        } catch (XMLStreamException | NumberFormatException e) {
+            // ignored
+            return Optional.empty();
+        } finally {
+            close(reader);
+        }
+    }
+
+    private static Optional<InputStream> bodyStream(HttpsClient.Response response) {
+        try {
+            return Optional.of(response.getBodyStream());
+        } catch (HttpsClient.MalformedBodyException e) {
+            // ignored, like any other malformed reply
+            return Optional.empty();
+        }
+    }
+
+    private static String encode(String value) {
+        // paths may hold any character of a file name, unlike the other parameters
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> readChildValues(XMLStreamReader reader) throws XMLStreamException {
+        Map<String, String> values = new HashMap<>();
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String name = reader.getLocalName();
+            StringBuilder text = new StringBuilder();
+            boolean nested = false;
+            int depth = 1;
+            while (depth > 0) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    nested = true;
+                    depth++;
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                } else if (depth == 1 && (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA)) {
+                    text.append(reader.getText());
+                }
+            }
+            // elements with children are not plain values
+            if (!nested) {
+                values.put(name, text.toString().trim());
+            }
+        }
+        return values;
+    }
+
+    private static int parseTotal(String text) {
+        try {
+            return Integer.parseInt(text.trim());
+        } catch (NumberFormatException e) {
+            // ignored
+            return -1;
+        }
+    }
+
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private static void close(XMLStreamReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (XMLStreamException e) {
+                // ignored
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package hu.codelens.sharecenter.internal;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Collapses concurrent calls of the same key into one: the first caller makes the call, the others wait for it and
+ * share its result. A present result is kept for the time to live of the call, callers within it get it without a
+ * call at all; failures and empty results are only shared with the callers already waiting.
+ */
+class SingleFlight {
+
+    private final ConcurrentMap<String, Flight<?>> flights;
+
+    SingleFlight() {
+        this.flights = new ConcurrentHashMap<>();
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> Optional<T> get(String key, Duration ttl, Supplier<Optional<T>> call) {
+        long ttlNanos = ttl == null ? 0 : ttl.toNanos();
+        while (true) {
+            Flight<T> flight = (Flight<T>) flights.get(key);
+            if (flight != null && flight.isExpired(ttlNanos)) {
+                flights.remove(key, flight);
+                continue;
+            }
+            if (flight != null) {
+                return flight.await();
+            }
+
+            Flight<T> created = new Flight<>();
+            if (flights.putIfAbsent(key, created) == null) {
+                return lead(key, created, ttlNanos, call);
+            }
+        }
+    }
+
+    void clear() {
+        // the calls in flight are left alone, their callers are already waiting for them
+        flights.values().removeIf(Flight::isDone);
+    }
+
+    private <T> Optional<T> lead(String key, Flight<T> flight, long ttlNanos, Supplier<Optional<T>> call) {
+        Optional<T> result;
+        try {
+            result = call.get();
+        } catch (RuntimeException e) {
+            flights.remove(key, flight);
+            flight.result.completeExceptionally(e);
+            throw e;
+        }
+
+        flight.completedAt = System.nanoTime();
+        if (ttlNanos <= 0 || result.isEmpty()) {
+            flights.remove(key, flight);
+        }
+        flight.result.complete(result);
+        return result;
+    }
+
+    private static class Flight<T> {
+        private final CompletableFuture<Optional<T>> result = new CompletableFuture<>();
+        private volatile long completedAt;
+
+        private boolean isDone() {
+            return result.isDone();
+        }
+
+        private boolean isExpired(long ttlNanos) {
+            return result.isDone() && System.nanoTime() - completedAt >= ttlNanos;
+        }
+
+        private Optional<T> await() {
+            try {
+                return result.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+}
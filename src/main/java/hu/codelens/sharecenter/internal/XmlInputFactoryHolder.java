@@ -0,0 +1,21 @@
+package hu.codelens.sharecenter.internal;
+
+import javax.xml.stream.XMLInputFactory;
+
+// the StAX implementation is loaded with the first reply parsed by it (path lists, file lists, DLNA and status
+// replies, config replies the scanner cannot handle), runs that stop before any request never load it
+final class XmlInputFactoryHolder {
+
+    static final XMLInputFactory FACTORY = createXmlInputFactory();
+
+    private XmlInputFactoryHolder() {
+    }
+
+    private static XMLInputFactory createXmlInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+}
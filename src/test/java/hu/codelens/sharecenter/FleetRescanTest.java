@@ -0,0 +1,68 @@
+package hu.codelens.sharecenter;
+
+import hu.codelens.sharecenter.simulator.ShareCenterSimulator;
+import hu.codelens.sharecenter.simulator.SimulatorSettings;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FleetRescanTest {
+
+    private SimulatorSettings simulatorSettings;
+    private ShareCenterSimulator simulator;
+
+    @BeforeEach
+    void startSimulator() throws IOException {
+        simulatorSettings = new SimulatorSettings().setMediaPathCount(2).setScanDuration(Duration.ofMillis(300))
+            .setFailingScanPath(1);
+        simulator = new ShareCenterSimulator(simulatorSettings, 1);
+    }
+
+    @AfterEach
+    void stopSimulator() {
+        simulator.close();
+    }
+
+    @Test
+    void hostFailingHalfwayKeepsScannedVolumes() {
+        RescanResult result = rescan();
+        assertEquals(RescanResult.Status.PARTIAL, result.getStatus());
+        assertEquals(List.of("Volume_1/media0"), List.copyOf(result.getScanDurations().keySet()));
+        assertTrue(result.getScanDurations().get("Volume_1/media0").toMillis() >= 300);
+        assertEquals(1, result.getFailures().size());
+        assertTrue(result.getDuration().compareTo(result.getScanDurations().get("Volume_1/media0")) > 0);
+    }
+
+    @Test
+    void failedScanDoesNotStopTheOtherVolumes() {
+        // the first scan is over before its progress is given up, so the second one can start
+        simulatorSettings.setScanDuration(Duration.ofMillis(100)).setFailingScanPath(0);
+
+        RescanResult result = rescan();
+        assertEquals(RescanResult.Status.PARTIAL, result.getStatus());
+        assertEquals(List.of("Volume_1/media1"), List.copyOf(result.getScanDurations().keySet()));
+        assertEquals(List.of("Could not read the scan progress: Volume_1/media0"), result.getFailures());
+    }
+
+    private RescanResult rescan() {
+        RescanOptions options = new RescanOptions();
+        options.setUsername("admin");
+        options.setPwd(Base64.getEncoder().encodeToString("admin".getBytes()));
+        options.setMinPollInterval(Duration.ofMillis(20));
+        options.setMaxPollInterval(Duration.ofMillis(50));
+        options.getClientSettings().setMaxRetries(0);
+        ColorOutput output = ColorOutput.getDefault();
+        output.setOutput(new PrintStream(OutputStream.nullOutputStream()));
+
+        return new FleetRescan(List.of(simulator.getDevice().getHost()), options, 1, output).run().get(0);
+    }
+}
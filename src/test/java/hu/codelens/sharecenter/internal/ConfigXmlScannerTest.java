@@ -0,0 +1,78 @@
+package hu.codelens.sharecenter.internal;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConfigXmlScannerTest {
+
+    @Test
+    void readsFirstChild() throws ConfigXmlScanner.UnsupportedXmlException {
+        assertEquals(Optional.of("1"), scan("<config><res>1</res></config>", "res", 1));
+        assertEquals(Optional.of("42"), scan("<config><db_stste>42</db_stste><scan_state>1</scan_state></config>",
+            "db_stste", 2));
+    }
+
+    @Test
+    void skipsPrologCommentsAndWhitespace() throws ConfigXmlScanner.UnsupportedXmlException {
+        assertEquals(Optional.of("0"), scan("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<!-- status -->\n"
+            + "<config>\n  <res>0</res>\n</config>\n", "res", 1));
+    }
+
+    @Test
+    void skipsAttributes() throws ConfigXmlScanner.UnsupportedXmlException {
+        assertEquals(Optional.of("1"), scan("<config version='2'><res type=\"a>b\">1</res></config>", "res", 1));
+        assertEquals(Optional.of(""), scan("<config><res/></config>", "res", 1));
+    }
+
+    @Test
+    void keepsTextAsItIs() throws ConfigXmlScanner.UnsupportedXmlException {
+        assertEquals(Optional.of(" 7 "), scan("<config><res> 7 </res></config>", "res", 1));
+        assertEquals(Optional.of("árvíztűrő"), scan("<config><name>árvíztűrő</name></config>", "name", 1));
+    }
+
+    @Test
+    void emptyWhenNotTheExpectedReply() throws ConfigXmlScanner.UnsupportedXmlException {
+        assertEquals(Optional.empty(), scan("<rows><res>1</res></rows>", "res", 1));
+        assertEquals(Optional.empty(), scan("<config/>", "res", 1));
+        assertEquals(Optional.empty(), scan("<config></config>", "res", 1));
+        assertEquals(Optional.empty(), scan("<config><other>1</other></config>", "res", 1));
+        assertEquals(Optional.empty(), scan("<config><res>1</res><extra>2</extra></config>", "res", 1));
+        // only the first child counts
+        assertEquals(Optional.empty(), scan("<config><other>1</other><res>1</res></config>", "res", 2));
+    }
+
+    @Test
+    void unsupportedConstructsAreReported() {
+        assertUnsupported("<config><res>&#49;</res></config>");
+        assertUnsupported("<config><res><![CDATA[1]]></res></config>");
+        assertUnsupported("<config><res><value>1</value></res></config>");
+        assertUnsupported("<!DOCTYPE config><config><res>1</res></config>");
+        assertUnsupported("﻿<config><res>1</res></config>");
+    }
+
+    @Test
+    void malformedXmlIsReported() {
+        assertUnsupported("");
+        assertUnsupported("   ");
+        assertUnsupported("<config><res>1</res>");
+        assertUnsupported("<config><res>1</re></config>");
+        assertUnsupported("<config><res>1");
+        assertUnsupported("<config><res attribute=\"1>1</res></config>");
+        assertUnsupported("<?xml version=\"1.0\"");
+        assertUnsupported("<config><res>1</res></other>");
+        assertUnsupported("Internal Server Error");
+    }
+
+    private static Optional<String> scan(String xml, String elementName, int expectedChildCount)
+        throws ConfigXmlScanner.UnsupportedXmlException {
+        return ConfigXmlScanner.scan(xml.getBytes(StandardCharsets.UTF_8), elementName, expectedChildCount);
+    }
+
+    private static void assertUnsupported(String xml) {
+        assertThrows(ConfigXmlScanner.UnsupportedXmlException.class, () -> scan(xml, "res", 1), xml);
+    }
+}
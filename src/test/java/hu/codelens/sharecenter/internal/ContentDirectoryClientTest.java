@@ -0,0 +1,76 @@
+package hu.codelens.sharecenter.internal;
+
+import hu.codelens.sharecenter.JShareCenterSettings;
+import hu.codelens.sharecenter.simulator.ShareCenterSimulator;
+import hu.codelens.sharecenter.simulator.SimulatorSettings;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentDirectoryClientTest {
+
+    private static ShareCenterSimulator simulator;
+
+    @BeforeAll
+    static void startSimulator() throws IOException {
+        simulator = new ShareCenterSimulator(new SimulatorSettings().setMediaPathCount(2).setCatalogItemCount(20), 1);
+    }
+
+    @AfterAll
+    static void stopSimulator() {
+        simulator.close();
+    }
+
+    @Test
+    void filesInVirtualContainersAreListedOnce() {
+        List<MediaCatalog.Entry> entries = browseAll(new JShareCenterSettings());
+
+        // media0, media1, their extras and the virtual container
+        assertEquals(5, entries.stream().filter(MediaCatalog.Entry::isContainer).count());
+        List<MediaCatalog.Entry> files = entries.stream().filter(entry -> !entry.isContainer())
+            .collect(Collectors.toList());
+        assertEquals(2 * (20 + 3), files.size());
+        assertEquals(files.size(), files.stream().map(MediaCatalog.Entry::getPath).distinct().count());
+        // of the two paths of a file the first in sort order is kept, whichever page arrived first
+        assertTrue(files.stream().anyMatch(entry -> entry.getPath().equals("/Recently Added/file0")));
+        assertTrue(files.stream().noneMatch(entry -> entry.getPath().equals("/media0/file0")));
+        assertTrue(files.stream().anyMatch(entry -> entry.getPath().equals("/media1/file0")));
+    }
+
+    @Test
+    void worksWithoutTimeouts() {
+        JShareCenterSettings settings = new JShareCenterSettings();
+        settings.setConnectTimeout(null);
+        settings.setRequestTimeout(null);
+
+        assertEquals(2 * (20 + 3), browseAll(settings).stream().filter(entry -> !entry.isContainer()).count());
+    }
+
+    @Test
+    void writtenCatalogCanBeReplaced(@TempDir Path directory) {
+        Path file = directory.resolve("media.catalog");
+        List<MediaCatalog.Entry> entries = browseAll(new JShareCenterSettings());
+
+        MediaCatalog before = MediaCatalog.write(file, entries);
+        MediaCatalog after = MediaCatalog.write(file, entries.subList(1, entries.size()));
+
+        assertEquals(entries.size(), before.size());
+        assertEquals(entries.size() - 1, after.size());
+        assertEquals(entries.size() - 1, MediaCatalog.open(file).size());
+        assertTrue(before.findByPath(entries.get(1).getPath()).isPresent());
+    }
+
+    private static List<MediaCatalog.Entry> browseAll(JShareCenterSettings settings) {
+        return new ContentDirectoryClient(URI.create(simulator.getDevice().getDlnaLocation()), settings, 4)
+            .browseAll();
+    }
+}
@@ -0,0 +1,130 @@
+package hu.codelens.sharecenter.internal;
+
+import hu.codelens.sharecenter.AsyncJShareCenter;
+import hu.codelens.sharecenter.JShareCenterMediaPath;
+import hu.codelens.sharecenter.JShareCenterSettings;
+import hu.codelens.sharecenter.simulator.ShareCenterSimulator;
+import hu.codelens.sharecenter.simulator.SimulatorSettings;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DefaultAsyncJShareCenterTest {
+
+    private static final String PASSWORD = Base64.getEncoder().encodeToString("admin".getBytes());
+
+    private static SimulatorSettings simulatorSettings;
+    private static ShareCenterSimulator simulator;
+
+    private AsyncJShareCenter shareCenter;
+
+    @BeforeAll
+    static void startSimulator() throws IOException {
+        simulatorSettings = new SimulatorSettings();
+        simulator = new ShareCenterSimulator(simulatorSettings, 1);
+    }
+
+    @AfterAll
+    static void stopSimulator() {
+        simulator.close();
+    }
+
+    @BeforeEach
+    void createShareCenter() {
+        simulatorSettings.setMediaPathCount(2).setScanDuration(Duration.ofMillis(600)).setSessionLifetime(null)
+            .setErrorRate(0);
+
+        JShareCenterSettings settings = new JShareCenterSettings();
+        settings.setMaxRetries(0);
+        shareCenter = AsyncJShareCenter.getDefault(simulator.getDevice().getHost(), settings);
+    }
+
+    @Test
+    void loginAcceptsValidCredentials() {
+        assertTrue(shareCenter.login("admin", PASSWORD).join());
+        assertEquals(Optional.of(false), shareCenter.checkMediaScanRunning().join());
+    }
+
+    @Test
+    void loginRejectsInvalidCredentials() {
+        assertFalse(shareCenter.login("admin", "wrong").join());
+        CompletionException e = assertThrows(CompletionException.class,
+            () -> shareCenter.checkMediaScanRunning().join());
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+    }
+
+    @Test
+    void pathListSpansSeveralPages() {
+        simulatorSettings.setMediaPathCount(ShareCenterProtocol.DEFAULT_PAGE_SIZE * 2 + 3);
+        assertTrue(shareCenter.login("admin", PASSWORD).join());
+
+        Collection<JShareCenterMediaPath> paths = shareCenter.getMediaServerPathList().join().orElseThrow();
+        assertEquals(ShareCenterProtocol.DEFAULT_PAGE_SIZE * 2 + 3, paths.size());
+        assertEquals("/mnt/HD/HD_a2/media0", paths.iterator().next().getInternalPath());
+    }
+
+    @Test
+    void progressIsReadUntilScanFinishes() throws InterruptedException {
+        assertTrue(shareCenter.login("admin", PASSWORD).join());
+        JShareCenterMediaPath mediaPath = shareCenter.getMediaServerPathList().join().orElseThrow().iterator().next();
+
+        assertEquals(Optional.of(true), shareCenter.startMediaScan(mediaPath).join());
+        assertEquals(Optional.of(true), shareCenter.checkMediaScanRunning().join());
+
+        List<Integer> progress = new ArrayList<>();
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!shareCenter.checkMediaScanFinished().join().orElse(false) && System.nanoTime() < deadline) {
+            shareCenter.checkMediaScanProgress().join().ifPresent(progress::add);
+            Thread.sleep(100);
+        }
+        assertEquals(Optional.of(true), shareCenter.checkMediaScanFinished().join());
+        assertFalse(progress.isEmpty());
+        for (int index = 1; index < progress.size(); index++) {
+            assertTrue(progress.get(index) >= progress.get(index - 1), progress.toString());
+        }
+    }
+
+    @Test
+    void pollsAfterServerErrorsAreRetried() {
+        JShareCenterSettings settings = new JShareCenterSettings();
+        settings.setMaxRetries(10);
+        settings.setInitialBackoff(Duration.ofMillis(1));
+        settings.setMaxBackoff(Duration.ofMillis(5));
+        AsyncJShareCenter retrying = AsyncJShareCenter.getDefault(simulator.getDevice().getHost(), settings);
+        assertTrue(retrying.login("admin", PASSWORD).join());
+
+        simulatorSettings.setMediaPathCount(20).setErrorRate(0.3);
+        for (int call = 0; call < 10; call++) {
+            assertEquals(Optional.of(false), retrying.checkMediaScanRunning().join());
+        }
+        assertEquals(20, retrying.getMediaServerPathList().join().map(Collection::size).orElse(-1));
+    }
+
+    @Test
+    void concurrentPollsWithExpiredSessionLogInOnce() throws InterruptedException {
+        simulatorSettings.setSessionLifetime(Duration.ofMillis(500));
+        assertTrue(shareCenter.login("admin", PASSWORD).join());
+        long logins = simulator.getDevice().getLoginCount();
+
+        Thread.sleep(600);
+        List<CompletableFuture<Optional<Boolean>>> polls = new ArrayList<>();
+        for (int poll = 0; poll < 8; poll++) {
+            polls.add(shareCenter.checkMediaScanRunning());
+        }
+        polls.forEach(poll -> assertEquals(Optional.of(false), poll.join()));
+        assertEquals(logins + 1, simulator.getDevice().getLoginCount());
+    }
+}
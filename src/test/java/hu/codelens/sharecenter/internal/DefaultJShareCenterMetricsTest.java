@@ -0,0 +1,30 @@
+package hu.codelens.sharecenter.internal;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DefaultJShareCenterMetricsTest {
+
+    @Test
+    void durationOnBucketBoundaryIsCountedInThatBucket() {
+        DefaultJShareCenterMetrics metrics = new DefaultJShareCenterMetrics();
+        metrics.recordRequest("nas", "cmd", Duration.ofMillis(5), 10, false);
+        metrics.recordRequest("nas", "cmd", Duration.ofMillis(100), 10, false);
+        metrics.recordRequest("nas", "cmd", Duration.ofNanos(100_001_000), 10, false);
+
+        String text = metrics.toPrometheus();
+        assertTrue(text.contains("jsharecenter_request_duration_seconds_bucket{host=\"nas\",cmd=\"cmd\",le=\"0.005\"} 1\n"),
+            text);
+        assertTrue(text.contains("jsharecenter_request_duration_seconds_bucket{host=\"nas\",cmd=\"cmd\",le=\"0.050\"} 1\n"),
+            text);
+        assertTrue(text.contains("jsharecenter_request_duration_seconds_bucket{host=\"nas\",cmd=\"cmd\",le=\"0.100\"} 2\n"),
+            text);
+        assertTrue(text.contains("jsharecenter_request_duration_seconds_bucket{host=\"nas\",cmd=\"cmd\",le=\"0.250\"} 3\n"),
+            text);
+        assertTrue(text.contains("jsharecenter_request_duration_seconds_bucket{host=\"nas\",cmd=\"cmd\",le=\"+Inf\"} 3\n"),
+            text);
+    }
+}
@@ -0,0 +1,502 @@
+package hu.codelens.sharecenter.internal;
+
+import hu.codelens.sharecenter.JShareCenter;
+import hu.codelens.sharecenter.JShareCenterMediaPath;
+import hu.codelens.sharecenter.JShareCenterScanProgress;
+import hu.codelens.sharecenter.JShareCenterSettings;
+import hu.codelens.sharecenter.JShareCenterStatusCommand;
+import hu.codelens.sharecenter.simulator.ShareCenterSimulator;
+import hu.codelens.sharecenter.simulator.SimulatorSettings;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DefaultJShareCenterTest {
+
+    private static final String PASSWORD = Base64.getEncoder().encodeToString("admin".getBytes());
+    private static final String PATH_LIST = "UPnP_AV_Server_Path_List";
+    private static final String SCAN_RUNNING = "CGI_SQLDB_Stop_Finish";
+    private static final String SCAN_FINISHED = "UPnP_AV_Server_Prescan_Finished";
+    private static final String SCAN_PROGRESS = "UPnP_AV_Server_Get_SQLDB_State";
+
+    private static SimulatorSettings simulatorSettings;
+    private static ShareCenterSimulator simulator;
+
+    private JShareCenter shareCenter;
+
+    @BeforeAll
+    static void startSimulator() throws IOException {
+        simulatorSettings = new SimulatorSettings();
+        simulator = new ShareCenterSimulator(simulatorSettings, 1);
+    }
+
+    @AfterAll
+    static void stopSimulator() {
+        simulator.close();
+    }
+
+    @BeforeEach
+    void createShareCenter() {
+        simulatorSettings.setMediaPathCount(2).setScanDuration(Duration.ofMillis(600)).setSessionLifetime(null)
+            .setErrorRate(0).setCompression(false).setTruncatedCompression(false).setTreeRevision(0)
+            .setDownloadRate(0);
+
+        JShareCenterSettings settings = new JShareCenterSettings();
+        // the failures below are meant to reach the caller, not to be retried
+        settings.setMaxRetries(0);
+        settings.setStatusCacheTtl(Duration.ZERO);
+        shareCenter = JShareCenter.getDefault(simulator.getDevice().getHost(), settings);
+    }
+
+    @AfterEach
+    void clearCannedReplies() {
+        List.of(PATH_LIST, SCAN_RUNNING, SCAN_FINISHED, SCAN_PROGRESS).forEach(simulatorSettings::clearCannedReply);
+    }
+
+    @Test
+    void loginAcceptsValidCredentials() {
+        assertTrue(shareCenter.login("admin", PASSWORD));
+        assertEquals(Optional.of(false), shareCenter.checkMediaScanRunning());
+    }
+
+    @Test
+    void loginRejectsInvalidCredentials() {
+        assertFalse(shareCenter.login("admin", Base64.getEncoder().encodeToString("wrong".getBytes())));
+        assertThrows(IllegalStateException.class, () -> shareCenter.checkMediaScanRunning());
+    }
+
+    @Test
+    void commandsNeedLogin() {
+        assertThrows(IllegalStateException.class, () -> shareCenter.getMediaServerPathList());
+        assertThrows(IllegalStateException.class, () -> shareCenter.checkMediaScanProgress());
+    }
+
+    @Test
+    void logoutEndsSession() {
+        assertTrue(shareCenter.login("admin", PASSWORD));
+        shareCenter.logout("admin");
+        assertThrows(IllegalStateException.class, () -> shareCenter.checkMediaScanRunning());
+    }
+
+    @Test
+    void expiredSessionIsLoggedInAgain() throws InterruptedException {
+        simulatorSettings.setSessionLifetime(Duration.ofMillis(200));
+        assertTrue(shareCenter.login("admin", PASSWORD));
+        assertEquals(Optional.of(false), shareCenter.checkMediaScanRunning());
+
+        Thread.sleep(300);
+        assertEquals(Optional.of(false), shareCenter.checkMediaScanRunning());
+        assertEquals(2, shareCenter.getMediaServerPathList().map(Collection::size).orElse(-1));
+    }
+
+    @Test
+    void cachedStatusCommandIsSharedUntilScanStarts() throws InterruptedException {
+        JShareCenterSettings settings = new JShareCenterSettings();
+        settings.setMaxRetries(0);
+        settings.setCommandCacheTtl(JShareCenterStatusCommand.MEDIA_SCAN_RUNNING, Duration.ofMinutes(1));
+        JShareCenter cached = JShareCenter.getDefault(simulator.getDevice().getHost(), settings);
+        assertTrue(cached.login("admin", PASSWORD));
+        JShareCenterMediaPath mediaPath = cached.getMediaServerPathList().orElseThrow().iterator().next();
+
+        long requests = simulator.getDevice().getRequestCount();
+        assertEquals(Collections.nCopies(8, Optional.of(false)), concurrently(8, cached::checkMediaScanRunning));
+        assertEquals(Optional.of(false), cached.checkMediaScanRunning());
+        assertEquals(requests + 1, simulator.getDevice().getRequestCount());
+        // only the command given a time to live is kept
+        cached.checkMediaScanFinished();
+        cached.checkMediaScanFinished();
+        assertEquals(requests + 3, simulator.getDevice().getRequestCount());
+
+        assertEquals(Optional.of(true), cached.startMediaScan(mediaPath));
+        assertEquals(Optional.of(true), cached.checkMediaScanRunning());
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!cached.checkMediaScanFinished().orElse(false) && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+        }
+    }
+
+    @Test
+    void concurrentCallersWithExpiredSessionLogInOnce() throws InterruptedException {
+        simulatorSettings.setSessionLifetime(Duration.ofMillis(500));
+        assertTrue(shareCenter.login("admin", PASSWORD));
+        long logins = simulator.getDevice().getLoginCount();
+
+        Thread.sleep(600);
+        assertEquals(List.of(2, 2, 2, 2, 2, 2, 2, 2), concurrently(8, () -> shareCenter.getMediaServerPathList()
+            .map(Collection::size).orElse(-1)));
+        assertEquals(logins + 1, simulator.getDevice().getLoginCount());
+    }
+
+    @Test
+    void laterSessionExpiryLogsInAgain() throws InterruptedException {
+        simulatorSettings.setSessionLifetime(Duration.ofMillis(500));
+        assertTrue(shareCenter.login("admin", PASSWORD));
+        long logins = simulator.getDevice().getLoginCount();
+
+        // the session generation seen by the first burst must not keep the second one from logging in
+        for (int burst = 1; burst <= 2; burst++) {
+            Thread.sleep(600);
+            assertEquals(List.of(2, 2, 2, 2), concurrently(4, () -> shareCenter.getMediaServerPathList()
+                .map(Collection::size).orElse(-1)));
+            assertEquals(logins + burst, simulator.getDevice().getLoginCount());
+        }
+    }
+
+    @Test
+    void expiredResumedSessionIsLoggedInAgain(@TempDir Path directory) throws InterruptedException {
+        Path sessionFile = directory.resolve("nas.session");
+        assertTrue(shareCenter.login("admin", PASSWORD));
+        shareCenter.saveSession(sessionFile);
+
+        simulatorSettings.setSessionLifetime(Duration.ofMillis(500));
+        JShareCenter resumed = JShareCenter.getDefault(simulator.getDevice().getHost());
+        assertTrue(resumed.resumeSession(sessionFile, "admin", PASSWORD));
+        long logins = simulator.getDevice().getLoginCount();
+
+        Thread.sleep(600);
+        assertEquals(Optional.of(false), resumed.checkMediaScanRunning());
+        assertEquals(logins + 1, simulator.getDevice().getLoginCount());
+    }
+
+    @Test
+    void pathListIsReadPageByPage() {
+        simulatorSettings.setMediaPathCount(7);
+        assertTrue(shareCenter.login("admin", PASSWORD));
+
+        List<String> paths;
+        try (Stream<JShareCenterMediaPath> stream = shareCenter.streamMediaServerPathList(3)) {
+            paths = stream.map(JShareCenterMediaPath::getInternalPath).collect(Collectors.toList());
+        }
+        assertEquals(7, paths.size());
+        for (int index = 0; index < paths.size(); index++) {
+            assertEquals("/mnt/HD/HD_a2/media" + index, paths.get(index));
+        }
+    }
+
+    @Test
+    void pathListSpansSeveralPages() {
+        simulatorSettings.setMediaPathCount(ShareCenterProtocol.DEFAULT_PAGE_SIZE * 2 + 3);
+        assertTrue(shareCenter.login("admin", PASSWORD));
+
+        Collection<JShareCenterMediaPath> paths = shareCenter.getMediaServerPathList().orElseThrow();
+        assertEquals(ShareCenterProtocol.DEFAULT_PAGE_SIZE * 2 + 3, paths.size());
+        assertEquals("Volume_1/media0", paths.iterator().next().getVolume());
+    }
+
+    @Test
+    void pathListWithFailedLaterPageIsEmpty() throws InterruptedException {
+        simulatorSettings.setMediaPathCount(ShareCenterProtocol.DEFAULT_PAGE_SIZE * 2 + 3);
+        assertTrue(shareCenter.login("admin", PASSWORD));
+
+        // the first page is answered before the failure, the second one after it
+        simulatorSettings.setLatency(PATH_LIST, Duration.ofMillis(300));
+        try {
+            CompletableFuture<Optional<Collection<JShareCenterMediaPath>>> paths =
+                CompletableFuture.supplyAsync(shareCenter::getMediaServerPathList);
+            Thread.sleep(150);
+            simulatorSettings.setCannedReply(PATH_LIST, 404, "Not Found");
+            assertEquals(Optional.empty(), paths.join());
+        } finally {
+            simulatorSettings.setLatency(PATH_LIST, Duration.ZERO);
+        }
+    }
+
+    @Test
+    void pagesAfterExpiredSessionAreFetchedAgain() throws InterruptedException {
+        simulatorSettings.setMediaPathCount(5).setSessionLifetime(Duration.ofMillis(300));
+        assertTrue(shareCenter.login("admin", PASSWORD));
+
+        List<String> paths = new ArrayList<>();
+        try (Stream<JShareCenterMediaPath> stream = shareCenter.streamMediaServerPathList(1)) {
+            Iterator<JShareCenterMediaPath> iterator = stream.iterator();
+            paths.add(iterator.next().getInternalPath());
+            Thread.sleep(400);
+            iterator.forEachRemaining(path -> paths.add(path.getInternalPath()));
+        }
+        assertEquals(5, paths.size());
+        assertEquals("/mnt/HD/HD_a2/media4", paths.get(4));
+    }
+
+    @Test
+    void pagesAfterServerErrorsAreRetried() {
+        simulatorSettings.setMediaPathCount(20).setErrorRate(0.3);
+        JShareCenterSettings settings = new JShareCenterSettings();
+        settings.setMaxRetries(10);
+        settings.setInitialBackoff(Duration.ofMillis(1));
+        settings.setMaxBackoff(Duration.ofMillis(5));
+        JShareCenter retrying = JShareCenter.getDefault(simulator.getDevice().getHost(), settings);
+        assertTrue(retrying.login("admin", PASSWORD));
+
+        try (Stream<JShareCenterMediaPath> stream = retrying.streamMediaServerPathList(2)) {
+            assertEquals(20, stream.count());
+        }
+    }
+
+    @Test
+    void mediaScanReportsProgressUntilFinished() throws InterruptedException {
+        assertTrue(shareCenter.login("admin", PASSWORD));
+        JShareCenterMediaPath mediaPath = shareCenter.getMediaServerPathList().orElseThrow().iterator().next();
+        long scans = simulator.getDevice().getScanCount();
+
+        assertEquals(Optional.of(true), shareCenter.startMediaScan(mediaPath));
+        assertEquals(Optional.of(true), shareCenter.checkMediaScanRunning());
+        assertEquals(Optional.of(false), shareCenter.checkMediaScanFinished());
+        // a second scan is refused while the first one runs
+        assertEquals(Optional.of(false), shareCenter.startMediaScan(mediaPath));
+
+        int previous = 0;
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!shareCenter.checkMediaScanFinished().orElseThrow()) {
+            int progress = shareCenter.checkMediaScanProgress().orElseThrow();
+            assertTrue(progress >= previous && progress <= 100, "progress " + progress + " after " + previous);
+            previous = progress;
+            assertTrue(System.nanoTime() < deadline, "the media scan did not finish");
+            Thread.sleep(50);
+        }
+
+        assertEquals(Optional.of(100), shareCenter.checkMediaScanProgress());
+        assertEquals(Optional.of(false), shareCenter.checkMediaScanRunning());
+        assertEquals(scans + 1, simulator.getDevice().getScanCount());
+        assertEquals(mediaPath.getInternalPath(), simulator.getDevice().getScanDirectory());
+    }
+
+    @Test
+    void errorRepliesAreEmpty() {
+        assertTrue(shareCenter.login("admin", PASSWORD));
+        simulatorSettings.setCannedReply(SCAN_RUNNING, 500, "Internal Server Error")
+            .setCannedReply(SCAN_PROGRESS, 503, "")
+            .setCannedReply(PATH_LIST, 404, "Not Found");
+
+        assertEquals(Optional.empty(), shareCenter.checkMediaScanRunning());
+        assertEquals(Optional.empty(), shareCenter.checkMediaScanProgress());
+        assertEquals(Optional.empty(), shareCenter.getMediaServerPathList());
+    }
+
+    @Test
+    void malformedRepliesAreEmpty() {
+        assertTrue(shareCenter.login("admin", PASSWORD));
+        simulatorSettings.setCannedReply(SCAN_RUNNING, 200, "<config><res>1</res>")
+            .setCannedReply(SCAN_FINISHED, 200, "<config><res>1</re></config>")
+            .setCannedReply(SCAN_PROGRESS, 200, "<config><db_stste>abc</db_stste><scan_state>1</scan_state></config>")
+            .setCannedReply(PATH_LIST, 200, "<rows><page>1</page><total>2</total><row id='1'><cell>1</cell>");
+
+        assertEquals(Optional.empty(), shareCenter.checkMediaScanRunning());
+        assertEquals(Optional.empty(), shareCenter.checkMediaScanFinished());
+        assertEquals(Optional.empty(), shareCenter.checkMediaScanProgress());
+        assertEquals(Optional.empty(), shareCenter.getMediaServerPathList());
+    }
+
+    @Test
+    void unexpectedRepliesAreEmpty() {
+        assertTrue(shareCenter.login("admin", PASSWORD));
+        simulatorSettings.setCannedReply(SCAN_RUNNING, 200, "<html><body>Busy</body></html>")
+            .setCannedReply(SCAN_FINISHED, 200, "<config><res>1</res><extra>0</extra></config>")
+            .setCannedReply(SCAN_PROGRESS, 200, "<config><db_stste>5</db_stste></config>");
+
+        assertEquals(Optional.empty(), shareCenter.checkMediaScanRunning());
+        assertEquals(Optional.empty(), shareCenter.checkMediaScanFinished());
+        assertEquals(Optional.empty(), shareCenter.checkMediaScanProgress());
+    }
+
+    @Test
+    void emptyRepliesAreEmpty() {
+        assertTrue(shareCenter.login("admin", PASSWORD));
+        simulatorSettings.setCannedReply(SCAN_RUNNING, 200, "")
+            .setCannedReply(SCAN_PROGRESS, 200, "")
+            .setCannedReply(PATH_LIST, 200, "");
+
+        assertEquals(Optional.empty(), shareCenter.checkMediaScanRunning());
+        assertEquals(Optional.empty(), shareCenter.checkMediaScanProgress());
+        assertEquals(Optional.empty(), shareCenter.getMediaServerPathList());
+    }
+
+    @Test
+    void emptyPathListHasNoPaths() {
+        assertTrue(shareCenter.login("admin", PASSWORD));
+        simulatorSettings.setCannedReply(PATH_LIST, 200, "<rows><page>1</page><total>0</total></rows>");
+
+        assertEquals(Optional.of(0), shareCenter.getMediaServerPathList().map(Collection::size));
+    }
+
+    @Test
+    void compressedRepliesAreRead() {
+        simulatorSettings.setCompression(true).setMediaPathCount(60);
+        assertTrue(shareCenter.login("admin", PASSWORD));
+
+        assertEquals(Optional.of(false), shareCenter.checkMediaScanRunning());
+        assertEquals(Optional.of(60), shareCenter.getMediaServerPathList().map(Collection::size));
+    }
+
+    @Test
+    void truncatedCompressedRepliesAreEmpty() {
+        simulatorSettings.setCompression(true).setMediaPathCount(60);
+        assertTrue(shareCenter.login("admin", PASSWORD));
+        simulatorSettings.setTruncatedCompression(true);
+
+        assertEquals(Optional.empty(), shareCenter.checkMediaScanRunning());
+        assertEquals(Optional.empty(), shareCenter.checkMediaScanProgress());
+        assertEquals(Optional.empty(), shareCenter.getMediaServerPathList());
+    }
+
+    @Test
+    void uploadReplacesExistingFileOnlyWhenAsked(@TempDir Path directory) throws IOException {
+        Path file = Files.writeString(directory.resolve("overwrite-test.mkv"), "movie");
+        assertTrue(shareCenter.login("admin", PASSWORD));
+
+        assertEquals(Optional.of(true), shareCenter.uploadFile(file, "/mnt/HD/HD_a2/media0"));
+        assertEquals(Optional.of(false), shareCenter.uploadFile(file, "/mnt/HD/HD_a2/media0"));
+        assertEquals(Optional.of(true), shareCenter.uploadFile(file, "/mnt/HD/HD_a2/media0", true, null));
+    }
+
+    @Test
+    void downloadStartsOverWhenFileChanges(@TempDir Path directory) throws IOException {
+        String file = "/mnt/HD/HD_a2/media0/album0/disc0/01 - track & tune.flac";
+        Path destination = directory.resolve("track.flac");
+        simulatorSettings.setDownloadRate(10_000_000);
+        assertTrue(shareCenter.login("admin", PASSWORD));
+
+        AtomicLong received = new AtomicLong();
+        Optional<Long> downloaded = shareCenter.downloadFile(file, destination, 4, bytes -> {
+            // the file is rewritten on the NAS once a few ranges are under way
+            if (received.addAndGet(bytes) > 4_000_000 && simulatorSettings.getTreeRevision() == 0) {
+                simulatorSettings.setTreeRevision(1);
+            }
+        });
+
+        assertEquals(Optional.of(30_000_000L), downloaded);
+        assertEquals(30_000_000L, received.get());
+        assertEquals(1, simulatorSettings.getTreeRevision());
+        assertEquals(30_000_000L, Files.size(destination));
+        byte[] head = new byte[1000];
+        try (InputStream input = Files.newInputStream(destination)) {
+            assertEquals(head.length, input.readNBytes(head, 0, head.length));
+        }
+        for (int offset = 0; offset < head.length; offset++) {
+            assertEquals((byte) (offset % 251), head[offset]);
+        }
+        assertFalse(Files.exists(directory.resolve("track.flac.part.state")));
+    }
+
+    @Test
+    void scanWatchPollsOnlyForSubscribers() throws Exception {
+        assertTrue(shareCenter.login("admin", PASSWORD));
+        JShareCenterMediaPath mediaPath = shareCenter.getMediaServerPathList().orElseThrow().iterator().next();
+        assertEquals(Optional.of(true), shareCenter.startMediaScan(mediaPath));
+
+        Flow.Publisher<JShareCenterScanProgress> watch = shareCenter.watchMediaScan(mediaPath);
+        Thread.sleep(200);
+        assertFalse(Thread.getAllStackTraces().keySet().stream()
+            .anyMatch(thread -> thread.getName().equals("jsharecenter-scan-watch")));
+
+        CompletableFuture<JShareCenterScanProgress> last = new CompletableFuture<>();
+        watch.subscribe(new Flow.Subscriber<>() {
+            private JShareCenterScanProgress progress;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(JShareCenterScanProgress item) {
+                progress = item;
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                last.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                last.complete(progress);
+            }
+        });
+        assertTrue(last.get(10, TimeUnit.SECONDS).isFinished());
+    }
+
+    @Test
+    void unwatchedScanWatchIsReplaced() throws Exception {
+        JShareCenterSettings settings = new JShareCenterSettings();
+        settings.setMinPollInterval(Duration.ofMillis(20));
+        settings.setMaxPollInterval(Duration.ofMillis(50));
+        JShareCenter watched = JShareCenter.getDefault(simulator.getDevice().getHost(), settings);
+        assertTrue(watched.login("admin", PASSWORD));
+        Iterator<JShareCenterMediaPath> mediaPaths = watched.getMediaServerPathList().orElseThrow().iterator();
+        JShareCenterMediaPath first = mediaPaths.next();
+        JShareCenterMediaPath second = mediaPaths.next();
+
+        // never subscribed to
+        Flow.Publisher<JShareCenterScanProgress> abandoned = watched.watchMediaScan(first);
+        Flow.Publisher<JShareCenterScanProgress> watch = watched.watchMediaScan(second);
+        assertNotSame(abandoned, watch);
+
+        // cancelled before the first poll
+        watch.subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.cancel();
+            }
+
+            @Override
+            public void onNext(JShareCenterScanProgress item) {
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        Thread.sleep(200);
+        assertNotSame(watch, watched.watchMediaScan(second));
+    }
+
+    private static <T> List<T> concurrently(int callers, Supplier<T> call) {
+        CountDownLatch start = new CountDownLatch(1);
+        List<CompletableFuture<T>> results = new ArrayList<>();
+        for (int caller = 0; caller < callers; caller++) {
+            CompletableFuture<T> result = new CompletableFuture<>();
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    result.complete(call.get());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+            thread.start();
+            results.add(result);
+        }
+        start.countDown();
+        return results.stream().map(CompletableFuture::join).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,155 @@
+package hu.codelens.sharecenter.internal;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    private static final int CALLERS = 8;
+
+    @Test
+    void concurrentCallersShareOneCall() throws InterruptedException {
+        SingleFlight flights = new SingleFlight();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<CompletableFuture<Optional<Integer>>> results = start(CALLERS,
+            () -> flights.get("key", Duration.ZERO, () -> {
+                calls.incrementAndGet();
+                await(release);
+                return Optional.of(42);
+            }));
+        waitForLeader(calls);
+        release.countDown();
+
+        for (CompletableFuture<Optional<Integer>> result : results) {
+            assertEquals(Optional.of(42), result.join());
+        }
+        assertEquals(1, calls.get());
+        // without a time to live the next caller makes a call of its own
+        assertEquals(Optional.of(43), flights.get("key", Duration.ZERO, () -> Optional.of(43)));
+    }
+
+    @Test
+    void resultIsKeptForItsTimeToLive() throws InterruptedException {
+        SingleFlight flights = new SingleFlight();
+        AtomicInteger calls = new AtomicInteger();
+        Supplier<Optional<Integer>> call = () -> Optional.of(calls.incrementAndGet());
+
+        assertEquals(Optional.of(1), flights.get("key", Duration.ofMillis(200), call));
+        assertEquals(Optional.of(1), flights.get("key", Duration.ofMillis(200), call));
+        // the keys do not share results
+        assertEquals(Optional.of(2), flights.get("other", Duration.ofMillis(200), call));
+
+        Thread.sleep(300);
+        assertEquals(Optional.of(3), flights.get("key", Duration.ofMillis(200), call));
+
+        flights.clear();
+        assertEquals(Optional.of(4), flights.get("key", Duration.ofMillis(200), call));
+    }
+
+    @Test
+    void failureReachesWaitingCallersOnly() throws InterruptedException {
+        SingleFlight flights = new SingleFlight();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<CompletableFuture<Optional<Integer>>> results = start(CALLERS,
+            () -> flights.get("key", Duration.ofMinutes(1), () -> {
+                calls.incrementAndGet();
+                await(release);
+                throw new IllegalStateException("failed");
+            }));
+        waitForLeader(calls);
+        release.countDown();
+
+        for (CompletableFuture<Optional<Integer>> result : results) {
+            CompletionException e = assertThrows(CompletionException.class, result::join);
+            assertEquals("failed", e.getCause().getMessage());
+        }
+        assertEquals(1, calls.get());
+        assertEquals(Optional.of(1), flights.get("key", Duration.ofMinutes(1), () -> Optional.of(1)));
+    }
+
+    @Test
+    void emptyResultIsNotKept() {
+        SingleFlight flights = new SingleFlight();
+
+        assertEquals(Optional.empty(), flights.get("key", Duration.ofMinutes(1), Optional::empty));
+        assertEquals(Optional.of(1), flights.get("key", Duration.ofMinutes(1), () -> Optional.of(1)));
+    }
+
+    @Test
+    void clearLeavesCallInFlight() throws InterruptedException {
+        SingleFlight flights = new SingleFlight();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<CompletableFuture<Optional<Integer>>> leader = start(1,
+            () -> flights.get("key", Duration.ZERO, () -> {
+                calls.incrementAndGet();
+                await(release);
+                return Optional.of(1);
+            }));
+        waitForLeader(calls);
+        flights.clear();
+        List<CompletableFuture<Optional<Integer>>> followers = start(CALLERS - 1,
+            () -> flights.get("key", Duration.ZERO, () -> Optional.of(calls.incrementAndGet())));
+        // the followers have to be waiting for the leader before it is released
+        Thread.sleep(100);
+        release.countDown();
+
+        assertEquals(Optional.of(1), leader.get(0).join());
+        for (CompletableFuture<Optional<Integer>> result : followers) {
+            assertEquals(Optional.of(1), result.join());
+        }
+        assertEquals(1, calls.get());
+    }
+
+    private static <T> List<CompletableFuture<T>> start(int callers, Supplier<T> call) {
+        List<CompletableFuture<T>> results = new ArrayList<>();
+        for (int caller = 0; caller < callers; caller++) {
+            CompletableFuture<T> result = new CompletableFuture<>();
+            Thread thread = new Thread(() -> {
+                try {
+                    result.complete(call.get());
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+            thread.start();
+            results.add(result);
+        }
+        return results;
+    }
+
+    private static void waitForLeader(AtomicInteger calls) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (calls.get() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        // the other callers find the flight of the leader and wait for it
+        Thread.sleep(100);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
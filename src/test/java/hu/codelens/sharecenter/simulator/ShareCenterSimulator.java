@@ -0,0 +1,118 @@
+package hu.codelens.sharecenter.simulator;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs any number of {@link SimulatedShareCenter} devices in this JVM, sharing one TLS context and one pool of
+ * handler threads. Latency is simulated with a scheduler, so slow devices do not hold threads.
+ */
+public class ShareCenterSimulator implements AutoCloseable {
+
+    private static final char[] KEYSTORE_PASSWORD = "simulator".toCharArray();
+
+    private final ExecutorService executor;
+    private final ScheduledExecutorService scheduler;
+    private final List<SimulatedShareCenter> devices;
+
+    public ShareCenterSimulator(SimulatorSettings settings, int deviceCount) throws IOException {
+        AtomicInteger threadCounter = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), runnable -> {
+            Thread thread = new Thread(runnable, "simulator-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler = Executors.newScheduledThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "simulator-latency-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        SSLContext sslContext = createSslContext();
+        List<SimulatedShareCenter> created = new ArrayList<>();
+        for (int index = 0; index < deviceCount; index++) {
+            SimulatedShareCenter device = new SimulatedShareCenter(settings, sslContext, executor, scheduler);
+            device.start();
+            created.add(device);
+        }
+        devices = Collections.unmodifiableList(created);
+    }
+
+    public List<SimulatedShareCenter> getDevices() {
+        return devices;
+    }
+
+    public SimulatedShareCenter getDevice() {
+        return devices.get(0);
+    }
+
+    @Override
+    public void close() {
+        devices.forEach(SimulatedShareCenter::stop);
+        scheduler.shutdownNow();
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static SSLContext createSslContext() throws IOException {
+        Path keyStoreFile = Files.createTempFile("jsharecenter-simulator", ".p12");
+        Files.delete(keyStoreFile);
+        try {
+            generateKeyStore(keyStoreFile);
+
+            KeyStore keyStore = KeyStore.getInstance("PKCS12");
+            try (InputStream input = Files.newInputStream(keyStoreFile)) {
+                keyStore.load(input, KEYSTORE_PASSWORD);
+            }
+            KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keyManagerFactory.init(keyStore, KEYSTORE_PASSWORD);
+
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(keyManagerFactory.getKeyManagers(), null, null);
+            return sslContext;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Could not initialize simulator TLS context", e);
+        } finally {
+            Files.deleteIfExists(keyStoreFile);
+        }
+    }
+
+    private static void generateKeyStore(Path keyStoreFile) throws IOException {
+        // a throwaway self signed certificate, the client does not verify it anyway
+        Path keytool = Paths.get(System.getProperty("java.home"), "bin", "keytool");
+        Process process = new ProcessBuilder(keytool.toString(), "-genkeypair", "-alias", "simulator",
+            "-keyalg", "EC", "-groupname", "secp256r1", "-dname", "CN=localhost", "-validity", "30",
+            "-storetype", "PKCS12", "-keystore", keyStoreFile.toString(),
+            "-storepass", new String(KEYSTORE_PASSWORD), "-keypass", new String(KEYSTORE_PASSWORD))
+            .redirectErrorStream(true)
+            .start();
+        try {
+            String output = new String(process.getInputStream().readAllBytes());
+            if (process.waitFor() != 0) {
+                throw new IOException("Could not generate simulator certificate: " + output);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while generating simulator certificate", e);
+        }
+    }
+}
@@ -0,0 +1,761 @@
+package hu.codelens.sharecenter.simulator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+import javax.net.ssl.SSLContext;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A single simulated DNS-327L, serving the login and media server CGI commands over HTTPS on a local port, and the
+ * ContentDirectory of its UPnP AV server over plain HTTP on another one. Every finished scan of a media path adds a
+ * new item to its catalog.
+ * <p>
+ * The shares hold a fixed tree of albums with two discs of tracks each, listed by the file manager CGI. Every tree
+ * revision adds a track to the second disc of the second album of the first media path, and moves the modification
+ * time of that folder. Uploads through the file manager are accepted into the media paths and only counted.
+ * Downloads serve byte ranges of made up contents, the byte at every offset is the offset modulo 251, at the download
+ * rate of the settings per connection; a download hit by the error rate breaks off halfway.
+ */
+public class SimulatedShareCenter implements HttpHandler {
+
+    private static final String SESSION_COOKIE = "session";
+    private static final String MEDIA_PATH_PREFIX = "/mnt/HD/HD_a2/media";
+    private static final int EXTRA_ITEM_COUNT = 3;
+    private static final int MAX_BROWSE_COUNT = 50;
+    private static final int DISC_COUNT = 2;
+    private static final int TRACK_COUNT = 12;
+    private static final long TREE_MODIFIED = 1_600_000_000L;
+    private static final int DOWNLOAD_CHUNK_SIZE = 64 * 1024;
+
+    private final SimulatorSettings settings;
+    private final ScheduledExecutorService scheduler;
+    private final HttpsServer server;
+    private final HttpServer dlnaServer;
+    private final Map<Integer, Integer> indexedScans;
+    private final Map<String, Long> sessions;
+    private final AtomicLong requests;
+    private final AtomicLong logins;
+    private final AtomicLong scans;
+    private final AtomicLong uploads;
+    private final AtomicLong uploadedBytes;
+    private final Set<String> uploadedFiles;
+    private final AtomicLong downloadedBytes;
+    private final long createdAt;
+
+    private volatile long scanStartedAt;
+    private volatile String scanDirectory;
+    private boolean scanIndexed;
+
+    public SimulatedShareCenter(SimulatorSettings settings, SSLContext sslContext, Executor executor,
+                                ScheduledExecutorService scheduler) throws IOException {
+        this.settings = settings;
+        this.scheduler = scheduler;
+        this.sessions = new ConcurrentHashMap<>();
+        this.requests = new AtomicLong();
+        this.logins = new AtomicLong();
+        this.scans = new AtomicLong();
+        this.uploads = new AtomicLong();
+        this.uploadedBytes = new AtomicLong();
+        this.uploadedFiles = ConcurrentHashMap.newKeySet();
+        this.downloadedBytes = new AtomicLong();
+        this.createdAt = System.nanoTime();
+        this.scanStartedAt = -1;
+        this.scanDirectory = null;
+
+        server = HttpsServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setHttpsConfigurator(new HttpsConfigurator(sslContext));
+        server.setExecutor(executor);
+        server.createContext("/", this);
+
+        this.indexedScans = new ConcurrentHashMap<>();
+        this.scanIndexed = true;
+        dlnaServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        dlnaServer.setExecutor(executor);
+        dlnaServer.createContext("/", this::handleDlna);
+    }
+
+    public void start() {
+        server.start();
+        dlnaServer.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        dlnaServer.stop(0);
+    }
+
+    public String getDlnaLocation() {
+        return "http://localhost:" + dlnaServer.getAddress().getPort() + "/rootDesc.xml";
+    }
+
+    public String getHost() {
+        return "localhost:" + server.getAddress().getPort();
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    public long getLoginCount() {
+        return logins.get();
+    }
+
+    public long getScanCount() {
+        return scans.get();
+    }
+
+    public long getUploadCount() {
+        return uploads.get();
+    }
+
+    public long getUploadedBytes() {
+        return uploadedBytes.get();
+    }
+
+    public long getDownloadedBytes() {
+        return downloadedBytes.get();
+    }
+
+    public String getScanDirectory() {
+        return scanDirectory;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        // the session is checked when the request arrives, a long upload does not outlive it
+        Optional<String> session = session(exchange);
+        Map<String, String> parameters = readParameters(exchange);
+        String command = parameters.getOrDefault("cmd", "");
+        if (command.equals("cgi_download") && exchange.getRequestURI().getPath().equals("/cgi-bin/webfile_mgr.cgi")) {
+            download(exchange, session, URLDecoder.decode(parameters.getOrDefault("path", ""), StandardCharsets.UTF_8));
+            return;
+        }
+
+        SimulatorSettings.CannedReply canned = settings.getCannedReply(command);
+        Reply reply;
+        if (canned != null) {
+            reply = new Reply(canned.getCode(), canned.getBody());
+        } else {
+            reply = dispatch(exchange, session, command, parameters);
+            if (reply.code == 200 && ThreadLocalRandom.current().nextDouble() < settings.getErrorRate()) {
+                reply = new Reply(500, "Internal Server Error");
+            } else if (reply.code == 200 && ThreadLocalRandom.current().nextDouble() < settings.getMalformedRate()) {
+                reply = new Reply(200, reply.body.substring(0, reply.body.length() / 2));
+            }
+        }
+
+        boolean gzip = settings.isCompression() && acceptsGzip(exchange);
+        boolean truncated = gzip && settings.isTruncatedCompression();
+        Duration latency = settings.getLatency(command);
+        Reply response = reply;
+        if (latency.isZero()) {
+            send(exchange, response, gzip, truncated);
+        } else {
+            scheduler.schedule(() -> send(exchange, response, gzip, truncated), latency.toNanos(),
+                TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Reply dispatch(HttpExchange exchange, Optional<String> session, String command,
+                           Map<String, String> parameters) {
+        String path = exchange.getRequestURI().getPath();
+        if (path.equals("/cgi-bin/login_mgr.cgi")) {
+            if (command.equals("login")) {
+                return login(parameters);
+            } else if (command.equals("logout")) {
+                session.ifPresent(sessions::remove);
+                return Reply.redirect("/web/login.html", null);
+            }
+        } else if (path.equals("/cgi-bin/status_mgr.cgi") || path.equals("/cgi-bin/dsk_mgr.cgi")) {
+            if (session.isEmpty()) {
+                return Reply.redirect("/web/relogin.html", null);
+            }
+            switch (command) {
+                case "cgi_get_status":
+                    return new Reply(200, "<config><temperature>" + (40 + ThreadLocalRandom.current().nextInt(8))
+                        + "</temperature><fan>1</fan><uptime>" + (System.nanoTime() - createdAt) / 1_000_000_000L
+                        + "</uptime></config>");
+                case "cgi_get_resource":
+                    return new Reply(200, "<config><cpu>" + (isScanRunning() ? 85 : 3)
+                        + "</cpu><mem_total>262144</mem_total><mem_free>" + (isScanRunning() ? 21504 : 148480)
+                        + "</mem_free><io_read>" + (isScanRunning() ? 12288 : 0) + "</io_read><io_write>"
+                        + (isScanRunning() ? 512 : 0) + "</io_write></config>");
+                case "cgi_get_disks":
+                    return diskStatus();
+            }
+        } else if (path.equals("/cgi-bin/webfile_mgr.cgi")) {
+            if (session.isEmpty()) {
+                return Reply.redirect("/web/relogin.html", null);
+            }
+            String directory = URLDecoder.decode(parameters.getOrDefault("dir", ""), StandardCharsets.UTF_8);
+            switch (command) {
+                case "cgi_get_file_list":
+                    return fileList(directory, false, parseInt(parameters.get("page"), 1),
+                        parseInt(parameters.get("rp"), 10));
+                case "cgi_open_tree":
+                    return fileList(directory, true, 1, Integer.MAX_VALUE);
+                case "cgi_upload":
+                    return upload(parameters);
+            }
+        } else if (path.equals("/cgi-bin/app_mgr.cgi")) {
+            if (session.isEmpty()) {
+                return Reply.redirect("/web/relogin.html", null);
+            }
+            switch (command) {
+                case "UPnP_AV_Server_Path_List":
+                    return pathList(parameters);
+                case "UPnP_AV_Server_Prescan":
+                    return startScan(parameters.get("f_dir"));
+                case "UPnP_AV_Server_Get_SQLDB_State":
+                    if ((MEDIA_PATH_PREFIX + settings.getFailingScanPath()).equals(scanDirectory)) {
+                        return new Reply(500, "Internal Server Error");
+                    }
+                    return new Reply(200, "<config><db_stste>" + scanProgress() + "</db_stste><scan_state>"
+                        + (isScanRunning() ? 1 : 0) + "</scan_state></config>");
+                case "UPnP_AV_Server_Prescan_Finished":
+                    return result(!isScanRunning());
+                case "CGI_SQLDB_Stop_Finish":
+                    return result(isScanRunning());
+            }
+        }
+        return new Reply(404, "Not Found");
+    }
+
+    private Reply login(Map<String, String> parameters) {
+        if (settings.getUsername().equals(parameters.get("username"))
+            && settings.getBase64password().equals(parameters.get("pwd"))) {
+            String session = UUID.randomUUID().toString();
+            sessions.put(session, System.nanoTime());
+            logins.incrementAndGet();
+            return Reply.redirect("/web/home.html?v=" + System.currentTimeMillis(), SESSION_COOKIE + "=" + session + "; path=/");
+        }
+        return Reply.redirect("/web/relogin.html", null);
+    }
+
+    private Reply diskStatus() {
+        StringBuilder body = new StringBuilder("<config>");
+        for (int slot = 1; slot <= 2; slot++) {
+            body.append("<disk><slot>").append(slot).append("</slot><model>WDC WD20EFRX-68EUZN0</model>")
+                .append("<size>2000398934016</size><used>").append(slot * 612_345_678_901L).append("</used>")
+                .append("<temperature>").append(34 + slot).append("</temperature><smart>PASS</smart></disk>");
+        }
+        return new Reply(200, body.append("</config>").toString());
+    }
+
+    private Reply pathList(Map<String, String> parameters) {
+        int page = parseInt(parameters.get("page"), 1);
+        int rows = parseInt(parameters.get("rp"), 10);
+        int total = settings.getMediaPathCount();
+
+        StringBuilder body = new StringBuilder("<rows><page>").append(page).append("</page><total>").append(total)
+            .append("</total>");
+        for (int index = (page - 1) * rows; index < Math.min(total, page * rows); index++) {
+            body.append("<row id='").append(index + 1).append("'><cell>").append(index + 1)
+                .append("</cell><cell>Volume_1/media").append(index).append("</cell><cell>1</cell><cell>")
+                .append("media").append(index).append("</cell><cell>/mnt/HD/HD_a2/media").append(index)
+                .append("</cell></row>");
+        }
+        return new Reply(200, body.append("</rows>").toString());
+    }
+
+    private Reply fileList(String directory, boolean foldersOnly, int page, int rows) {
+        List<String> files = listFiles(directory);
+        if (files == null) {
+            return new Reply(404, "Not Found");
+        }
+        if (foldersOnly) {
+            files.removeIf(row -> !row.contains("<cell>dir</cell>"));
+        }
+
+        int first = (int) Math.min(files.size(), (long) (page - 1) * rows);
+        int end = (int) Math.min(files.size(), (long) page * rows);
+        StringBuilder body = new StringBuilder("<rows><page>").append(page).append("</page><total>")
+            .append(files.size()).append("</total>");
+        files.subList(first, end).forEach(body::append);
+        return new Reply(200, body.append("</rows>").toString());
+    }
+
+    private List<String> listFiles(String directory) {
+        if (!directory.startsWith(MEDIA_PATH_PREFIX)) {
+            return null;
+        }
+        String[] segments = directory.substring(MEDIA_PATH_PREFIX.length()).split("/");
+        int mediaIndex = parseInt(segments[0], -1);
+        if (mediaIndex < 0 || mediaIndex >= settings.getMediaPathCount() || segments.length > 3) {
+            return null;
+        }
+
+        // rows of name, type, size and modification time in seconds
+        List<String> files = new java.util.ArrayList<>();
+        if (segments.length == 1) {
+            for (int album = 0; album < settings.getAlbumCount(); album++) {
+                files.add(fileRow("album" + album, true, 0, TREE_MODIFIED));
+            }
+            files.add(fileRow("cover.jpg", false, 81_234, TREE_MODIFIED));
+        } else if (segments.length == 2) {
+            for (int disc = 0; disc < DISC_COUNT; disc++) {
+                files.add(fileRow("disc" + disc, true, 0, isRevisedFolder(mediaIndex, segments[1], "disc" + disc)
+                    ? TREE_MODIFIED + settings.getTreeRevision() : TREE_MODIFIED));
+            }
+            files.add(fileRow("folder.jpg", false, 40_960, TREE_MODIFIED));
+        } else {
+            for (int track = 0; track < TRACK_COUNT; track++) {
+                files.add(fileRow(String.format("%02d - track & tune.flac", track + 1), false, 30_000_000L + track,
+                    TREE_MODIFIED));
+            }
+            if (isRevisedFolder(mediaIndex, segments[1], segments[2])) {
+                for (int revision = 1; revision <= settings.getTreeRevision(); revision++) {
+                    files.add(fileRow("bonus" + revision + ".flac", false, 20_000_000L + revision,
+                        TREE_MODIFIED + revision));
+                }
+            }
+        }
+        return files;
+    }
+
+    private long fileSize(String file) {
+        int slash = file.lastIndexOf('/');
+        List<String> files = slash < 0 ? null : listFiles(file.substring(0, slash));
+        if (files == null) {
+            return -1;
+        }
+        String prefix = "<row><cell>" + escape(file.substring(slash + 1)) + "</cell><cell>file</cell><cell>";
+        return files.stream()
+            .filter(row -> row.startsWith(prefix))
+            .mapToLong(row -> Long.parseLong(row.substring(prefix.length(), row.indexOf("</cell>", prefix.length()))))
+            .findFirst()
+            .orElse(-1);
+    }
+
+    private void download(HttpExchange exchange, Optional<String> session, String file) {
+        long size = fileSize(file);
+        if (session.isEmpty() || size < 0) {
+            send(exchange, session.isEmpty() ? Reply.redirect("/web/relogin.html", null) : new Reply(404, "Not Found"),
+                false);
+            return;
+        }
+
+        // a new tree revision stands for the file rewritten on the NAS
+        String etag = "\"" + size + "-" + (TREE_MODIFIED + settings.getTreeRevision()) + "\"";
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        long first = 0;
+        long last = size - 1;
+        boolean partial = range != null && range.startsWith("bytes=") && (ifRange == null || ifRange.equals(etag));
+        if (partial) {
+            String[] bounds = range.substring(6).split("-", 2);
+            first = Long.parseLong(bounds[0]);
+            last = bounds.length > 1 && !bounds[1].isEmpty() ? Math.min(last, Long.parseLong(bounds[1])) : last;
+            if (first >= size || first > last) {
+                exchange.getResponseHeaders().add("Content-Range", "bytes */" + size);
+                send(exchange, new Reply(416, ""), false);
+                return;
+            }
+            exchange.getResponseHeaders().add("Content-Range", "bytes " + first + "-" + last + "/" + size);
+        }
+        exchange.getResponseHeaders().add("ETag", etag);
+
+        // a slow download must not hold up the threads of the other requests
+        long start = first;
+        long end = last + 1;
+        boolean broken = ThreadLocalRandom.current().nextDouble() < settings.getErrorRate();
+        Thread thread = new Thread(() -> streamRange(exchange, partial, start, end, broken), "simulator-download");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void streamRange(HttpExchange exchange, boolean partial, long start, long end, boolean broken) {
+        try (OutputStream output = exchange.getResponseBody()) {
+            exchange.getResponseHeaders().add("Content-Type", "application/octet-stream");
+            exchange.sendResponseHeaders(partial ? 206 : 200, end - start == 0 ? -1 : end - start);
+            long stop = broken ? start + (end - start) / 2 : end;
+            long rate = settings.getDownloadRate();
+            long began = System.nanoTime();
+            byte[] chunk = new byte[DOWNLOAD_CHUNK_SIZE];
+            for (long position = start; position < stop; ) {
+                int length = (int) Math.min(chunk.length, stop - position);
+                for (int index = 0; index < length; index++) {
+                    chunk[index] = (byte) ((position + index) % 251);
+                }
+                output.write(chunk, 0, length);
+                position += length;
+                downloadedBytes.addAndGet(length);
+                if (rate > 0) {
+                    long due = began + (position - start) * 1_000_000_000L / rate;
+                    long wait = due - System.nanoTime();
+                    if (wait > 0) {
+                        Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // the client went away
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private Reply upload(Map<String, String> parameters) {
+        String directory = parameters.getOrDefault("path", "");
+        if (!directory.startsWith(MEDIA_PATH_PREFIX) || !parameters.containsKey("upload_size")) {
+            return result(false);
+        }
+        // an uploaded file is only replaced with the overwrite flag, as the web file manager asks before it
+        String file = directory + "/" + parameters.getOrDefault("upload_name", "");
+        if (!uploadedFiles.add(file) && !"1".equals(parameters.get("overwrite"))) {
+            return result(false);
+        }
+        uploads.incrementAndGet();
+        uploadedBytes.addAndGet(Long.parseLong(parameters.get("upload_size")));
+        return result(true);
+    }
+
+    private static boolean isRevisedFolder(int mediaIndex, String album, String disc) {
+        return mediaIndex == 0 && album.equals("album1") && disc.equals("disc1");
+    }
+
+    private static String fileRow(String name, boolean directory, long size, long modified) {
+        return "<row><cell>" + escape(name) + "</cell><cell>" + (directory ? "dir" : "file") + "</cell><cell>" + size
+            + "</cell><cell>" + modified + "</cell></row>";
+    }
+
+    private synchronized Reply startScan(String directory) {
+        if (isScanRunning()) {
+            return result(false);
+        }
+        indexFinishedScan();
+        scanDirectory = directory;
+        scanIndexed = false;
+        scanStartedAt = System.nanoTime();
+        scans.incrementAndGet();
+        return result(true);
+    }
+
+    private void handleDlna(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        String path = exchange.getRequestURI().getPath();
+        if (path.equals("/rootDesc.xml")) {
+            send(exchange, new Reply(200, "<?xml version=\"1.0\"?><root xmlns=\"urn:schemas-upnp-org:device-1-0\">"
+                + "<device><friendlyName>DNS-327L</friendlyName><serviceList>"
+                + "<service><serviceType>urn:schemas-upnp-org:service:ConnectionManager:1</serviceType>"
+                + "<controlURL>/ctl/ConnectionMgr</controlURL></service>"
+                + "<service><serviceType>urn:schemas-upnp-org:service:ContentDirectory:1</serviceType>"
+                + "<controlURL>/ctl/ContentDir</controlURL></service>"
+                + "</serviceList></device></root>"), false);
+        } else if (path.equals("/ctl/ContentDir")) {
+            String body;
+            try (InputStream input = exchange.getRequestBody()) {
+                body = new String(input.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            send(exchange, browse(element(body, "ObjectID"), parseInt(element(body, "StartingIndex"), 0),
+                parseInt(element(body, "RequestedCount"), 0)), false);
+        } else {
+            send(exchange, new Reply(404, "Not Found"), false);
+        }
+    }
+
+    private Reply browse(String objectId, int start, int requested) {
+        synchronized (this) {
+            indexFinishedScan();
+        }
+
+        // children of the root are the media paths, each with its files and an extras folder, and a virtual
+        // container which lists the files of the first media path again, the way minidlna does
+        List<String> children = new java.util.ArrayList<>();
+        if ("0".equals(objectId)) {
+            for (int index = 0; index < settings.getMediaPathCount(); index++) {
+                children.add("<container id=\"m" + index + "\" parentID=\"0\"><dc:title>media" + index
+                    + "</dc:title></container>");
+            }
+            children.add("<container id=\"v\" parentID=\"0\"><dc:title>Recently Added</dc:title></container>");
+        } else if ("v".equals(objectId)) {
+            int items = settings.getMediaPathCount() == 0 ? 0
+                : settings.getCatalogItemCount() + indexedScans.getOrDefault(0, 0);
+            for (int item = 0; item < items; item++) {
+                children.add(didlItem("v-" + item, objectId, "file" + item, "m0-f" + item, 1_000_000L + item));
+            }
+        } else if (objectId != null && objectId.matches("m\\d+")) {
+            int index = Integer.parseInt(objectId.substring(1));
+            children.add("<container id=\"" + objectId + "-x\" parentID=\"" + objectId
+                + "\"><dc:title>extras</dc:title></container>");
+            int items = settings.getCatalogItemCount() + indexedScans.getOrDefault(index, 0);
+            for (int item = 0; item < items; item++) {
+                String id = objectId + "-f" + item;
+                children.add(didlItem(id, objectId, "file" + item, id, 1_000_000L + item));
+            }
+        } else if (objectId != null && objectId.matches("m\\d+-x")) {
+            for (int item = 0; item < EXTRA_ITEM_COUNT; item++) {
+                children.add(didlItem(objectId + item, objectId, "bonus & extra " + item, objectId + item,
+                    5_000L + item));
+            }
+        } else {
+            return new Reply(500, "<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\"><s:Body>"
+                + "<s:Fault><faultstring>No such object</faultstring></s:Fault></s:Body></s:Envelope>");
+        }
+
+        int count = Math.min(requested <= 0 ? MAX_BROWSE_COUNT : requested, MAX_BROWSE_COUNT);
+        int end = Math.min(children.size(), start + count);
+        StringBuilder didl = new StringBuilder("<DIDL-Lite xmlns=\"urn:schemas-upnp-org:metadata-1-0/DIDL-Lite/\""
+            + " xmlns:dc=\"http://purl.org/dc/elements/1.1/\">");
+        for (int index = Math.min(start, end); index < end; index++) {
+            didl.append(children.get(index));
+        }
+        didl.append("</DIDL-Lite>");
+
+        return new Reply(200, "<?xml version=\"1.0\"?><s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+            + "<s:Body><u:BrowseResponse xmlns:u=\"urn:schemas-upnp-org:service:ContentDirectory:1\"><Result>"
+            + escape(didl.toString()) + "</Result><NumberReturned>" + Math.max(0, end - start)
+            + "</NumberReturned><TotalMatches>" + children.size() + "</TotalMatches><UpdateID>"
+            + scans.get() + "</UpdateID></u:BrowseResponse></s:Body></s:Envelope>");
+    }
+
+    private void indexFinishedScan() {
+        String directory = scanDirectory;
+        if (!scanIndexed && !isScanRunning() && directory != null && directory.startsWith(MEDIA_PATH_PREFIX)) {
+            indexedScans.merge(parseInt(directory.substring(MEDIA_PATH_PREFIX.length()), -1), 1, Integer::sum);
+            scanIndexed = true;
+        }
+    }
+
+    private static String didlItem(String id, String parentId, String title, String resourceId, long size) {
+        return "<item id=\"" + id + "\" parentID=\"" + parentId + "\"><dc:title>" + escape(title)
+            + "</dc:title><res size=\"" + size + "\">http://localhost/MediaItems/" + resourceId + "</res></item>";
+    }
+
+    private static String element(String xml, String name) {
+        int start = xml.indexOf("<" + name + ">");
+        int end = xml.indexOf("</" + name + ">");
+        return start < 0 || end < start ? null : xml.substring(start + name.length() + 2, end);
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    private boolean isScanRunning() {
+        long startedAt = scanStartedAt;
+        return startedAt >= 0 && System.nanoTime() - startedAt < settings.getScanDuration().toNanos();
+    }
+
+    private int scanProgress() {
+        long startedAt = scanStartedAt;
+        if (startedAt < 0) {
+            return 0;
+        }
+        long duration = Math.max(1, settings.getScanDuration().toNanos());
+        return (int) Math.min(100, (System.nanoTime() - startedAt) * 100 / duration);
+    }
+
+    private static Reply result(boolean value) {
+        return new Reply(200, "<config><res>" + (value ? 1 : 0) + "</res></config>");
+    }
+
+    private Optional<String> session(HttpExchange exchange) {
+        List<String> cookies = exchange.getRequestHeaders().get("Cookie");
+        if (cookies != null) {
+            for (String header : cookies) {
+                for (String cookie : header.split(";")) {
+                    String[] pair = cookie.trim().split("=", 2);
+                    if (pair.length == 2 && pair[0].equals(SESSION_COOKIE) && isSessionValid(pair[1])) {
+                        return Optional.of(pair[1]);
+                    }
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static boolean acceptsGzip(HttpExchange exchange) {
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        return acceptEncoding != null && acceptEncoding.contains("gzip");
+    }
+
+    private boolean isSessionValid(String session) {
+        Long createdAt = sessions.get(session);
+        if (createdAt == null) {
+            return false;
+        }
+        Duration lifetime = settings.getSessionLifetime();
+        if (lifetime != null && System.nanoTime() - createdAt > lifetime.toNanos()) {
+            sessions.remove(session);
+            return false;
+        }
+        return true;
+    }
+
+    private static Map<String, String> readParameters(HttpExchange exchange) throws IOException {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            parse(query, parameters);
+        }
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        try (InputStream body = exchange.getRequestBody()) {
+            if (contentType != null && contentType.startsWith("multipart/form-data; boundary=")) {
+                parseMultipart(body, contentType.substring(contentType.indexOf('=') + 1), parameters);
+            } else {
+                parse(new String(body.readAllBytes(), StandardCharsets.UTF_8), parameters);
+            }
+        }
+        return parameters;
+    }
+
+    private static void parseMultipart(InputStream body, String boundary, Map<String, String> parameters)
+        throws IOException {
+        // the form fields are read up to the header of the file part, which comes last; the file is only counted
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        int fileHeader = -1;
+        int next;
+        while ((next = body.read()) >= 0) {
+            head.write(next);
+            String text = head.toString(StandardCharsets.ISO_8859_1);
+            if (fileHeader < 0) {
+                fileHeader = text.lastIndexOf("filename=\"");
+            } else if (text.endsWith("\r\n\r\n")) {
+                break;
+            }
+        }
+
+        String text = head.toString(StandardCharsets.UTF_8);
+        for (String part : text.split("--" + java.util.regex.Pattern.quote(boundary))) {
+            int headerEnd = part.indexOf("\r\n\r\n");
+            if (headerEnd < 0) {
+                continue;
+            }
+            String headers = part.substring(0, headerEnd);
+            String name = headerValue(headers, "name");
+            String fileName = headerValue(headers, "filename");
+            if (fileName != null) {
+                parameters.put("upload_name", fileName);
+            } else if (name != null && part.endsWith("\r\n")) {
+                parameters.put(name, part.substring(headerEnd + 4, part.length() - 2));
+            }
+        }
+
+        if (fileHeader >= 0) {
+            long size = body.transferTo(OutputStream.nullOutputStream());
+            int tail = ("\r\n--" + boundary + "--\r\n").length();
+            parameters.put("upload_size", String.valueOf(Math.max(0, size - tail)));
+        }
+    }
+
+    private static String headerValue(String headers, String name) {
+        int start = headers.indexOf(" " + name + "=\"");
+        if (start < 0) {
+            start = headers.indexOf(";" + name + "=\"");
+        }
+        if (start < 0) {
+            return null;
+        }
+        start += name.length() + 3;
+        int end = headers.indexOf('"', start);
+        return end < 0 ? null : headers.substring(start, end);
+    }
+
+    private static void parse(String form, Map<String, String> parameters) {
+        for (String pair : form.split("&")) {
+            if (!pair.isEmpty()) {
+                String[] nameValue = pair.split("=", 2);
+                parameters.put(nameValue[0], nameValue.length == 2 ? nameValue[1] : "");
+            }
+        }
+    }
+
+    private static int parseInt(String text, int defaultValue) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static void send(HttpExchange exchange, Reply reply, boolean gzip) {
+        send(exchange, reply, gzip, false);
+    }
+
+    private static void send(HttpExchange exchange, Reply reply, boolean gzip, boolean truncated) {
+        try {
+            if (reply.location != null) {
+                exchange.getResponseHeaders().add("Location", reply.location);
+            }
+            if (reply.cookie != null) {
+                exchange.getResponseHeaders().add("Set-Cookie", reply.cookie);
+            }
+            byte[] body = reply.body.getBytes(StandardCharsets.UTF_8);
+            if (gzip && body.length > 0) {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                try (GZIPOutputStream output = new GZIPOutputStream(compressed)) {
+                    output.write(body);
+                }
+                body = compressed.toByteArray();
+                if (truncated) {
+                    // a gzip stream cut off in the middle, as a dropped connection leaves it
+                    body = Arrays.copyOf(body, body.length / 2);
+                }
+                exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            }
+            exchange.getResponseHeaders().add("Content-Type", "text/xml");
+            exchange.sendResponseHeaders(reply.code, body.length == 0 ? -1 : body.length);
+            if (body.length > 0) {
+                try (OutputStream output = exchange.getResponseBody()) {
+                    output.write(body);
+                }
+            }
+        } catch (IOException e) {
+            // the client went away
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static class Reply {
+        private final int code;
+        private final String body;
+        private final String location;
+        private final String cookie;
+
+        private Reply(int code, String body) {
+            this(code, body, null, null);
+        }
+
+        private Reply(int code, String body, String location, String cookie) {
+            this.code = code;
+            this.body = body;
+            this.location = location;
+            this.cookie = cookie;
+        }
+
+        private static Reply redirect(String location, String cookie) {
+            return new Reply(302, "", location, cookie);
+        }
+    }
+}
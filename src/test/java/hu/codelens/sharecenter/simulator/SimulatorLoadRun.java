@@ -0,0 +1,136 @@
+package hu.codelens.sharecenter.simulator;
+
+import hu.codelens.sharecenter.JShareCenter;
+import hu.codelens.sharecenter.JShareCenterMediaPath;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Runs the complete rescan lifecycle against many simulated devices at once and prints the client side throughput
+ * and latency percentiles per operation.
+ * <p>
+ * Arguments: {@code [devices] [scan seconds] [latency millis] [error rate] [malformed rate]}
+ */
+public class SimulatorLoadRun {
+
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(500);
+
+    private final Map<String, List<Long>> latencies = new ConcurrentHashMap<>();
+    private final AtomicLong failures = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        int deviceCount = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        SimulatorSettings settings = new SimulatorSettings()
+            .setScanDuration(Duration.ofSeconds(args.length > 1 ? Long.parseLong(args[1]) : 10))
+            .setDefaultLatency(Duration.ofMillis(args.length > 2 ? Long.parseLong(args[2]) : 20))
+            .setErrorRate(args.length > 3 ? Double.parseDouble(args[3]) : 0)
+            .setMalformedRate(args.length > 4 ? Double.parseDouble(args[4]) : 0);
+
+        try (ShareCenterSimulator simulator = new ShareCenterSimulator(settings, deviceCount)) {
+            new SimulatorLoadRun().run(simulator, settings);
+        }
+    }
+
+    private void run(ShareCenterSimulator simulator, SimulatorSettings settings) throws Exception {
+        List<SimulatedShareCenter> devices = simulator.getDevices();
+        System.out.println("Rescanning " + devices.size() + " simulated devices");
+
+        ExecutorService executor = Executors.newFixedThreadPool(devices.size());
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            devices.forEach(device -> futures.add(executor.submit(() -> rescan(device.getHost(), settings))));
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        long requests = devices.stream().mapToLong(SimulatedShareCenter::getRequestCount).sum();
+        System.out.printf("%d requests in %.1f s, %.1f requests/s, %d failed operations%n", requests,
+            elapsed.toMillis() / 1000.0, requests * 1000.0 / Math.max(1, elapsed.toMillis()), failures.get());
+        System.out.printf("%-32s %8s %8s %8s %8s %8s%n", "operation", "count", "p50 ms", "p95 ms", "p99 ms", "max ms");
+        latencies.forEach((operation, values) -> {
+            List<Long> sorted = new ArrayList<>(values);
+            Collections.sort(sorted);
+            System.out.printf("%-32s %8d %8.1f %8.1f %8.1f %8.1f%n", operation, sorted.size(),
+                percentile(sorted, 0.50), percentile(sorted, 0.95), percentile(sorted, 0.99), percentile(sorted, 1.0));
+        });
+    }
+
+    private void rescan(String host, SimulatorSettings settings) {
+        try {
+            JShareCenter shareCenter = JShareCenter.getDefault(host);
+            if (!time("login", () -> shareCenter.login(settings.getUsername(), settings.getBase64password()))) {
+                failures.incrementAndGet();
+                return;
+            }
+
+            Optional<Collection<JShareCenterMediaPath>> mediaPaths = time("getMediaServerPathList",
+                shareCenter::getMediaServerPathList);
+            time("checkMediaScanRunning", shareCenter::checkMediaScanRunning);
+            for (JShareCenterMediaPath mediaPath : mediaPaths.orElse(Collections.emptyList())) {
+                if (time("startMediaScan", () -> shareCenter.startMediaScan(mediaPath)).orElse(false)) {
+                    waitForScan(shareCenter);
+                } else {
+                    failures.incrementAndGet();
+                }
+            }
+
+            time("logout", () -> {
+                shareCenter.logout(settings.getUsername());
+                return null;
+            });
+        } catch (RuntimeException e) {
+            failures.incrementAndGet();
+        }
+    }
+
+    private void waitForScan(JShareCenter shareCenter) {
+        boolean running = true;
+        while (running) {
+            sleep();
+            int percentage = time("checkMediaScanProgress", shareCenter::checkMediaScanProgress).orElse(0);
+            if (percentage > 90) {
+                running = !time("checkMediaScanFinished", shareCenter::checkMediaScanFinished).orElse(false);
+            }
+        }
+    }
+
+    private <T> T time(String operation, Supplier<T> call) {
+        long start = System.nanoTime();
+        try {
+            return call.get();
+        } finally {
+            latencies.computeIfAbsent(operation, key -> Collections.synchronizedList(new ArrayList<>()))
+                .add(System.nanoTime() - start);
+        }
+    }
+
+    private static double percentile(List<Long> sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.size()) - 1;
+        return sorted.get(Math.max(0, index)) / 1_000_000.0;
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(POLL_INTERVAL.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package hu.codelens.sharecenter.simulator;
+
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class SimulatorSettings {
+
+    /**
+     * A fixed answer of a command instead of the simulated one, for replies the device should not give.
+     */
+    public static class CannedReply {
+        private final int code;
+        private final String body;
+
+        private CannedReply(int code, String body) {
+            this.code = code;
+            this.body = body;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        public String getBody() {
+            return body;
+        }
+    }
+
+    private String username;
+    private String base64password;
+    private Duration scanDuration;
+    private int mediaPathCount;
+    private Duration defaultLatency;
+    private final Map<String, Duration> latencies;
+    private double errorRate;
+    private double malformedRate;
+    private Duration sessionLifetime;
+    private boolean compression;
+    private boolean truncatedCompression;
+    private int catalogItemCount;
+    private int albumCount;
+    private int treeRevision;
+    private long downloadRate;
+    private int failingScanPath;
+    private final Map<String, CannedReply> cannedReplies;
+
+    public SimulatorSettings() {
+        username = "admin";
+        base64password = Base64.getEncoder().encodeToString("admin".getBytes());
+        scanDuration = Duration.ofSeconds(10);
+        mediaPathCount = 2;
+        defaultLatency = Duration.ZERO;
+        latencies = new HashMap<>();
+        errorRate = 0;
+        malformedRate = 0;
+        sessionLifetime = null;
+        compression = false;
+        truncatedCompression = false;
+        catalogItemCount = 20;
+        albumCount = 4;
+        treeRevision = 0;
+        downloadRate = 0;
+        failingScanPath = -1;
+        cannedReplies = new ConcurrentHashMap<>();
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public SimulatorSettings setUsername(String username) {
+        this.username = username;
+        return this;
+    }
+
+    public String getBase64password() {
+        return base64password;
+    }
+
+    public SimulatorSettings setBase64password(String base64password) {
+        this.base64password = base64password;
+        return this;
+    }
+
+    public Duration getScanDuration() {
+        return scanDuration;
+    }
+
+    public SimulatorSettings setScanDuration(Duration scanDuration) {
+        this.scanDuration = scanDuration;
+        return this;
+    }
+
+    public int getMediaPathCount() {
+        return mediaPathCount;
+    }
+
+    public SimulatorSettings setMediaPathCount(int mediaPathCount) {
+        this.mediaPathCount = mediaPathCount;
+        return this;
+    }
+
+    public Duration getLatency(String command) {
+        return latencies.getOrDefault(command, defaultLatency);
+    }
+
+    public SimulatorSettings setDefaultLatency(Duration defaultLatency) {
+        this.defaultLatency = defaultLatency;
+        return this;
+    }
+
+    public SimulatorSettings setLatency(String command, Duration latency) {
+        latencies.put(command, latency);
+        return this;
+    }
+
+    public double getErrorRate() {
+        return errorRate;
+    }
+
+    public SimulatorSettings setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    public double getMalformedRate() {
+        return malformedRate;
+    }
+
+    public SimulatorSettings setMalformedRate(double malformedRate) {
+        this.malformedRate = malformedRate;
+        return this;
+    }
+
+    public Duration getSessionLifetime() {
+        return sessionLifetime;
+    }
+
+    public SimulatorSettings setSessionLifetime(Duration sessionLifetime) {
+        this.sessionLifetime = sessionLifetime;
+        return this;
+    }
+
+    public boolean isCompression() {
+        return compression;
+    }
+
+    public SimulatorSettings setCompression(boolean compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    public boolean isTruncatedCompression() {
+        return truncatedCompression;
+    }
+
+    public SimulatorSettings setTruncatedCompression(boolean truncatedCompression) {
+        this.truncatedCompression = truncatedCompression;
+        return this;
+    }
+
+    public int getCatalogItemCount() {
+        return catalogItemCount;
+    }
+
+    public SimulatorSettings setCatalogItemCount(int catalogItemCount) {
+        this.catalogItemCount = catalogItemCount;
+        return this;
+    }
+
+    public int getAlbumCount() {
+        return albumCount;
+    }
+
+    public SimulatorSettings setAlbumCount(int albumCount) {
+        this.albumCount = albumCount;
+        return this;
+    }
+
+    public int getTreeRevision() {
+        return treeRevision;
+    }
+
+    public SimulatorSettings setTreeRevision(int treeRevision) {
+        this.treeRevision = treeRevision;
+        return this;
+    }
+
+    public long getDownloadRate() {
+        return downloadRate;
+    }
+
+    public SimulatorSettings setDownloadRate(long downloadRate) {
+        this.downloadRate = downloadRate;
+        return this;
+    }
+
+    public int getFailingScanPath() {
+        return failingScanPath;
+    }
+
+    /**
+     * Once a scan of the media path with this index started the scan progress cannot be read, -1 for none.
+     */
+    public SimulatorSettings setFailingScanPath(int failingScanPath) {
+        this.failingScanPath = failingScanPath;
+        return this;
+    }
+
+    public CannedReply getCannedReply(String command) {
+        return cannedReplies.get(command);
+    }
+
+    public SimulatorSettings setCannedReply(String command, int code, String body) {
+        cannedReplies.put(command, new CannedReply(code, body));
+        return this;
+    }
+
+    public SimulatorSettings clearCannedReply(String command) {
+        cannedReplies.remove(command);
+        return this;
+    }
+}
@@ -0,0 +1,89 @@
+package hu.codelens.sharecenter.startup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Creates an AppCDS archive of jsharecenter.jar with a training run and compares the startup time with and without
+ * it. The training and the measured runs try to log in to a closed local port, which loads the argument handling,
+ * the output, the TLS and the HTTP client classes and exits right away.
+ * <p>
+ * Arguments: {@code <jar> <archive> [runs] [max millis]}; a median startup above the maximum fails the build.
+ */
+public class StartupTimer {
+
+    private static final String[] RUN_ARGUMENTS = {"--host", "127.0.0.1:1", "--pass", "eA==", "--retries", "0",
+        "--plain"};
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: StartupTimer <jar> <archive> [runs] [max millis]");
+            System.exit(2);
+        }
+        Path jar = Paths.get(args[0]);
+        Path archive = Paths.get(args[1]);
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        long maxMillis = args.length > 3 ? Long.parseLong(args[3]) : 0;
+
+        if (Runtime.version().feature() < 13) {
+            System.out.println("[startup] dynamic AppCDS archives need Java 13 or newer, skipped");
+            return;
+        }
+
+        Files.deleteIfExists(archive);
+        run(jar, "-XX:ArchiveClassesAtExit=" + archive);
+        if (!Files.exists(archive)) {
+            throw new IllegalStateException("The training run did not create the archive: " + archive);
+        }
+
+        long withoutArchive = median(jar, runs, null);
+        long withArchive = median(jar, runs, "-XX:SharedArchiveFile=" + archive);
+        System.out.printf("[startup] median of %d runs: %d ms without, %d ms with the AppCDS archive (%s, %d KB)%n",
+            runs, withoutArchive, withArchive, archive.getFileName(), Files.size(archive) / 1024);
+
+        if (maxMillis > 0 && withArchive > maxMillis) {
+            throw new IllegalStateException("Startup took " + withArchive + " ms, more than the allowed " + maxMillis
+                + " ms");
+        }
+    }
+
+    private static long median(Path jar, int runs, String option) throws IOException, InterruptedException {
+        List<Long> times = new ArrayList<>();
+        for (int run = 0; run < runs; run++) {
+            long start = System.nanoTime();
+            run(jar, option);
+            times.add((System.nanoTime() - start) / 1_000_000);
+        }
+        Collections.sort(times);
+        return times.get(times.size() / 2);
+    }
+
+    private static void run(Path jar, String option) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        if (option != null) {
+            command.add(option);
+        }
+        command.add("-jar");
+        command.add(jar.toString());
+        command.addAll(Arrays.asList(RUN_ARGUMENTS));
+
+        new ProcessBuilder(command)
+            .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+            .redirectError(ProcessBuilder.Redirect.DISCARD)
+            .redirectInput(ProcessBuilder.Redirect.from(new File(isWindows() ? "NUL" : "/dev/null")))
+            .start()
+            .waitFor();
+    }
+
+    private static boolean isWindows() {
+        return System.getProperty("os.name").toLowerCase().startsWith("windows");
+    }
+}